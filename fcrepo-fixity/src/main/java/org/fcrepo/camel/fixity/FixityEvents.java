@@ -0,0 +1,371 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixityResults.FIXITY_OUTCOME;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.camel.Exchange;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+
+/**
+ * Record fixity checks as PREMIS events in a triplestore, in batches.
+ *
+ * Each check is described by a small PREMIS event graph, which is buffered in memory. The buffer
+ * is flushed periodically, in batches, each with a single SPARQL INSERT DATA request. Batches that
+ * cannot be written (e.g. because the triplestore is unavailable), and events beyond the capacity
+ * of the buffer, are spilled to files in the spool directory as N-Triples. These are written to
+ * the triplestore, oldest first, once it is available again. Spilled events survive a restart;
+ * events still in the buffer are spilled on shutdown. A batch that the triplestore rejects as
+ * invalid is set aside in the spool directory, with the suffix .rejected, rather than retried.
+ * The spool directory is only created when events are first spilled.
+ *
+ * @author agent
+ */
+public class FixityEvents implements FixityEventsMBean {
+
+    private static final Logger LOGGER = getLogger(FixityEvents.class);
+
+    private static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+    private static final String PREMIS = "http://www.loc.gov/premis/rdf/v1#";
+
+    private static final String FIXITY_CHECK = "http://id.loc.gov/vocabulary/preservation/eventType/fix";
+
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+
+    /* characters that may not appear in an IRI in N-Triples */
+    private static final Pattern INVALID_IRI = Pattern.compile("[\\x00-\\x20<>\"{}|^`\\\\]");
+
+    private static final String SPOOL_SUFFIX = ".nt";
+
+    private static final String REJECTED_SUFFIX = ".rejected";
+
+    /**
+     * The result of writing a batch to the triplestore.
+     */
+    enum Result {
+        WRITTEN, REJECTED, FAILED
+    }
+
+    private final HttpClient httpClient;
+
+    private final String baseUrl;
+
+    private final String namedGraph;
+
+    private final int batchSize;
+
+    private final int bufferSize;
+
+    private final Path spool;
+
+    private final Deque<String> buffer = new ArrayDeque<>();
+
+    private final Object flushing = new Object();
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private long sequence;
+
+    /**
+     * Create a PREMIS event recorder.
+     *
+     * @param baseUrl the SPARQL update endpoint of the triplestore
+     * @param namedGraph the graph into which events are written; if empty, the default graph
+     * @param batchSize the maximum number of events written in a single request
+     * @param bufferSize the maximum number of events held in memory
+     * @param spool the directory to which events are spilled
+     */
+    public FixityEvents(final String baseUrl, final String namedGraph, final int batchSize, final int bufferSize,
+            final String spool) {
+        this(HttpClients.createSystem(), baseUrl, namedGraph, batchSize, bufferSize, spool);
+    }
+
+    FixityEvents(final HttpClient httpClient, final String baseUrl, final String namedGraph, final int batchSize,
+            final int bufferSize, final String spool) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.namedGraph = namedGraph == null ? "" : namedGraph.trim();
+        this.batchSize = Math.max(batchSize, 1);
+        this.bufferSize = Math.max(bufferSize, this.batchSize);
+        this.spool = Paths.get(spool);
+    }
+
+    /**
+     * Buffer a PREMIS event for the fixity check of the binary identified by the current message.
+     * The outcome, digest and size are taken from the CamelFixityOutcome, CamelFixityMessageDigest
+     * and CamelFixitySize headers.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the buffer was full and could not be spilled
+     */
+    public void record(final Exchange exchange) throws IOException {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri == null || INVALID_IRI.matcher(uri).find()) {
+            LOGGER.warn("Not recording a fixity event for {}", uri);
+            return;
+        }
+        add(event(uri, Instant.now(), exchange.getIn().getHeader(FIXITY_OUTCOME, String.class),
+                    exchange.getIn().getHeader(FIXITY_MESSAGE_DIGEST, String.class),
+                    exchange.getIn().getHeader(FIXITY_SIZE, String.class)));
+    }
+
+    /**
+     * Buffer an event, spilling the buffer if it is full.
+     *
+     * @param event the event, as N-Triples
+     * @throws IOException if the buffer could not be spilled
+     */
+    synchronized void add(final String event) throws IOException {
+        buffer.addLast(event);
+        recorded.incrementAndGet();
+        if (buffer.size() >= bufferSize) {
+            LOGGER.debug("Fixity event buffer is full, spilling {} events", buffer.size());
+            while (!buffer.isEmpty()) {
+                spill(take(), SPOOL_SUFFIX);
+            }
+        }
+    }
+
+    /**
+     * Write the spilled and buffered events to the triplestore, oldest first, stopping at the first failure.
+     */
+    public void flush() {
+        synchronized (flushing) {
+            try {
+                for (final Path file : spooled()) {
+                    final Result result = write(new String(Files.readAllBytes(file), UTF_8));
+                    if (result == Result.FAILED) {
+                        return;
+                    } else if (result == Result.REJECTED) {
+                        Files.move(file, file.resolveSibling(file.getFileName() + REJECTED_SUFFIX), ATOMIC_MOVE);
+                    } else {
+                        Files.delete(file);
+                    }
+                }
+
+                List<String> batch;
+                while (!(batch = take()).isEmpty()) {
+                    final Result result = write(String.join("", batch));
+                    if (result == Result.FAILED) {
+                        spill(batch, SPOOL_SUFFIX);
+                        return;
+                    } else if (result == Result.REJECTED) {
+                        spill(batch, SPOOL_SUFFIX + REJECTED_SUFFIX);
+                    }
+                }
+            } catch (final IOException ex) {
+                LOGGER.error("Could not read or write spilled fixity events: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the buffered events to the triplestore, or else spill them.
+     *
+     * @throws IOException if the events could not be spilled
+     */
+    public void shutdown() throws IOException {
+        flush();
+        synchronized (this) {
+            while (!buffer.isEmpty()) {
+                spill(take(), SPOOL_SUFFIX);
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getBufferedCount() {
+        return buffer.size();
+    }
+
+    @Override
+    public int getSpilledBatchCount() {
+        try {
+            return spooled().size();
+        } catch (final IOException ex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getRecordedCount() {
+        return recorded.get();
+    }
+
+    @Override
+    public long getWrittenBatchCount() {
+        return written.get();
+    }
+
+    @Override
+    public long getFailedBatchCount() {
+        return failures.get();
+    }
+
+    /**
+     * Describe a fixity check as a PREMIS event.
+     *
+     * @param uri the binary URI
+     * @param time the time of the check
+     * @param outcome the outcome of the check
+     * @param digest the message digest (a URN), if known
+     * @param size the size of the binary, if known
+     * @return the event, as N-Triples
+     */
+    static String event(final String uri, final Instant time, final String outcome, final String digest,
+            final String size) {
+        final String event = "<urn:uuid:" + UUID.randomUUID() + "> ";
+        final StringBuilder triples = new StringBuilder()
+            .append(event).append(RDF_TYPE).append(" <").append(PREMIS).append("Event> .\n")
+            .append(event).append("<").append(PREMIS).append("hasEventType> <").append(FIXITY_CHECK).append("> .\n")
+            .append(event).append("<").append(PREMIS).append("hasEventDateTime> \"").append(time)
+            .append("\"^^<").append(XSD).append("dateTime> .\n")
+            .append(event).append("<").append(PREMIS).append("hasEventRelatedObject> <").append(uri).append("> .\n")
+            .append(event).append("<").append(PREMIS).append("hasEventOutcome> \"")
+            .append(literal(outcome == null ? "UNKNOWN" : outcome)).append("\" .\n");
+        if (digest != null && !digest.trim().isEmpty() && !INVALID_IRI.matcher(digest.trim()).find()) {
+            triples.append(event).append("<").append(PREMIS).append("hasMessageDigest> <").append(digest.trim())
+                .append("> .\n");
+        }
+        if (size != null && size.trim().matches("\\d+")) {
+            triples.append(event).append("<").append(PREMIS).append("hasSize> \"").append(size.trim())
+                .append("\"^^<").append(XSD).append("long> .\n");
+        }
+        return triples.toString();
+    }
+
+    /**
+     * @param triples the events, as N-Triples
+     * @return the SPARQL update that inserts the events
+     */
+    String insert(final String triples) {
+        if (namedGraph.isEmpty()) {
+            return "INSERT DATA {\n" + triples + "}";
+        }
+        return "INSERT DATA { GRAPH <" + namedGraph + "> {\n" + triples + "} }";
+    }
+
+    private synchronized List<String> take() {
+        final List<String> batch = new ArrayList<>();
+        while (batch.size() < batchSize && !buffer.isEmpty()) {
+            batch.add(buffer.removeFirst());
+        }
+        return batch;
+    }
+
+    /*
+     * Write a batch of events to a new file in the spool directory. The file is moved into place,
+     * so that a partially written batch is never read.
+     */
+    private void spill(final List<String> batch, final String suffix) throws IOException {
+        final String name;
+        synchronized (this) {
+            sequence += 1;
+            name = String.format("%013d-%06d", System.currentTimeMillis(), sequence % 1000000);
+        }
+        Files.createDirectories(spool);
+        final Path tmp = spool.resolve(name + ".tmp");
+        Files.write(tmp, String.join("", batch).getBytes(UTF_8));
+        Files.move(tmp, spool.resolve(name + suffix), ATOMIC_MOVE);
+    }
+
+    private List<Path> spooled() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(spool)) {
+            return files;
+        }
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(spool, "*" + SPOOL_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /*
+     * Write events to the triplestore. A client error, other than a timeout or too many requests,
+     * means that the batch will never be accepted.
+     */
+    private Result write(final String triples) {
+        final HttpPost request = new HttpPost(baseUrl);
+        try {
+            request.setEntity(new StringEntity("update=" + URLEncoder.encode(insert(triples), "UTF-8"),
+                        ContentType.APPLICATION_FORM_URLENCODED));
+            final HttpResponse response = httpClient.execute(request);
+            EntityUtils.consumeQuietly(response.getEntity());
+            final int status = response.getStatusLine().getStatusCode();
+            if (status >= 200 && status < 300) {
+                written.incrementAndGet();
+                return Result.WRITTEN;
+            }
+            failures.incrementAndGet();
+            if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                LOGGER.error("Fixity events were rejected by the triplestore: {}", response.getStatusLine());
+                return Result.REJECTED;
+            }
+            LOGGER.warn("Could not write fixity events to the triplestore: {}", response.getStatusLine());
+            return Result.FAILED;
+        } catch (final UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        } catch (final IOException ex) {
+            LOGGER.warn("Could not write fixity events to the triplestore: {}", ex.getMessage());
+        } finally {
+            request.releaseConnection();
+        }
+        failures.incrementAndGet();
+        return Result.FAILED;
+    }
+
+    private static String literal(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * Management interface for the PREMIS fixity event recorder.
+ *
+ * @author agent
+ */
+public interface FixityEventsMBean {
+
+    /**
+     * @return the number of events held in memory
+     */
+    int getBufferedCount();
+
+    /**
+     * @return the number of batches spilled to disk and not yet written
+     */
+    int getSpilledBatchCount();
+
+    /**
+     * @return the number of events recorded
+     */
+    long getRecordedCount();
+
+    /**
+     * @return the number of batches written to the triplestore
+     */
+    long getWrittenBatchCount();
+
+    /**
+     * @return the number of batches that could not be written to the triplestore
+     */
+    long getFailedBatchCount();
+}
@@ -0,0 +1,293 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+
+/**
+ * A persistent index of binary resources and the time at which their fixity was last checked.
+ *
+ * The index is held in memory, ordered by the time at which each binary is next due for a
+ * check, and is persisted as an append-only log of updates. The log is compacted when it is
+ * opened and closed, if it has grown to more than twice the size of the index.
+ *
+ * Each line of the log holds the time of the last check (in milliseconds since the epoch,
+ * 0 if never checked, or -1 if the binary has been removed), the size of the binary
+ * (-1 if unknown) and the URI of the binary, separated by spaces.
+ *
+ * @author agent
+ */
+class FixityIndex implements Closeable {
+
+    private static final Logger LOGGER = getLogger(FixityIndex.class);
+
+    private static final long REMOVED = -1L;
+
+    /**
+     * An indexed binary.
+     */
+    static final class Entry {
+
+        private final String uri;
+
+        private long lastChecked;
+
+        private long size;
+
+        private long nextDue;
+
+        private Entry(final String uri, final long lastChecked, final long size, final long nextDue) {
+            this.uri = uri;
+            this.lastChecked = lastChecked;
+            this.size = size;
+            this.nextDue = nextDue;
+        }
+
+        /**
+         * @return the URI of the binary
+         */
+        String getUri() {
+            return uri;
+        }
+
+        /**
+         * @return the time (in milliseconds since the epoch) of the last check, or 0 if never checked
+         */
+        long getLastChecked() {
+            return lastChecked;
+        }
+
+        /**
+         * @return the size of the binary in bytes, or -1 if unknown
+         */
+        long getSize() {
+            return size;
+        }
+    }
+
+    private static final Comparator<Entry> BY_STALENESS = Comparator.<Entry>comparingLong(e -> e.nextDue)
+        .thenComparing(e -> e.uri);
+
+    private final Path path;
+
+    private final long period;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final TreeSet<Entry> queue = new TreeSet<>(BY_STALENESS);
+
+    private Writer log;
+
+    private long logLines;
+
+    /**
+     * Open an index, creating it if it does not exist.
+     *
+     * @param path the location of the index
+     * @param period the length of time (in milliseconds) after a check that a binary is next due
+     * @throws IOException if the index could not be read
+     */
+    FixityIndex(final Path path, final long period) throws IOException {
+        this.path = path;
+        this.period = period;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path)) {
+            load();
+        }
+        if (logLines > 2L * entries.size()) {
+            compact();
+        }
+        log = Files.newBufferedWriter(path, UTF_8, CREATE, APPEND);
+    }
+
+    /**
+     * Add a binary that is not already indexed; it is immediately due for a check.
+     *
+     * @param uri the binary URI
+     * @return whether the binary was added
+     * @throws IOException if the index could not be updated
+     */
+    synchronized boolean register(final String uri) throws IOException {
+        if (entries.containsKey(uri)) {
+            return false;
+        }
+        put(new Entry(uri, 0L, -1L, 0L));
+        append(0L, -1L, uri);
+        return true;
+    }
+
+    /**
+     * Record a fixity check.
+     *
+     * @param uri the binary URI
+     * @param time the time of the check, in milliseconds since the epoch
+     * @param size the size of the binary, or -1 if unknown
+     * @return the size previously recorded for the binary, -1 if it was unknown, or 0 if it was not indexed
+     * @throws IOException if the index could not be updated
+     */
+    synchronized long checked(final String uri, final long time, final long size) throws IOException {
+        final Entry previous = entries.get(uri);
+        final long known = size >= 0 ? size : previous != null ? previous.size : -1L;
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        put(new Entry(uri, time, known, time + period));
+        append(time, known, uri);
+        return previous != null ? previous.size : 0L;
+    }
+
+    /**
+     * Remove a binary from the index.
+     *
+     * @param uri the binary URI
+     * @throws IOException if the index could not be updated
+     */
+    synchronized void remove(final String uri) throws IOException {
+        final Entry entry = entries.remove(uri);
+        if (entry != null) {
+            queue.remove(entry);
+            append(REMOVED, -1L, uri);
+        }
+    }
+
+    /**
+     * Take the stalest binary that is due for a check. Until the check is recorded, the
+     * binary is not due again for the given length of time.
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @param retry the length of time (in milliseconds) after which an unrecorded check is repeated
+     * @return the binary, if any is due
+     */
+    synchronized Optional<Entry> poll(final long now, final long retry) {
+        if (queue.isEmpty() || queue.first().nextDue > now) {
+            return Optional.empty();
+        }
+        final Entry entry = queue.pollFirst();
+        entry.nextDue = now + retry;
+        queue.add(entry);
+        return Optional.of(new Entry(entry.uri, entry.lastChecked, entry.size, entry.nextDue));
+    }
+
+    /**
+     * @return the number of indexed binaries
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param now the current time, in milliseconds since the epoch
+     * @return the number of binaries that are due for a check
+     */
+    synchronized int countDue(final long now) {
+        return queue.headSet(new Entry("", 0L, 0L, now + 1L)).size();
+    }
+
+    /**
+     * Rewrite the log so that it holds a single line for each indexed binary.
+     *
+     * @throws IOException if the index could not be written
+     */
+    synchronized void compact() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(tmp, UTF_8)) {
+            for (final Entry entry : entries.values()) {
+                writer.write(line(entry.lastChecked, entry.size, entry.uri));
+            }
+        }
+        Files.move(tmp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        logLines = entries.size();
+        if (log != null) {
+            log = Files.newBufferedWriter(path, UTF_8, CREATE, APPEND);
+        }
+        LOGGER.debug("Compacted fixity index {} to {} entries", path, logLines);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (logLines > 2L * entries.size()) {
+            compact();
+        }
+        log.close();
+    }
+
+    private void put(final Entry entry) {
+        entries.put(entry.uri, entry);
+        queue.add(entry);
+    }
+
+    private void append(final long lastChecked, final long size, final String uri) throws IOException {
+        log.write(line(lastChecked, size, uri));
+        log.flush();
+        logLines += 1;
+    }
+
+    private void load() throws IOException {
+        try (final BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logLines += 1;
+                final String[] parts = line.split(" ", 3);
+                try {
+                    final long lastChecked = Long.parseLong(parts[0]);
+                    final long size = Long.parseLong(parts[1]);
+                    final Entry previous = entries.remove(parts[2]);
+                    if (previous != null) {
+                        queue.remove(previous);
+                    }
+                    if (lastChecked != REMOVED) {
+                        put(new Entry(parts[2], lastChecked, size, lastChecked == 0L ? 0L : lastChecked + period));
+                    }
+                } catch (final NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                    // e.g. a line that was only partially written
+                    LOGGER.warn("Ignoring malformed line in fixity index {}: {}", path, line);
+                }
+            }
+        }
+        LOGGER.info("Loaded {} binaries from fixity index {}", entries.size(), path);
+    }
+
+    private static String line(final long lastChecked, final long size, final String uri) {
+        return lastChecked + " " + size + " " + uri + "\n";
+    }
+}
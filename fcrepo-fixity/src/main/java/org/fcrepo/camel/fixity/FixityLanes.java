@@ -0,0 +1,191 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Assign binaries to fixity lanes by size, and measure the throughput of each lane.
+ *
+ * Binaries larger than the threshold, or whose size is unknown, are assigned to the large lane
+ * and all others to the small lane. Each lane is consumed by its own workers, so that a few very
+ * large binaries do not hold up the checks of many small ones. The lanes are message broker queues,
+ * whose headers may only hold single values, so the described digests are joined into a single
+ * header value, separated by spaces.
+ *
+ * @author agent
+ */
+public class FixityLanes implements FixityLanesMBean {
+
+    public static final String FIXITY_LANE = "CamelFixityLane";
+
+    public static final String LARGE = "large";
+
+    public static final String SMALL = "small";
+
+    /* the length of time (in seconds) over which throughput is measured */
+    private static final int WINDOW = 60;
+
+    private final long threshold;
+
+    private final Throughput large = new Throughput();
+
+    private final Throughput small = new Throughput();
+
+    /**
+     * The number of bytes checked in a lane, in total and over the last minute.
+     */
+    static final class Throughput {
+
+        private final long[] buckets = new long[WINDOW];
+
+        private long bucket;
+
+        private long bytes;
+
+        private long count;
+
+        /**
+         * Record a completed check.
+         *
+         * @param size the size of the binary, in bytes
+         * @param now the current time, in milliseconds since the epoch
+         */
+        synchronized void add(final long size, final long now) {
+            advance(now);
+            buckets[(int) (bucket % WINDOW)] += size;
+            bytes += size;
+            count += 1;
+        }
+
+        /**
+         * @param now the current time, in milliseconds since the epoch
+         * @return the mean number of bytes checked per second over the window
+         */
+        synchronized long rate(final long now) {
+            advance(now);
+            long sum = 0L;
+            for (final long b : buckets) {
+                sum += b;
+            }
+            return sum / WINDOW;
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        synchronized long getCount() {
+            return count;
+        }
+
+        private void advance(final long now) {
+            final long current = MILLISECONDS.toSeconds(now);
+            for (long b = Math.max(bucket + 1, current - WINDOW + 1); b <= current; b++) {
+                buckets[(int) (b % WINDOW)] = 0L;
+            }
+            bucket = Math.max(bucket, current);
+        }
+    }
+
+    /**
+     * Create the fixity lanes.
+     *
+     * @param threshold the size (in bytes) above which a binary is assigned to the large lane
+     */
+    public FixityLanes(final long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Assign the binary identified by the current message to a lane, according to the size in
+     * the CamelFixitySize header. The lane is set in the CamelFixityLane header.
+     *
+     * @param exchange the current message exchange
+     */
+    public void assign(final Exchange exchange) {
+        final long size = size(exchange.getIn().getHeader(FIXITY_SIZE, String.class));
+        exchange.getIn().setHeader(FIXITY_LANE, size < 0 || size > threshold ? LARGE : SMALL);
+        final Object digests = exchange.getIn().getHeader(FIXITY_MESSAGE_DIGEST);
+        if (digests instanceof Collection) {
+            exchange.getIn().setHeader(FIXITY_MESSAGE_DIGEST, ((Collection<?>) digests).stream()
+                    .map(Object::toString).collect(Collectors.joining(" ")));
+        }
+    }
+
+    /**
+     * Record the completion of the fixity check of the binary identified by the current message.
+     *
+     * @param exchange the current message exchange
+     */
+    public void completed(final Exchange exchange) {
+        final long size = Math.max(size(exchange.getIn().getHeader(FIXITY_SIZE, String.class)), 0L);
+        final Throughput lane = LARGE.equals(exchange.getIn().getHeader(FIXITY_LANE, String.class)) ? large : small;
+        lane.add(size, System.currentTimeMillis());
+    }
+
+    @Override
+    public long getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public long getLargeBytesPerSecond() {
+        return large.rate(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getSmallBytesPerSecond() {
+        return small.rate(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getLargeBytes() {
+        return large.getBytes();
+    }
+
+    @Override
+    public long getSmallBytes() {
+        return small.getBytes();
+    }
+
+    @Override
+    public long getLargeCount() {
+        return large.getCount();
+    }
+
+    @Override
+    public long getSmallCount() {
+        return small.getCount();
+    }
+
+    private static long size(final String size) {
+        try {
+            return size == null || size.trim().isEmpty() ? -1L : Long.parseLong(size.trim());
+        } catch (final NumberFormatException ex) {
+            return -1L;
+        }
+    }
+}
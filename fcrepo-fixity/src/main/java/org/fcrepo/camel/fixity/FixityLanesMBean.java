@@ -0,0 +1,61 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * Management interface for the size-based fixity lanes.
+ *
+ * @author agent
+ */
+public interface FixityLanesMBean {
+
+    /**
+     * @return the size (in bytes) above which a binary is checked in the large lane
+     */
+    long getThreshold();
+
+    /**
+     * @return the number of bytes checked per second in the large lane, over the last minute
+     */
+    long getLargeBytesPerSecond();
+
+    /**
+     * @return the number of bytes checked per second in the small lane, over the last minute
+     */
+    long getSmallBytesPerSecond();
+
+    /**
+     * @return the total number of bytes checked in the large lane
+     */
+    long getLargeBytes();
+
+    /**
+     * @return the total number of bytes checked in the small lane
+     */
+    long getSmallBytes();
+
+    /**
+     * @return the number of binaries checked in the large lane
+     */
+    long getLargeCount();
+
+    /**
+     * @return the number of binaries checked in the small lane
+     */
+    long getSmallCount();
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.camel.Exchange.ROUTE_STOP;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixityTrigger.FIXITY_TRIGGERED;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+
+/**
+ * A persistent store of the latest fixity result for each binary.
+ *
+ * Results are held in memory and persisted as an append-only log, which is compacted when it
+ * has grown to more than twice the number of results. Each line of the log holds the time of
+ * the check (in milliseconds since the epoch), the outcome, the message digest ("-" if unknown)
+ * and the URI of the binary, separated by spaces.
+ *
+ * A binary whose last check succeeded within the freshness window is not checked again, so
+ * that duplicate requests (e.g. from several schedulers) do not each result in a full check.
+ * Binaries whose last check failed are always checked again, as are binaries whose check
+ * was triggered by a change in the repository.
+ *
+ * The store is only opened (and created) when it is first used, so that no file is created
+ * while the results are disabled.
+ *
+ * @author agent
+ */
+public class FixityResults implements FixityResultsMBean {
+
+    private static final Logger LOGGER = getLogger(FixityResults.class);
+
+    public static final String FIXITY_OUTCOME = "CamelFixityOutcome";
+
+    private static final String SUCCESS = "SUCCESS";
+
+    private static final String UNKNOWN = "-";
+
+    /* the log is only compacted while running once it holds at least this many lines */
+    private static final long MIN_COMPACTION = 10000L;
+
+    private final Path path;
+
+    private final long freshness;
+
+    private final Map<String, Result> results = new HashMap<>();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private Writer log;
+
+    private long logLines;
+
+    /**
+     * The result of a fixity check.
+     */
+    static final class Result {
+
+        private final long time;
+
+        private final String outcome;
+
+        private final String digest;
+
+        private Result(final long time, final String outcome, final String digest) {
+            this.time = time;
+            this.outcome = outcome;
+            this.digest = digest;
+        }
+
+        /**
+         * @return the time (in milliseconds since the epoch) of the check
+         */
+        long getTime() {
+            return time;
+        }
+
+        /**
+         * @return the outcome of the check, e.g. SUCCESS
+         */
+        String getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return the message digest, or "-" if unknown
+         */
+        String getDigest() {
+            return digest;
+        }
+
+        @Override
+        public String toString() {
+            return outcome + " " + digest + " " + Instant.ofEpochMilli(time);
+        }
+    }
+
+    /**
+     * Create a results store, which is opened on first use and created if it does not exist.
+     *
+     * @param store the location of the store
+     * @param freshness the length of time (in seconds) for which a successful check is not repeated;
+     *        zero or less to always repeat checks
+     */
+    public FixityResults(final String store, final long freshness) {
+        this.path = Paths.get(store);
+        this.freshness = SECONDS.toMillis(freshness);
+    }
+
+    /**
+     * Stop the route if the binary identified by the current message was successfully checked
+     * within the freshness window, unless the check was triggered by a change to the binary.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the store could not be read
+     */
+    public void fresh(final Exchange exchange) throws IOException {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (exchange.getIn().getHeader(FIXITY_TRIGGERED, false, Boolean.class)) {
+            LOGGER.debug("Checking fixity of {}: the binary has changed", uri);
+        } else if (uri != null && isFresh(uri, System.currentTimeMillis())) {
+            LOGGER.debug("Skipping fixity check of {}: recently verified", uri);
+            skipped.incrementAndGet();
+            exchange.setProperty(ROUTE_STOP, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Record the result of a fixity check of the binary identified by the current message.
+     * The outcome and digest are taken from the CamelFixityOutcome and CamelFixityMessageDigest headers.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the store could not be updated
+     */
+    public void record(final Exchange exchange) throws IOException {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri != null) {
+            record(uri, System.currentTimeMillis(), exchange.getIn().getHeader(FIXITY_OUTCOME, String.class),
+                    exchange.getIn().getHeader(FIXITY_MESSAGE_DIGEST, String.class));
+        }
+    }
+
+    /**
+     * Record the result of a fixity check.
+     *
+     * @param uri the binary URI
+     * @param time the time of the check, in milliseconds since the epoch
+     * @param outcome the outcome of the check
+     * @param digest the message digest, if known
+     * @throws IOException if the store could not be updated
+     */
+    synchronized void record(final String uri, final long time, final String outcome, final String digest)
+            throws IOException {
+        open(true);
+        final Result result = new Result(time, token(outcome), token(digest));
+        results.put(uri, result);
+        log.write(line(uri, result));
+        log.flush();
+        logLines += 1;
+        recorded.incrementAndGet();
+        if (logLines > MIN_COMPACTION && logLines > 2L * results.size()) {
+            compactLog();
+            log = Files.newBufferedWriter(path, UTF_8, CREATE, APPEND);
+        }
+    }
+
+    /**
+     * @param uri the binary URI
+     * @return the latest result for the binary, if any
+     * @throws IOException if the store could not be read
+     */
+    synchronized Optional<Result> get(final String uri) throws IOException {
+        open(false);
+        return Optional.ofNullable(results.get(uri));
+    }
+
+    /**
+     * @param uri the binary URI
+     * @param now the current time, in milliseconds since the epoch
+     * @return whether the last check of the binary succeeded within the freshness window
+     * @throws IOException if the store could not be read
+     */
+    synchronized boolean isFresh(final String uri, final long now) throws IOException {
+        open(true);
+        final Result result = results.get(uri);
+        return result != null && SUCCESS.equals(result.outcome) && now - result.time < freshness;
+    }
+
+    /**
+     * Close the store.
+     *
+     * @throws IOException if the store could not be written
+     */
+    public synchronized void shutdown() throws IOException {
+        if (log == null) {
+            return;
+        }
+        if (logLines > 2L * results.size()) {
+            compactLog();
+        } else {
+            log.close();
+        }
+    }
+
+    @Override
+    public synchronized int getResultCount() {
+        try {
+            open(false);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return results.size();
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    @Override
+    public long getRecordedCount() {
+        return recorded.get();
+    }
+
+    @Override
+    public String status(final String uri) {
+        try {
+            return get(uri).map(Result::toString).orElse("UNKNOWN");
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void compact() {
+        try {
+            open(false);
+            if (log == null) {
+                return;
+            }
+            compactLog();
+            log = Files.newBufferedWriter(path, UTF_8, CREATE, APPEND);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+     * Open the store, if it has not already been opened. Unless create is set, a store that
+     * does not exist yet is left unopened, so that monitoring the store does not create it.
+     */
+    private void open(final boolean create) throws IOException {
+        if (log != null || !create && !Files.exists(path)) {
+            return;
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (Files.exists(path)) {
+            load();
+        }
+        if (logLines > 2L * results.size()) {
+            compactLog();
+        }
+        log = Files.newBufferedWriter(path, UTF_8, CREATE, APPEND);
+    }
+
+    /*
+     * Close the log and rewrite it so that it holds a single line for each binary.
+     */
+    private void compactLog() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(tmp, UTF_8)) {
+            for (final Map.Entry<String, Result> entry : results.entrySet()) {
+                writer.write(line(entry.getKey(), entry.getValue()));
+            }
+        }
+        Files.move(tmp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        logLines = results.size();
+        LOGGER.debug("Compacted fixity results {} to {} entries", path, logLines);
+    }
+
+    private void load() throws IOException {
+        try (final BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logLines += 1;
+                final String[] parts = line.split(" ", 4);
+                try {
+                    results.put(parts[3], new Result(Long.parseLong(parts[0]), parts[1], parts[2]));
+                } catch (final NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                    // e.g. a line that was only partially written
+                    LOGGER.warn("Ignoring malformed line in fixity results {}: {}", path, line);
+                }
+            }
+        }
+        LOGGER.info("Loaded {} fixity results from {}", results.size(), path);
+    }
+
+    private static String token(final String value) {
+        return value == null || value.trim().isEmpty() ? UNKNOWN : value.trim().replace(' ', '_');
+    }
+
+    private static String line(final String uri, final Result result) {
+        return result.time + " " + result.outcome + " " + result.digest + " " + uri + "\n";
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * Management interface for the fixity results store.
+ *
+ * @author agent
+ */
+public interface FixityResultsMBean {
+
+    /**
+     * @return the number of binaries with a stored result
+     */
+    int getResultCount();
+
+    /**
+     * @return the number of fixity checks skipped because the binary was recently verified
+     */
+    long getSkippedCount();
+
+    /**
+     * @return the number of fixity results recorded
+     */
+    long getRecordedCount();
+
+    /**
+     * Look up the latest result for a binary.
+     *
+     * @param uri the binary URI
+     * @return the outcome, digest and time of the latest check, or UNKNOWN
+     */
+    String status(String uri);
+
+    /**
+     * Rewrite the store so that it holds a single entry for each binary.
+     */
+    void compact();
+}
@@ -17,12 +17,26 @@
  */
 package org.fcrepo.camel.fixity;
 
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixityLanes.FIXITY_LANE;
+import static org.fcrepo.camel.fixity.FixityLanes.LARGE;
+import static org.fcrepo.camel.fixity.FixityResults.FIXITY_OUTCOME;
+import static org.fcrepo.camel.fixity.FixitySample.FIXITY_CREATED;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.fcrepo.camel.fixity.FixityTrigger.FIXITY_TRIGGERED;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+import static org.fcrepo.camel.fixity.StreamingRdf.RDF_TYPE;
+import static org.fcrepo.camel.fixity.StreamingRdf.extract;
+import static org.fcrepo.camel.fixity.StreamingRdf.isBinary;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import org.apache.camel.LoggingLevel;
+import org.apache.camel.Predicate;
+import org.apache.camel.PropertyInject;
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.builder.xml.Namespaces;
-import org.apache.jena.vocabulary.RDF;
+import org.apache.camel.model.ProcessorDefinition;
+import org.fcrepo.camel.processor.EventProcessor;
+import org.fcrepo.client.FcrepoOperationFailedException;
 import org.slf4j.Logger;
 
 /**
@@ -37,14 +51,45 @@ public class FixityRouter extends RouteBuilder {
 
     private static final String REPOSITORY = "http://fedora.info/definitions/v4/repository#";
 
+    private static final String PREMIS = "http://www.loc.gov/premis/rdf/v1#";
+
+    private static final String BINARY = REPOSITORY + "Binary";
+
+    private static final String FIXITY_TYPE = "CamelFixityType";
+
+    // N-Triples are read line by line; the Link headers of earlier responses are not relied upon
+    private static final String DESCRIPTION = "fcrepo:{{fcrepo.baseUrl}}?preferInclude=ServerManaged" +
+        "&accept=application/n-triples";
+
+    @PropertyInject(value = "fixity.sweep.enabled", defaultValue = "false")
+    private String sweepEnabled;
+
+    @PropertyInject(value = "fixity.local.enabled", defaultValue = "false")
+    private String localEnabled;
+
+    @PropertyInject(value = "fixity.results.enabled", defaultValue = "false")
+    private String resultsEnabled;
+
+    @PropertyInject(value = "fixity.concurrency.limit", defaultValue = "1")
+    private String concurrencyLimit;
+
+    @PropertyInject(value = "fixity.lanes.enabled", defaultValue = "false")
+    private String lanesEnabled;
+
+    @PropertyInject(value = "fixity.triplestore.enabled", defaultValue = "false")
+    private String triplestoreEnabled;
+
+    @PropertyInject(value = "fixity.sample.enabled", defaultValue = "false")
+    private String sampleEnabled;
+
+    @PropertyInject(value = "fixity.trigger.enabled", defaultValue = "false")
+    private String triggerEnabled;
+
     /**
      * Configure the message route workflow.
      */
     public void configure() throws Exception {
 
-        final Namespaces ns = new Namespaces("rdf", RDF.uri);
-        ns.add("premis", "http://www.loc.gov/premis/rdf/v1#");
-
         /**
          * A generic error handler (specific to this RouteBuilder)
          */
@@ -52,27 +97,214 @@ public class FixityRouter extends RouteBuilder {
             .maximumRedeliveries("{{error.maxRedeliveries}}")
             .log("Index Routing Error: ${routeId}");
 
+        /**
+         * Optionally, remove binaries that have been deleted from the repository from the fixity index,
+         * rather than retrying them on every sweep.
+         */
+        if (Boolean.parseBoolean(sweepEnabled)) {
+            onException(FcrepoOperationFailedException.class)
+                .onWhen(isGone())
+                .handled(true)
+                .log(LoggingLevel.INFO, LOGGER, "Removing deleted binary ${headers[CamelFcrepoUri]} from the index")
+                .to("bean:fixitySweep?method=removed");
+        }
+
         /**
          * Handle fixity events
          */
-        from("{{fixity.stream}}")
+        final ProcessorDefinition<?> filtered = from("{{fixity.stream}}")
             .routeId("FcrepoFixity")
-            .to("fcrepo:{{fcrepo.baseUrl}}?preferInclude=ServerManged&accept=application/rdf+xml")
-            .filter().xpath(
-                    "/rdf:RDF/rdf:Description/rdf:type" +
-                    "[@rdf:resource='" + REPOSITORY + "Binary']", ns)
+            .streamCaching()
+            .to(DESCRIPTION)
+            // the body is read once, for the type and for the values used by the check
+            .process(extract()
+                    .all(RDF_TYPE, FIXITY_TYPE)
+                    .first(PREMIS + "hasSize", FIXITY_SIZE)
+                    .all(PREMIS + "hasMessageDigest", FIXITY_MESSAGE_DIGEST))
+            .filter(header(FIXITY_TYPE).contains(BINARY));
+
+        /**
+         * Optionally, skip binaries that were successfully checked within the freshness window.
+         */
+        if (Boolean.parseBoolean(resultsEnabled)) {
+            filtered.to("bean:fixityResults?method=fresh");
+        }
+
+        /**
+         * Optionally, check several binaries at once on a pool of workers, subject to the global
+         * and per-prefix concurrency limits. Alternatively, binaries are assigned by size to two
+         * lanes, each with its own workers, so that small binaries are not held up by large ones.
+         * The lanes are message broker queues, so that checks waiting in a lane survive a restart.
+         */
+        final int workers = Integer.parseInt(concurrencyLimit);
+        final ProcessorDefinition<?> pooled;
+        if (Boolean.parseBoolean(lanesEnabled)) {
+            filtered.to("bean:fixityLanes?method=assign")
+                .convertBodyTo(String.class)
+                .choice()
+                    .when(header(FIXITY_LANE).isEqualTo(LARGE))
+                        .inOnly("{{fixity.lanes.large.stream}}")
+                    .otherwise()
+                        .inOnly("{{fixity.lanes.small.stream}}")
+                .end();
+
+            from("{{fixity.lanes.large.stream}}?concurrentConsumers={{fixity.lanes.large.concurrency}}")
+                .routeId("FcrepoFixityLargeLane")
+                .routeDescription("Check the fixity of large binaries")
+                .to("direct:FcrepoFixityCheck")
+                .to("bean:fixityLanes?method=completed");
+
+            from("{{fixity.lanes.small.stream}}?concurrentConsumers={{fixity.lanes.small.concurrency}}")
+                .routeId("FcrepoFixitySmallLane")
+                .routeDescription("Check the fixity of small binaries")
+                .to("direct:FcrepoFixityCheck")
+                .to("bean:fixityLanes?method=completed");
+
+            pooled = from("direct:FcrepoFixityCheck")
+                .routeId("FcrepoFixityCheck")
+                .streamCaching();
+        } else if (workers > 1) {
+            pooled = filtered.threads(workers, workers).threadName("FcrepoFixity worker");
+        } else {
+            pooled = filtered;
+        }
+
+        final ProcessorDefinition<?> binary = pooled
             .log(LoggingLevel.INFO, LOGGER,
                     "Checking Fixity for ${headers[CamelFcrepoUri]}")
-            .delay(simple("{{fixity.delay}}"))
-            .to("fcrepo:{{fcrepo.baseUrl}}?fixity=true&accept=application/rdf+xml")
-            .choice()
-                .when().xpath(
-                        "/rdf:RDF/rdf:Description/premis:hasEventOutcome" +
-                        "[text()='SUCCESS']", ns)
+            .delay(simple("{{fixity.delay}}"));
+
+        if (workers > 1) {
+            binary.to("bean:fixityWorkers");
+        }
+
+        /**
+         * Either compute the digests locally, comparing them with those held in the repository,
+         * or have the repository check the fixity of the binary.
+         */
+        if (Boolean.parseBoolean(localEnabled)) {
+            binary.to("bean:localFixity?method=check");
+        } else {
+            binary.to("fcrepo:{{fcrepo.baseUrl}}?fixity=true&accept=application/n-triples");
+        }
+
+        // the result is read once, for the outcome and for the values that are recorded
+        binary.process(extract()
+                .first(PREMIS + "hasEventOutcome", FIXITY_OUTCOME)
+                .first(PREMIS + "hasMessageDigest", FIXITY_MESSAGE_DIGEST)
+                .first(PREMIS + "hasSize", FIXITY_SIZE));
+
+        final boolean events = Boolean.parseBoolean(triplestoreEnabled);
+        final boolean sample = Boolean.parseBoolean(sampleEnabled);
+
+        if (Boolean.parseBoolean(resultsEnabled)) {
+            binary.to("bean:fixityResults?method=record");
+        }
+
+        binary.choice()
+                .when(header(FIXITY_OUTCOME).isEqualTo("SUCCESS"))
                     .to("{{fixity.success}}")
                 .otherwise()
                     .log(LoggingLevel.WARN, LOGGER,
                         "Fixity error on ${headers[CamelFcrepoUri]}")
-                    .to("{{fixity.failure}}");
+                    .to("{{fixity.failure}}")
+            .end();
+
+        /**
+         * Optionally, record each check as a PREMIS event in the triplestore, writing the events in batches.
+         */
+        if (events) {
+            binary.to("bean:fixityEvents?method=record");
+
+            from("timer:FcrepoFixityEvents?period={{fixity.triplestore.interval}}")
+                .routeId("FcrepoFixityEvents")
+                .routeDescription("Write PREMIS fixity events to the triplestore")
+                .to("bean:fixityEvents?method=flush");
+        }
+
+        /**
+         * Optionally, check the fixity of every indexed binary at least once per period, within a budget.
+         * This is only configured when enabled, so that the index is otherwise unused.
+         */
+        if (Boolean.parseBoolean(sweepEnabled)) {
+            binary.to("bean:fixitySweep?method=checked");
+
+            from("{{fixity.sweep.inventory}}")
+                .routeId("FcrepoFixityInventory")
+                .routeDescription("Add binaries to the fixity index")
+                .streamCaching()
+                .to(DESCRIPTION)
+                .filter(isBinary(BINARY))
+                    .to("bean:fixitySweep?method=register");
+
+            from("timer:FcrepoFixitySweep?period={{fixity.sweep.interval}}")
+                .routeId("FcrepoFixitySweep")
+                .routeDescription("Request fixity checks for the stalest binaries, within the budget")
+                .to("bean:fixitySweep?method=due")
+                .split(body())
+                    .setHeader(FCREPO_URI).body()
+                    .setBody(constant(null))
+                    .to("{{fixity.stream}}");
+        }
+
+        /**
+         * Optionally, check a stratified random sample of the binaries in an inventory, estimating the failure rate.
+         */
+        if (sample) {
+            binary.to("bean:fixitySample?method=checked");
+
+            from("{{fixity.sample.inventory}}")
+                .routeId("FcrepoFixitySampleInventory")
+                .routeDescription("Offer binaries to the fixity sample")
+                .streamCaching()
+                .to(DESCRIPTION)
+                .process(extract()
+                        .all(RDF_TYPE, FIXITY_TYPE)
+                        .first(REPOSITORY + "created", FIXITY_CREATED))
+                .filter(header(FIXITY_TYPE).contains(BINARY))
+                    .to("bean:fixitySample?method=offer");
+
+            from("timer:FcrepoFixitySample?period={{fixity.sample.interval}}")
+                .routeId("FcrepoFixitySample")
+                .routeDescription("Request fixity checks for the sampled binaries")
+                .to("bean:fixitySample?method=draw")
+                .split(body())
+                    .setHeader(FCREPO_URI).body()
+                    .setBody(constant(null))
+                    .to("{{fixity.stream}}");
+        }
+
+        /**
+         * Optionally, check the fixity of binaries once they have settled after being created or modified.
+         * This is only configured when enabled, so that the repository's event stream is not otherwise consumed.
+         */
+        if (Boolean.parseBoolean(triggerEnabled)) {
+            from("{{input.stream}}")
+                .routeId("FcrepoFixityTrigger")
+                .routeDescription("Schedule fixity checks for new and modified binaries")
+                .process(new EventProcessor())
+                .to("bean:fixityTrigger?method=event");
+
+            from("timer:FcrepoFixityTriggered?period={{fixity.trigger.interval}}")
+                .routeId("FcrepoFixityTriggered")
+                .routeDescription("Request fixity checks for new and modified binaries that have settled")
+                .to("bean:fixityTrigger?method=due")
+                .split(body())
+                    .setHeader(FCREPO_URI).body()
+                    // the binary has changed, so an earlier successful check does not make it fresh
+                    .setHeader(FIXITY_TRIGGERED, constant(true))
+                    .setBody(constant(null))
+                    .to("{{fixity.stream}}");
+        }
+    }
+
+    /*
+     * Whether the repository reported that the requested resource does not exist (404) or has been deleted (410).
+     */
+    private static Predicate isGone() {
+        return exchange -> {
+            final FcrepoOperationFailedException ex = exchange.getException(FcrepoOperationFailedException.class);
+            return ex != null && (ex.getStatusCode() == 404 || ex.getStatusCode() == 410);
+        };
     }
 }
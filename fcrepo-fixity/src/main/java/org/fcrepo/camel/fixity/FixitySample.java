@@ -0,0 +1,358 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixityResults.FIXITY_OUTCOME;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+
+/**
+ * An audit that checks the fixity of a random, stratified sample of binaries.
+ *
+ * Binaries are offered from an inventory and grouped into strata, either by their container or by
+ * the day on which they were created. Each stratum keeps a fixed-size reservoir holding the binaries
+ * with the lowest keys, where the key of a binary is a hash of the seed and its URI. The sample is
+ * therefore uniform within each stratum and, for a given seed, the same whatever the order of the
+ * inventory, while only the reservoirs (and not the inventory) are held in memory.
+ *
+ * Once the inventory has been quiet for a while, the sample is drawn and its fixity checked. The
+ * outcomes are used to estimate the failure rate of the inventory as a whole, weighting each stratum
+ * by its population, together with the upper bound of a 95% confidence interval.
+ *
+ * @author agent
+ */
+public class FixitySample implements FixitySampleMBean {
+
+    private static final Logger LOGGER = getLogger(FixitySample.class);
+
+    public static final String FIXITY_CREATED = "CamelFixityCreated";
+
+    public static final String CONTAINER = "container";
+
+    public static final String DAY = "day";
+
+    private static final String SUCCESS = "SUCCESS";
+
+    private static final String UNKNOWN = "unknown";
+
+    /* the z-score of a two-sided 95% confidence interval */
+    private static final double Z = 1.96;
+
+    private final String strata;
+
+    private final int size;
+
+    private final long seed;
+
+    private final long quietPeriod;
+
+    /* the reservoirs of the inventory that is being collected, by stratum */
+    private final Map<String, Reservoir> reservoirs = new HashMap<>();
+
+    /* the sampled binaries that have yet to be checked, with their strata */
+    private final Map<String, String> pending = new HashMap<>();
+
+    /* the statistics of the sample that was last drawn, by stratum */
+    private final Map<String, Stratum> drawn = new TreeMap<>();
+
+    private long lastOffer;
+
+    /**
+     * Create a fixity sample.
+     *
+     * @param strata how binaries are grouped: "container", "day" or anything else for a single stratum
+     * @param size the number of binaries sampled from each stratum
+     * @param seed the seed of the sample
+     * @param quietPeriod the length of time (in milliseconds) for which the inventory must be quiet
+     *        before the sample is drawn
+     */
+    public FixitySample(final String strata, final int size, final long seed, final long quietPeriod) {
+        this.strata = strata.trim().toLowerCase(Locale.ROOT);
+        this.size = Math.max(size, 1);
+        this.seed = seed;
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Offer the binary identified by the current message to the sample. When sampling by day,
+     * the CamelFixityCreated header is expected to hold its creation date.
+     *
+     * @param exchange the current message exchange
+     */
+    public void offer(final Exchange exchange) {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri != null) {
+            offer(uri, exchange.getIn().getHeader(FIXITY_CREATED, String.class), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Offer a binary to the sample.
+     *
+     * @param uri the URI of the binary
+     * @param created the creation date of the binary, may be null
+     * @param now the current time (in milliseconds)
+     */
+    synchronized void offer(final String uri, final String created, final long now) {
+        reservoirs.computeIfAbsent(stratum(uri, created), s -> new Reservoir()).offer(uri, key(uri));
+        lastOffer = now;
+    }
+
+    /**
+     * Draw the sample, once the inventory has been quiet for long enough. The statistics of the
+     * previous sample are replaced and the next inventory starts with empty reservoirs.
+     *
+     * @return the URIs of the sampled binaries, or an empty list if no sample is ready
+     */
+    public List<String> draw() {
+        return draw(System.currentTimeMillis());
+    }
+
+    synchronized List<String> draw(final long now) {
+        final List<String> uris = new ArrayList<>();
+        if (reservoirs.isEmpty() || now - lastOffer < quietPeriod) {
+            return uris;
+        }
+
+        if (!pending.isEmpty()) {
+            LOGGER.info("Replacing an incomplete fixity sample: {}", report());
+        }
+        pending.clear();
+        drawn.clear();
+        for (final Map.Entry<String, Reservoir> entry : reservoirs.entrySet()) {
+            final Reservoir reservoir = entry.getValue();
+            final List<String> sampled = reservoir.sample();
+            drawn.put(entry.getKey(), new Stratum(reservoir.population, sampled.size()));
+            for (final String uri : sampled) {
+                pending.put(uri, entry.getKey());
+                uris.add(uri);
+            }
+        }
+        reservoirs.clear();
+        LOGGER.info("Drew a fixity sample of {} binaries from {} strata", uris.size(), drawn.size());
+        return uris;
+    }
+
+    /**
+     * Record the outcome of a fixity check, if the binary identified by the current message is part of the sample.
+     *
+     * @param exchange the current message exchange
+     */
+    public void checked(final Exchange exchange) {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri != null) {
+            checked(uri, exchange.getIn().getHeader(FIXITY_OUTCOME, String.class));
+        }
+    }
+
+    /**
+     * Record the outcome of a fixity check.
+     *
+     * @param uri the URI of the binary
+     * @param outcome the outcome of the check, e.g. SUCCESS
+     */
+    synchronized void checked(final String uri, final String outcome) {
+        final String stratum = pending.remove(uri);
+        if (stratum == null) {
+            return;
+        }
+        final Stratum stats = drawn.get(stratum);
+        stats.checked += 1;
+        if (!SUCCESS.equals(outcome)) {
+            stats.failures += 1;
+        }
+        if (pending.isEmpty()) {
+            LOGGER.info("Completed a fixity sample: {}", report());
+        }
+    }
+
+    @Override
+    public synchronized long getInventoryCount() {
+        return reservoirs.values().stream().mapToLong(r -> r.population).sum();
+    }
+
+    @Override
+    public synchronized long getPopulationCount() {
+        return drawn.values().stream().mapToLong(s -> s.population).sum();
+    }
+
+    @Override
+    public synchronized int getSampleCount() {
+        return drawn.values().stream().mapToInt(s -> s.sampled).sum();
+    }
+
+    @Override
+    public synchronized int getCheckedCount() {
+        return drawn.values().stream().mapToInt(s -> s.checked).sum();
+    }
+
+    @Override
+    public synchronized int getFailureCount() {
+        return drawn.values().stream().mapToInt(s -> s.failures).sum();
+    }
+
+    @Override
+    public synchronized double getCoverage() {
+        final long population = getPopulationCount();
+        return population == 0 ? 0.0 : (double) getCheckedCount() / population;
+    }
+
+    @Override
+    public synchronized double getFailureRate() {
+        // each stratum is weighted by its share of the population of the checked strata
+        long population = 0;
+        double failures = 0.0;
+        for (final Stratum stratum : drawn.values()) {
+            if (stratum.checked > 0) {
+                population += stratum.population;
+                failures += stratum.population * (double) stratum.failures / stratum.checked;
+            }
+        }
+        return population == 0 ? 0.0 : failures / population;
+    }
+
+    @Override
+    public synchronized double getFailureRateUpperBound() {
+        final int checked = getCheckedCount();
+        if (checked == 0) {
+            return 1.0;
+        }
+        // the upper bound of the Wilson score interval, which remains informative when no failures are found
+        final double p = getFailureRate();
+        final double z2 = Z * Z;
+        final double centre = p + z2 / (2 * checked);
+        final double spread = Z * Math.sqrt(p * (1 - p) / checked + z2 / (4.0 * checked * checked));
+        return Math.min(1.0, (centre + spread) / (1 + z2 / checked));
+    }
+
+    @Override
+    public synchronized String report() {
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT,
+                    "checked %d of %d sampled binaries (coverage %.4f%% of %d), %d failures, "
+                    + "estimated failure rate %.6f (95%% upper bound %.6f)",
+                    getCheckedCount(), getSampleCount(), 100.0 * getCoverage(), getPopulationCount(),
+                    getFailureCount(), getFailureRate(), getFailureRateUpperBound()));
+        for (final Map.Entry<String, Stratum> entry : drawn.entrySet()) {
+            final Stratum stratum = entry.getValue();
+            report.append(String.format(Locale.ROOT, "%n  %s: population %d, sampled %d, checked %d, failures %d",
+                        entry.getKey(), stratum.population, stratum.sampled, stratum.checked, stratum.failures));
+        }
+        return report.toString();
+    }
+
+    private String stratum(final String uri, final String created) {
+        if (CONTAINER.equals(strata)) {
+            final String path = uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+            return path.substring(0, path.lastIndexOf('/') + 1);
+        } else if (DAY.equals(strata)) {
+            // an xsd:dateTime starts with the date
+            return created != null && created.length() >= 10 ? created.substring(0, 10) : UNKNOWN;
+        }
+        return "";
+    }
+
+    private long key(final String uri) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(seed).array());
+            return ByteBuffer.wrap(digest.digest(uri.getBytes(UTF_8))).getLong();
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * A bottom-k reservoir: the binaries with the lowest keys, held in a heap with the highest key at the top.
+     */
+    private class Reservoir {
+
+        private final PriorityQueue<Candidate> heap = new PriorityQueue<>(
+                Comparator.comparingLong((Candidate c) -> c.key).thenComparing(c -> c.uri).reversed());
+
+        private long population;
+
+        void offer(final String uri, final long key) {
+            population += 1;
+            final Candidate candidate = new Candidate(uri, key);
+            if (heap.size() < size || heap.comparator().compare(candidate, heap.peek()) > 0) {
+                // a binary that is offered again has the same key, so it can only be a duplicate of a candidate
+                if (heap.stream().anyMatch(c -> c.uri.equals(uri))) {
+                    population -= 1;
+                    return;
+                }
+                heap.add(candidate);
+                if (heap.size() > size) {
+                    heap.poll();
+                }
+            }
+        }
+
+        List<String> sample() {
+            final List<Candidate> candidates = new ArrayList<>(heap);
+            candidates.sort(heap.comparator().reversed());
+            final List<String> uris = new ArrayList<>();
+            candidates.forEach(c -> uris.add(c.uri));
+            return uris;
+        }
+    }
+
+    private static class Candidate {
+
+        private final String uri;
+
+        private final long key;
+
+        Candidate(final String uri, final long key) {
+            this.uri = uri;
+            this.key = key;
+        }
+    }
+
+    private static class Stratum {
+
+        private final long population;
+
+        private final int sampled;
+
+        private int checked;
+
+        private int failures;
+
+        Stratum(final long population, final int sampled) {
+            this.population = population;
+            this.sampled = sampled;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * Management interface for the fixity sample.
+ *
+ * @author agent
+ */
+public interface FixitySampleMBean {
+
+    /**
+     * @return the number of binaries offered from the inventory since the last sample was drawn
+     */
+    long getInventoryCount();
+
+    /**
+     * @return the number of binaries in the inventory from which the last sample was drawn
+     */
+    long getPopulationCount();
+
+    /**
+     * @return the number of binaries in the last sample
+     */
+    int getSampleCount();
+
+    /**
+     * @return the number of binaries in the last sample whose fixity has been checked
+     */
+    int getCheckedCount();
+
+    /**
+     * @return the number of binaries in the last sample that failed their fixity check
+     */
+    int getFailureCount();
+
+    /**
+     * @return the proportion of the inventory whose fixity has been checked as part of the last sample
+     */
+    double getCoverage();
+
+    /**
+     * @return the estimated proportion of the inventory that would fail a fixity check
+     */
+    double getFailureRate();
+
+    /**
+     * @return the upper bound of the 95% confidence interval of the estimated failure rate
+     */
+    double getFailureRateUpperBound();
+
+    /**
+     * @return a summary of the coverage and failures of the last sample, by stratum
+     */
+    String report();
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+
+/**
+ * A scheduled sweep that checks the fixity of every indexed binary at least once per period.
+ *
+ * Binaries are added to a persistent index, either from an inventory (e.g. the output of the
+ * reindexing service) or as their fixity is checked. On each tick of the sweep, the binaries
+ * that are due for a check are taken from the index, stalest first, for as long as the budget
+ * allows. The budget is enforced by two token buckets: one limiting the number of checks per
+ * second, and one limiting the number of bytes per hour. A binary whose size is not yet known
+ * is charged once its size is recorded. A binary is removed from the index once the repository
+ * reports that it no longer exists.
+ *
+ * The index is only opened (and created) when it is first used, so that no file is created
+ * while the sweep is disabled.
+ *
+ * @author agent
+ */
+public class FixitySweep implements FixitySweepMBean {
+
+    private static final Logger LOGGER = getLogger(FixitySweep.class);
+
+    public static final String FIXITY_SIZE = "CamelFixitySize";
+
+    /* the length of time after which a check that was never recorded (e.g. because it failed) is repeated */
+    private static final long RETRY = HOURS.toMillis(6);
+
+    /* the maximum number of checks requested on a single tick */
+    private static final int MAX_BATCH = 1000;
+
+    private final Path path;
+
+    private final long period;
+
+    private FixityIndex index;
+
+    private final TokenBucket requests;
+
+    private final TokenBucket bytes;
+
+    private final AtomicLong emitted = new AtomicLong();
+
+    private final AtomicLong checked = new AtomicLong();
+
+    /**
+     * Create a fixity sweep.
+     *
+     * @param index the location of the persistent index
+     * @param period the maximum length of time (in days) between checks of a binary
+     * @param bytesPerHour the maximum number of bytes to check per hour; zero or less for no limit
+     * @param requestsPerSecond the maximum number of checks to start per second; zero or less for no limit
+     */
+    public FixitySweep(final String index, final long period, final long bytesPerHour,
+            final double requestsPerSecond) {
+        this.path = Paths.get(index);
+        this.period = DAYS.toMillis(period);
+        this.requests = new TokenBucket(requestsPerSecond, requestsPerSecond);
+        // allow up to a minute's worth of bytes to be checked in a burst
+        this.bytes = new TokenBucket(bytesPerHour / 3600.0, bytesPerHour / 60.0);
+    }
+
+    /**
+     * Add the binary identified by the current message to the index, if it is not already indexed.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the index could not be updated
+     */
+    public void register(final Exchange exchange) throws IOException {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri != null && index(true).get().register(uri)) {
+            LOGGER.debug("Added {} to the fixity index", uri);
+        }
+    }
+
+    /**
+     * Record a fixity check of the binary identified by the current message.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the index could not be updated
+     */
+    public void checked(final Exchange exchange) throws IOException {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri != null) {
+            final long size = size(exchange.getIn().getHeader(FIXITY_SIZE, String.class));
+            // a binary requested by the sweep before its size was known is charged now
+            if (index(true).get().checked(uri, System.currentTimeMillis(), size) < 0 && size > 0) {
+                bytes.take(size);
+            }
+            checked.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove the binary identified by the current message from the index, once it has been
+     * deleted from the repository.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the index could not be updated
+     */
+    public void removed(final Exchange exchange) throws IOException {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        final Optional<FixityIndex> opened = index(false);
+        if (uri != null && opened.isPresent()) {
+            opened.get().remove(uri);
+            LOGGER.debug("Removed {} from the fixity index", uri);
+        }
+    }
+
+    /**
+     * Take the binaries that are due for a check, as far as the budget allows.
+     *
+     * @return the URIs of the binaries, stalest first
+     * @throws IOException if the index could not be opened
+     */
+    public List<String> due() throws IOException {
+        final List<String> uris = new ArrayList<>();
+        final Optional<FixityIndex> opened = index(false);
+        if (!opened.isPresent()) {
+            return uris;
+        }
+        final long now = System.currentTimeMillis();
+        while (uris.size() < MAX_BATCH && requests.hasTokens() && bytes.hasTokens()) {
+            final Optional<FixityIndex.Entry> entry = opened.get().poll(now, RETRY);
+            if (!entry.isPresent()) {
+                break;
+            }
+            requests.take(1.0);
+            if (entry.get().getSize() > 0) {
+                bytes.take(entry.get().getSize());
+            }
+            uris.add(entry.get().getUri());
+        }
+        if (!uris.isEmpty()) {
+            LOGGER.debug("Requesting fixity checks for {} binaries", uris.size());
+            emitted.addAndGet(uris.size());
+        }
+        return uris;
+    }
+
+    /**
+     * Close the index.
+     *
+     * @throws IOException if the index could not be written
+     */
+    public synchronized void shutdown() throws IOException {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Override
+    public int getIndexedCount() {
+        return monitored().map(FixityIndex::size).orElse(0);
+    }
+
+    @Override
+    public int getDueCount() {
+        return monitored().map(opened -> opened.countDue(System.currentTimeMillis())).orElse(0);
+    }
+
+    @Override
+    public long getEmittedCount() {
+        return emitted.get();
+    }
+
+    @Override
+    public long getCheckedCount() {
+        return checked.get();
+    }
+
+    @Override
+    public long getAvailableBytes() {
+        return (long) bytes.getTokens();
+    }
+
+    @Override
+    public void compact() {
+        try {
+            final Optional<FixityIndex> opened = index(false);
+            if (opened.isPresent()) {
+                opened.get().compact();
+            }
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+     * Open the index, if it has not already been opened. Unless create is set, an index that
+     * does not exist yet is left unopened, so that monitoring the sweep does not create it.
+     */
+    private synchronized Optional<FixityIndex> index(final boolean create) throws IOException {
+        if (index == null && (create || Files.exists(path))) {
+            index = new FixityIndex(path, period);
+        }
+        return Optional.ofNullable(index);
+    }
+
+    private Optional<FixityIndex> monitored() {
+        try {
+            return index(false);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static long size(final String size) {
+        try {
+            return size == null || size.trim().isEmpty() ? -1L : Long.parseLong(size.trim());
+        } catch (final NumberFormatException ex) {
+            return -1L;
+        }
+    }
+}
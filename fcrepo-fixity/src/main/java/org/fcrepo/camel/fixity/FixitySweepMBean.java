@@ -0,0 +1,56 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * Management interface for the fixity sweep.
+ *
+ * @author agent
+ */
+public interface FixitySweepMBean {
+
+    /**
+     * @return the number of indexed binaries
+     */
+    int getIndexedCount();
+
+    /**
+     * @return the number of binaries that are due for a fixity check
+     */
+    int getDueCount();
+
+    /**
+     * @return the number of fixity checks requested by the sweep
+     */
+    long getEmittedCount();
+
+    /**
+     * @return the number of fixity checks recorded in the index
+     */
+    long getCheckedCount();
+
+    /**
+     * @return the number of bytes that may currently be checked without exceeding the budget
+     */
+    long getAvailableBytes();
+
+    /**
+     * Rewrite the index so that it holds a single entry for each binary.
+     */
+    void compact();
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_RESOURCE_TYPE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.slf4j.Logger;
+
+/**
+ * Schedule fixity checks for binaries as they are created or modified in the repository.
+ *
+ * A check is requested once a binary has settled, i.e. once no further events for it have been
+ * received for the settle delay, so that repeated events (e.g. during an ingest) are coalesced into
+ * a single check. A binary that is modified continually is checked after at most ten settle delays.
+ *
+ * The requested checks carry the CamelFixityTriggered header, so that they are not skipped
+ * as recently verified: the binary has changed since any earlier check.
+ *
+ * This assumes that the event has been parsed by the fcrepo-camel EventProcessor.
+ *
+ * @author agent
+ */
+public class FixityTrigger implements FixityTriggerMBean {
+
+    private static final Logger LOGGER = getLogger(FixityTrigger.class);
+
+    public static final String FIXITY_TRIGGERED = "CamelFixityTriggered";
+
+    private static final List<String> EVENT_TYPES = asList(
+            "https://www.w3.org/ns/activitystreams#Create",
+            "https://www.w3.org/ns/activitystreams#Update",
+            "http://fedora.info/definitions/v4/event#ResourceCreation",
+            "http://fedora.info/definitions/v4/event#ResourceModification");
+
+    private static final List<String> BINARY_TYPES = asList(
+            "http://fedora.info/definitions/v4/repository#Binary",
+            "http://www.w3.org/ns/ldp#NonRDFSource");
+
+    private static final String FCR_METADATA = "/fcr:metadata";
+
+    /* the maximum number of settle delays for which a check may be postponed */
+    private static final int MAX_POSTPONED = 10;
+
+    /* the maximum number of checks requested at once */
+    private static final int MAX_BATCH = 1000;
+
+    private final long settle;
+
+    /* the binaries waiting to settle, with the times of their first events and of their checks */
+    private final Map<String, long[]> pending = new LinkedHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong emitted = new AtomicLong();
+
+    /**
+     * Create a fixity trigger.
+     *
+     * @param settle the length of time (in milliseconds) for which a binary must be unchanged before it is checked
+     */
+    public FixityTrigger(final long settle) {
+        this.settle = Math.max(settle, 0L);
+    }
+
+    /**
+     * Schedule a check of the resource identified by the current message, if the event
+     * records the creation or modification of a binary.
+     *
+     * @param exchange the current message exchange
+     */
+    @SuppressWarnings("unchecked")
+    public void event(final Exchange exchange) {
+        final Message in = exchange.getIn();
+        final String uri = in.getHeader(FCREPO_URI, String.class);
+        final List<String> eventTypes = in.getHeader(FCREPO_EVENT_TYPE, emptyList(), List.class);
+        final List<String> resourceTypes = in.getHeader(FCREPO_RESOURCE_TYPE, emptyList(), List.class);
+
+        // changes to a description do not change the binary itself
+        if (uri != null && !uri.endsWith(FCR_METADATA) && eventTypes.stream().anyMatch(EVENT_TYPES::contains)
+                && (resourceTypes.isEmpty() || resourceTypes.stream().anyMatch(BINARY_TYPES::contains))) {
+            event(uri, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Schedule a check of a binary.
+     *
+     * @param uri the URI of the binary
+     * @param now the time of the event (in milliseconds)
+     */
+    synchronized void event(final String uri, final long now) {
+        received.incrementAndGet();
+        final long[] times = pending.get(uri);
+        if (times == null) {
+            LOGGER.debug("Scheduling a fixity check of {}", uri);
+            pending.put(uri, new long[] {now, now + settle});
+        } else {
+            coalesced.incrementAndGet();
+            times[1] = Math.min(now + settle, times[0] + MAX_POSTPONED * settle);
+        }
+    }
+
+    /**
+     * Take the binaries that have settled.
+     *
+     * @return the URIs of the binaries, in the order of their first events
+     */
+    public List<String> due() {
+        return due(System.currentTimeMillis());
+    }
+
+    synchronized List<String> due(final long now) {
+        final List<String> uris = new ArrayList<>();
+        final Iterator<Map.Entry<String, long[]>> entries = pending.entrySet().iterator();
+        while (entries.hasNext() && uris.size() < MAX_BATCH) {
+            final Map.Entry<String, long[]> entry = entries.next();
+            if (entry.getValue()[1] <= now) {
+                uris.add(entry.getKey());
+                entries.remove();
+            }
+        }
+        if (!uris.isEmpty()) {
+            LOGGER.debug("Requesting fixity checks for {} new or modified binaries", uris.size());
+            emitted.addAndGet(uris.size());
+        }
+        return uris;
+    }
+
+    @Override
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    @Override
+    public long getEmittedCount() {
+        return emitted.get();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * Management interface for the event-triggered fixity checks.
+ *
+ * @author agent
+ */
+public interface FixityTriggerMBean {
+
+    /**
+     * @return the number of binaries waiting to settle before their fixity is checked
+     */
+    int getPendingCount();
+
+    /**
+     * @return the number of events received for new or modified binaries
+     */
+    long getReceivedCount();
+
+    /**
+     * @return the number of events coalesced with an earlier event for the same binary
+     */
+    long getCoalescedCount();
+
+    /**
+     * @return the number of fixity checks requested
+     */
+    long getEmittedCount();
+}
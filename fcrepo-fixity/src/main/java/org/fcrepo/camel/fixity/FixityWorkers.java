@@ -0,0 +1,250 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.slf4j.Logger;
+
+/**
+ * Limit the number of fixity checks that run concurrently, both in total and for each backing store.
+ *
+ * Backing stores are identified by URI prefixes, each with its own limit, so that (for example)
+ * binaries held on tape are checked with less concurrency than those held on disk. A binary is
+ * counted against the longest prefix that it matches; binaries that match no prefix are only
+ * subject to the global limit. A worker waits until both limits allow its check to start.
+ *
+ * In adaptive mode, the global limit starts at 1 and is adjusted up to the configured maximum
+ * using additive increase and multiplicative decrease: it grows while checks complete within
+ * the target latency and is reduced when they do not.
+ *
+ * @author agent
+ */
+public class FixityWorkers implements Processor, FixityWorkersMBean {
+
+    private static final Logger LOGGER = getLogger(FixityWorkers.class);
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private final int maxLimit;
+
+    private final boolean adaptive;
+
+    private final long targetLatency;
+
+    /* the limit and in-flight count for each prefix, longest prefix first */
+    private final Map<String, int[]> prefixes = new TreeMap<>(Comparator.comparingInt(String::length).reversed()
+            .thenComparing(Comparator.naturalOrder()));
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+
+    private int inFlight;
+
+    private int waiting;
+
+    private long completed;
+
+    /**
+     * Create a fixity worker limit.
+     *
+     * @param limit the maximum number of concurrent fixity checks
+     * @param prefixes a comma-separated list of URI prefixes and their limits, e.g. http://a/rest/tape=2
+     * @param adaptive whether to adjust the global limit according to the observed latency
+     * @param targetLatency the latency (in milliseconds) above which the adaptive limit is reduced
+     */
+    public FixityWorkers(final int limit, final String prefixes, final boolean adaptive, final long targetLatency) {
+        this.maxLimit = Math.max(limit, 1);
+        this.adaptive = adaptive;
+        this.targetLatency = MILLISECONDS.toNanos(targetLatency);
+        this.limit = adaptive ? 1.0 : maxLimit;
+        for (final String prefix : prefixes.split(",")) {
+            final int eq = prefix.lastIndexOf('=');
+            if (eq > 0) {
+                try {
+                    final int cap = Integer.parseInt(prefix.substring(eq + 1).trim());
+                    this.prefixes.put(prefix.substring(0, eq).trim(), new int[] {Math.max(cap, 1), 0});
+                } catch (final NumberFormatException ex) {
+                    LOGGER.warn("Ignoring malformed fixity concurrency prefix: {}", prefix);
+                }
+            } else if (!prefix.trim().isEmpty()) {
+                LOGGER.warn("Ignoring malformed fixity concurrency prefix: {}", prefix);
+            }
+        }
+    }
+
+    /**
+     * Wait until the fixity check of the binary identified by the current message may start.
+     * The check is counted as in flight until the exchange completes.
+     *
+     * @param exchange the current message exchange
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void process(final Exchange exchange) throws InterruptedException {
+        final String prefix = prefix(exchange.getIn().getHeader(FCREPO_URI, String.class));
+        acquire(prefix);
+        final long start = System.nanoTime();
+        exchange.addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(final Exchange done) {
+                release(prefix, System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * @param uri the binary URI
+     * @return the longest configured prefix of the URI, or null if there is none
+     */
+    String prefix(final String uri) {
+        if (uri != null) {
+            for (final String prefix : prefixes.keySet()) {
+                if (uri.startsWith(prefix)) {
+                    return prefix;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wait until a check may start.
+     *
+     * @param prefix the prefix of the binary, or null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire(final String prefix) throws InterruptedException {
+        final int[] store = prefix != null ? prefixes.get(prefix) : null;
+        lock.lock();
+        try {
+            waiting += 1;
+            try {
+                while (inFlight >= (int) limit || (store != null && store[1] >= store[0])) {
+                    available.await();
+                }
+            } finally {
+                waiting -= 1;
+            }
+            inFlight += 1;
+            if (store != null) {
+                store[1] += 1;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the completion of a check.
+     *
+     * @param prefix the prefix of the binary, or null
+     * @param latency the time (in nanoseconds) taken by the check
+     */
+    void release(final String prefix, final long latency) {
+        final int[] store = prefix != null ? prefixes.get(prefix) : null;
+        lock.lock();
+        try {
+            inFlight -= 1;
+            completed += 1;
+            if (store != null) {
+                store[1] -= 1;
+            }
+            if (adaptive) {
+                if (latency > targetLatency) {
+                    limit = Math.max(1.0, limit * DECREASE_FACTOR);
+                } else {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+                LOGGER.trace("Fixity check completed in {} ms, limit is now {}", NANOSECONDS.toMillis(latency),
+                        limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getInFlightCount() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getCompletedCount() {
+        lock.lock();
+        try {
+            return completed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, String> getPrefixes() {
+        final Map<String, String> counts = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            prefixes.forEach((prefix, store) -> counts.put(prefix, store[1] + "/" + store[0]));
+        } finally {
+            lock.unlock();
+        }
+        return counts;
+    }
+}
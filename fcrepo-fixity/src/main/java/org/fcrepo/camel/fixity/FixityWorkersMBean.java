@@ -0,0 +1,53 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import java.util.Map;
+
+/**
+ * Management interface for the fixity worker limits.
+ *
+ * @author agent
+ */
+public interface FixityWorkersMBean {
+
+    /**
+     * @return the current limit on concurrent fixity checks
+     */
+    int getLimit();
+
+    /**
+     * @return the number of fixity checks in flight
+     */
+    int getInFlightCount();
+
+    /**
+     * @return the number of workers waiting for a check to start
+     */
+    int getWaitingCount();
+
+    /**
+     * @return the number of completed fixity checks
+     */
+    long getCompletedCount();
+
+    /**
+     * @return the number of checks in flight and the limit (e.g. 1/2) for each URI prefix
+     */
+    Map<String, String> getPrefixes();
+}
@@ -0,0 +1,600 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.fcrepo.client.FcrepoHttpClientBuilder;
+import org.slf4j.Logger;
+
+/**
+ * Check the fixity of a binary by reading it from the repository and computing its digests locally.
+ *
+ * The binary is read once, and its SHA-1, SHA-256 and MD5 digests are computed in the same
+ * pass. They are compared with the digests advertised by the repository, both in the
+ * Digest header of the response (requested with Want-Digest) and in the premis:hasMessageDigest
+ * of the binary's description, and the size of the binary is compared with its premis:hasSize.
+ * The checks run on a bounded pool of threads, which limits the number of binaries read at once.
+ * The threads are only started as binaries are checked, so an unused checker holds no threads.
+ *
+ * Optionally, binaries are read in chunks, with HTTP Range requests. The state of the digests is
+ * checkpointed after each chunk, so that a read that fails is resumed from the end of the last
+ * complete chunk rather than from the start of the binary. Each chunk is read as a separate task,
+ * so the chunks of several large binaries are interleaved on the pool of threads.
+ *
+ * The result is written as an RDF/XML fixity description, in the same form as the one
+ * produced by the repository, so that it can be handled in the same way.
+ *
+ * @author agent
+ */
+public class LocalFixityChecker {
+
+    private static final Logger LOGGER = getLogger(LocalFixityChecker.class);
+
+    public static final String FIXITY_MESSAGE_DIGEST = "CamelFixityMessageDigest";
+
+    public static final String SUCCESS = "SUCCESS";
+
+    public static final String FAILURE = "BAD_CHECKSUM";
+
+    /* the digest algorithms, with their names in the Digest header and in digest URNs */
+    static final List<Algorithm> ALGORITHMS = unmodifiableList(asList(
+            new Algorithm("SHA-1", "sha", "sha1", "sha-1"),
+            new Algorithm("SHA-256", "sha-256", "sha-256", "sha256"),
+            new Algorithm("MD5", "md5", "md5")));
+
+    private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    private static final String PREMIS_NS = "http://www.loc.gov/premis/rdf/v1#";
+
+    private static final String WANT_DIGEST = "sha, sha-256, md5";
+
+    private final HttpClient httpClient;
+
+    private final ExecutorService executor;
+
+    private final int bufferSize;
+
+    private final long chunkSize;
+
+    private final int retries;
+
+    private final ThreadLocal<byte[]> buffers;
+
+    private final AtomicLong resumed = new AtomicLong();
+
+    /**
+     * A digest algorithm.
+     */
+    static final class Algorithm {
+
+        private final String name;
+
+        private final String header;
+
+        private final List<String> urns;
+
+        Algorithm(final String name, final String header, final String... urns) {
+            this.name = name;
+            this.header = header;
+            this.urns = asList(urns);
+        }
+
+        /**
+         * @return the URN of a digest, e.g. urn:sha1:...
+         */
+        String urn(final String hex) {
+            return "urn:" + urns.get(0) + ":" + hex;
+        }
+    }
+
+    /**
+     * Create a local fixity checker.
+     *
+     * @param builder FcrepoHttpClientBuilder for building HttpClient
+     * @param threads the maximum number of binaries read at once
+     * @param bufferSize the size (in bytes) of the buffer used by each thread
+     */
+    public LocalFixityChecker(final FcrepoHttpClientBuilder builder, final int threads, final int bufferSize) {
+        this(builder, threads, bufferSize, 0L, 0);
+    }
+
+    /**
+     * Create a local fixity checker that reads binaries in chunks.
+     *
+     * @param builder FcrepoHttpClientBuilder for building HttpClient
+     * @param threads the maximum number of chunks read at once
+     * @param bufferSize the size (in bytes) of the buffer used by each thread
+     * @param chunkSize the size (in bytes) of each chunk; zero or less to read each binary with a single request
+     * @param retries the number of times a chunk is read again, after an error, before the check fails
+     */
+    public LocalFixityChecker(final FcrepoHttpClientBuilder builder, final int threads, final int bufferSize,
+            final long chunkSize, final int retries) {
+        Objects.requireNonNull(builder);
+        this.httpClient = builder.build();
+        this.chunkSize = chunkSize;
+        this.retries = Math.max(retries, 0);
+        this.bufferSize = Math.max(bufferSize, 8192);
+        this.buffers = ThreadLocal.withInitial(() -> new byte[this.bufferSize]);
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            final Thread thread = new Thread(runnable, "Fixity reader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Check the fixity of the binary identified by the current message, replacing the body with the result.
+     *
+     * The expected digests and size, if known, are taken from the CamelFixityMessageDigest and CamelFixitySize
+     * headers. The digest header may hold a single digest or a list of them (either a collection or separated
+     * by whitespace), all of which must match.
+     *
+     * @param exchange the current message exchange
+     * @throws Exception if the binary could not be read
+     */
+    public void check(final Exchange exchange) throws Exception {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        final Future<Digests> future = chunkSize > 0 ? new RangedRead(uri).start() : executor.submit(() -> read(uri));
+        final Digests digests;
+        try {
+            digests = future.get();
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+
+        final List<String> expected = new ArrayList<>(digests.advertised);
+        final Object messageDigests = exchange.getIn().getHeader(FIXITY_MESSAGE_DIGEST);
+        final Collection<?> described = messageDigests instanceof Collection ? (Collection<?>) messageDigests :
+            singletonList(messageDigests);
+        for (final Object messageDigest : described) {
+            if (messageDigest != null && !messageDigest.toString().trim().isEmpty()) {
+                expected.addAll(asList(messageDigest.toString().trim().split("\\s+")));
+            }
+        }
+        final String size = exchange.getIn().getHeader(FIXITY_SIZE, String.class);
+
+        final String outcome = verify(digests, expected, size) ? SUCCESS : FAILURE;
+        LOGGER.debug("Local fixity check of {}: {}", uri, outcome);
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, "application/rdf+xml");
+        exchange.getIn().setBody(rdf(uri, outcome, digests.urns(), digests.size));
+    }
+
+    /**
+     * @return the number of chunked reads that were resumed after an error
+     */
+    long getResumedCount() {
+        return resumed.get();
+    }
+
+    /**
+     * Stop the reading threads, failing any checks that are waiting for them.
+     */
+    public void shutdown() {
+        for (final Runnable task : executor.shutdownNow()) {
+            if (task instanceof RangedRead) {
+                ((RangedRead) task).result.completeExceptionally(new IOException("The fixity reader was stopped"));
+            } else if (task instanceof Future) {
+                ((Future<?>) task).cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Compare the computed digests and size with those expected.
+     *
+     * @param digests the computed digests
+     * @param expected the expected digests, as URNs (e.g. urn:sha1:...)
+     * @param size the expected size, or null if unknown
+     * @return whether all of the expected values match and at least one digest was compared
+     */
+    static boolean verify(final Digests digests, final List<String> expected, final String size) {
+        if (size != null && !size.trim().isEmpty() && !size.trim().equals(Long.toString(digests.size))) {
+            LOGGER.warn("Expected size {}, but read {} bytes", size.trim(), digests.size);
+            return false;
+        }
+        int compared = 0;
+        for (final String urn : expected) {
+            final String[] parts = urn.split(":");
+            if (parts.length != 3) {
+                continue;
+            }
+            for (final Algorithm algorithm : ALGORITHMS) {
+                if (algorithm.urns.contains(parts[1].toLowerCase(Locale.ROOT))) {
+                    if (!parts[2].equalsIgnoreCase(digests.hex.get(algorithm))) {
+                        LOGGER.warn("Expected {} digest {}, but computed {}", algorithm.name, parts[2],
+                                digests.hex.get(algorithm));
+                        return false;
+                    }
+                    compared += 1;
+                }
+            }
+        }
+        if (compared == 0) {
+            LOGGER.warn("No supported digest was available to compare");
+        }
+        return compared > 0;
+    }
+
+    /**
+     * Describe the outcome of a fixity check as RDF/XML, in the form used by the repository.
+     *
+     * @param uri the binary
+     * @param outcome the outcome
+     * @param digests the computed digests, as URNs
+     * @param size the number of bytes read
+     * @return the description
+     */
+    static String rdf(final String uri, final String outcome, final List<String> digests, final long size) {
+        final String subject = escape(uri);
+        final String fixity = subject + "#fixity/" + System.currentTimeMillis();
+        final StringBuilder rdf = new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<rdf:RDF xmlns:rdf=\"").append(RDF_NS).append("\" xmlns:premis=\"").append(PREMIS_NS)
+            .append("\">\n")
+            .append("  <rdf:Description rdf:about=\"").append(subject).append("\">\n")
+            .append("    <premis:hasFixity rdf:resource=\"").append(fixity).append("\"/>\n")
+            .append("  </rdf:Description>\n")
+            .append("  <rdf:Description rdf:about=\"").append(fixity).append("\">\n")
+            .append("    <rdf:type rdf:resource=\"").append(PREMIS_NS).append("Fixity\"/>\n")
+            .append("    <premis:hasEventOutcome>").append(outcome).append("</premis:hasEventOutcome>\n");
+        for (final String digest : digests) {
+            rdf.append("    <premis:hasMessageDigest rdf:resource=\"").append(digest).append("\"/>\n");
+        }
+        return rdf.append("    <premis:hasSize rdf:datatype=\"http://www.w3.org/2001/XMLSchema#long\">")
+            .append(size).append("</premis:hasSize>\n")
+            .append("  </rdf:Description>\n")
+            .append("</rdf:RDF>\n").toString();
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /*
+     * Read a binary, computing all of its digests in a single pass.
+     */
+    private Digests read(final String uri) throws IOException {
+        final HttpGet request = new HttpGet(uri);
+        request.setHeader("Want-Digest", WANT_DIGEST);
+        final HttpResponse response = httpClient.execute(request);
+        try {
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IOException("Could not read " + uri + ": " + response.getStatusLine());
+            }
+            final Digests digests = new Digests();
+            try (final InputStream input = response.getEntity().getContent()) {
+                digests.update(input, buffers.get());
+            }
+            for (final Header header : response.getHeaders("Digest")) {
+                digests.advertised.addAll(parseDigestHeader(header.getValue()));
+            }
+            return digests;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    /*
+     * A read of a binary in chunks, which is resumed from the last checkpoint after an error.
+     */
+    private final class RangedRead implements Runnable {
+
+        private final String uri;
+
+        private final CompletableFuture<Digests> result = new CompletableFuture<>();
+
+        private Digests digests = new Digests();
+
+        private Digests checkpoint = digests.copy();
+
+        private long total = -1L;
+
+        private int failures;
+
+        RangedRead(final String uri) {
+            this.uri = uri;
+        }
+
+        Future<Digests> start() {
+            next();
+            return result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (readChunk()) {
+                    digests.finish();
+                    result.complete(digests);
+                    return;
+                }
+                checkpoint = digests.copy();
+                failures = 0;
+            } catch (final IOException ex) {
+                failures += 1;
+                if (failures > retries) {
+                    result.completeExceptionally(ex);
+                    return;
+                }
+                LOGGER.info("Error reading {}, resuming at byte {}: {}", uri, checkpoint.size, ex.getMessage());
+                resumed.incrementAndGet();
+                digests = checkpoint.copy();
+            } catch (final RuntimeException ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            next();
+        }
+
+        /*
+         * Queue the next chunk behind those of other binaries.
+         */
+        private void next() {
+            try {
+                executor.execute(this);
+            } catch (final RejectedExecutionException ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        /*
+         * Read the next chunk into the digests, returning whether the whole binary has been read.
+         */
+        private boolean readChunk() throws IOException {
+            final long offset = digests.size;
+            final HttpGet request = new HttpGet(uri);
+            request.setHeader("Range", "bytes=" + offset + "-" + (offset + chunkSize - 1));
+            if (offset == 0) {
+                request.setHeader("Want-Digest", WANT_DIGEST);
+            }
+            final HttpResponse response = httpClient.execute(request);
+            try {
+                final int status = response.getStatusLine().getStatusCode();
+                if (status == 416 && (offset == 0 || offset == total)) {
+                    // an empty binary, or one whose length is an exact multiple of the chunk size
+                    return true;
+                } else if (status == 200 && offset == 0) {
+                    LOGGER.debug("Range requests are not supported for {}; reading it in full", uri);
+                    advertised(response);
+                    try (final InputStream input = response.getEntity().getContent()) {
+                        digests.read(input, buffers.get());
+                    }
+                    return true;
+                } else if (status != 206) {
+                    throw new IOException("Could not read " + uri + " at byte " + offset + ": "
+                            + response.getStatusLine());
+                }
+
+                final long[] range = parseContentRange(response.getFirstHeader("Content-Range"));
+                if (range[0] != offset) {
+                    throw new IOException("Expected " + uri + " from byte " + offset + ", but received byte "
+                            + range[0]);
+                }
+                if (offset == 0) {
+                    advertised(response);
+                }
+                total = range[2];
+                final long length;
+                try (final InputStream input = response.getEntity().getContent()) {
+                    length = digests.read(input, buffers.get());
+                }
+                if (length != range[1] - range[0] + 1) {
+                    throw new IOException("Read " + length + " bytes of " + uri + " from byte " + offset
+                            + ", but expected " + (range[1] - range[0] + 1));
+                }
+                return total >= 0 && digests.size >= total;
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        }
+
+        private void advertised(final HttpResponse response) {
+            for (final Header header : response.getHeaders("Digest")) {
+                digests.advertised.addAll(parseDigestHeader(header.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Parse a Content-Range header.
+     *
+     * @param header the header, e.g. bytes 0-1023/4096
+     * @return the first and last bytes of the range, and the total length (or -1 if unknown)
+     * @throws IOException if the header is missing or malformed
+     */
+    static long[] parseContentRange(final Header header) throws IOException {
+        final String value = header == null ? "" : header.getValue().trim();
+        try {
+            if (value.startsWith("bytes ")) {
+                final int dash = value.indexOf('-');
+                final int slash = value.indexOf('/');
+                final String total = value.substring(slash + 1).trim();
+                return new long[] {
+                    Long.parseLong(value.substring(6, dash).trim()),
+                    Long.parseLong(value.substring(dash + 1, slash).trim()),
+                    "*".equals(total) ? -1L : Long.parseLong(total)};
+            }
+        } catch (final NumberFormatException | StringIndexOutOfBoundsException ex) {
+            // reported below
+        }
+        throw new IOException("Malformed Content-Range: " + value);
+    }
+
+    /**
+     * Convert the digests in a Digest header (RFC 3230) into URNs.
+     *
+     * @param value the header value, e.g. sha=..., md5=...
+     * @return the digests of supported algorithms, as URNs
+     */
+    static List<String> parseDigestHeader(final String value) {
+        final List<String> urns = new ArrayList<>();
+        for (final String digest : value.split(",")) {
+            final int eq = digest.indexOf('=');
+            if (eq > 0) {
+                final String name = digest.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+                for (final Algorithm algorithm : ALGORITHMS) {
+                    if (algorithm.header.equals(name)) {
+                        try {
+                            final byte[] bytes = Base64.getDecoder().decode(digest.substring(eq + 1).trim());
+                            urns.add(algorithm.urn(Hex.encodeHexString(bytes)));
+                        } catch (final IllegalArgumentException ex) {
+                            LOGGER.debug("Ignoring malformed digest {}", digest);
+                        }
+                    }
+                }
+            }
+        }
+        return urns;
+    }
+
+    /**
+     * The digests and size of a binary.
+     */
+    static final class Digests {
+
+        private final Map<Algorithm, MessageDigest> digests = new LinkedHashMap<>();
+
+        private final Map<Algorithm, String> hex = new LinkedHashMap<>();
+
+        private final List<String> advertised = new ArrayList<>();
+
+        private long size;
+
+        Digests() {
+            for (final Algorithm algorithm : ALGORITHMS) {
+                try {
+                    digests.put(algorithm, MessageDigest.getInstance(algorithm.name));
+                } catch (final NoSuchAlgorithmException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+
+        /**
+         * Add the remaining content of a stream to the digests.
+         *
+         * @param input the stream
+         * @param buffer the buffer to read into
+         * @throws IOException if the stream could not be read
+         */
+        void update(final InputStream input, final byte[] buffer) throws IOException {
+            read(input, buffer);
+            finish();
+        }
+
+        /**
+         * Add the remaining content of a stream to the digests, without completing them.
+         *
+         * @param input the stream
+         * @param buffer the buffer to read into
+         * @return the number of bytes read
+         * @throws IOException if the stream could not be read
+         */
+        long read(final InputStream input, final byte[] buffer) throws IOException {
+            long total = 0L;
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                update(buffer, 0, count);
+                total += count;
+            }
+            return total;
+        }
+
+        void update(final byte[] buffer, final int offset, final int count) {
+            for (final MessageDigest digest : digests.values()) {
+                digest.update(buffer, offset, count);
+            }
+            size += count;
+        }
+
+        /**
+         * @return a copy of the incomplete digests, from which they can be resumed
+         */
+        Digests copy() {
+            final Digests copy = new Digests();
+            try {
+                for (final Map.Entry<Algorithm, MessageDigest> entry : digests.entrySet()) {
+                    copy.digests.put(entry.getKey(), (MessageDigest) entry.getValue().clone());
+                }
+            } catch (final CloneNotSupportedException ex) {
+                throw new IllegalStateException(ex);
+            }
+            copy.advertised.addAll(advertised);
+            copy.size = size;
+            return copy;
+        }
+
+        void finish() {
+            digests.forEach((algorithm, digest) -> hex.put(algorithm, Hex.encodeHexString(digest.digest())));
+        }
+
+        /**
+         * @return the computed digests, as URNs
+         */
+        List<String> urns() {
+            final List<String> urns = new ArrayList<>();
+            hex.forEach((algorithm, value) -> urns.add(algorithm.urn(value)));
+            return urns;
+        }
+
+        /**
+         * @return the number of bytes read
+         */
+        long getSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singleton;
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Predicate;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+import org.slf4j.Logger;
+
+/**
+ * Streaming checks of the RDF returned by the repository.
+ *
+ * Rather than building a document for each response (as XPath does), the body is scanned
+ * in constant memory. RDF/XML is read with StAX and N-Triples line by line. Where several
+ * values are needed from the same response, an extraction copies all of them into headers
+ * in a single pass, so that later checks read the headers rather than the body.
+ *
+ * A body that is a stream should be cached (e.g. with streamCaching() on the route), so that
+ * it can be read again after it is scanned.
+ *
+ * @author agent
+ */
+final class StreamingRdf {
+
+    private static final Logger LOGGER = getLogger(StreamingRdf.class);
+
+    static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    static final String RDF_TYPE = RDF_NS + "type";
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Match a repository binary from its rdf:type.
+     *
+     * @param type the URI of the binary type, e.g. fedora:Binary
+     * @return the predicate
+     */
+    static Predicate isBinary(final String type) {
+        return exchange -> find(exchange, RDF_TYPE, type).isPresent();
+    }
+
+    /**
+     * Copy the values of several properties into headers, reading the body of a message once.
+     *
+     * @return an extraction, to which the properties are added
+     */
+    static Extraction extract() {
+        return new Extraction();
+    }
+
+    /**
+     * Scan the body of a message for the first triple with the given property (and value).
+     *
+     * @param exchange the current message exchange
+     * @param property the property URI
+     * @param value the value to match, or null for any value
+     * @return the value of the first matching triple, if any
+     */
+    static Optional<String> find(final Exchange exchange, final String property, final String value) {
+        final List<String> found = new ArrayList<>(1);
+        scan(exchange, singleton(property), (p, v) -> matches(v, value) && found.add(v));
+        return found.stream().findFirst();
+    }
+
+    /**
+     * Scan the body of a message for triples with the given properties.
+     *
+     * @param exchange the current message exchange
+     * @param properties the property URIs
+     * @param visitor receives the value of each matching triple, and may end the scan
+     */
+    static void scan(final Exchange exchange, final Set<String> properties, final Visitor visitor) {
+        final Message in = exchange.getIn();
+        final Object body = in.getBody();
+        if (body == null) {
+            return;
+        }
+        try {
+            final InputStream input = in.getBody(InputStream.class);
+            final String contentType = in.getHeader(Exchange.CONTENT_TYPE, String.class);
+            if (contentType != null && contentType.contains("n-triples")) {
+                scanNTriples(input, properties, visitor);
+            } else {
+                scanRdfXml(input, properties, visitor);
+            }
+        } catch (final IOException | XMLStreamException ex) {
+            LOGGER.warn("Could not read RDF: {}", ex.getMessage());
+        } finally {
+            if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+            }
+        }
+    }
+
+    /**
+     * Scan RDF/XML for triples with the given properties.
+     *
+     * Properties are matched as elements (with an rdf:resource attribute or literal content) and as
+     * property attributes; rdf:type is also matched by typed node elements.
+     *
+     * @param input the RDF/XML
+     * @param properties the property URIs
+     * @param visitor receives the value of each matching triple, and may end the scan
+     * @throws XMLStreamException if the RDF/XML could not be read
+     */
+    static void scanRdfXml(final InputStream input, final Set<String> properties, final Visitor visitor)
+            throws XMLStreamException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(input);
+        try {
+            int depth = 0;
+            // the content of a matching property element, which may hold a literal
+            StringBuilder literal = null;
+            String literalProperty = null;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == CHARACTERS || event == CDATA) {
+                    if (literal != null) {
+                        literal.append(reader.getText());
+                    }
+                } else if (event == END_ELEMENT) {
+                    if (literal != null && visitor.visit(literalProperty, literal.toString().trim())) {
+                        return;
+                    }
+                    literal = null;
+                    depth -= 1;
+                } else if (event == START_ELEMENT) {
+                    // a property element with child elements does not hold a literal
+                    literal = null;
+                    depth += 1;
+                    final String name = reader.getNamespaceURI() + reader.getLocalName();
+                    if (depth % 2 == 0) {
+                        // a node element: rdf:Description or a typed node, perhaps with property attributes
+                        if (properties.contains(RDF_TYPE) && !(RDF_NS + "Description").equals(name) &&
+                                visitor.visit(RDF_TYPE, name)) {
+                            return;
+                        }
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            final String attribute = reader.getAttributeNamespace(i) + reader.getAttributeLocalName(i);
+                            if (properties.contains(attribute) &&
+                                    visitor.visit(attribute, reader.getAttributeValue(i).trim())) {
+                                return;
+                            }
+                        }
+                    } else if (depth > 1 && properties.contains(name)) {
+                        final String resource = reader.getAttributeValue(RDF_NS, "resource");
+                        if (resource != null) {
+                            if (visitor.visit(name, resource.trim())) {
+                                return;
+                            }
+                        } else if (reader.getAttributeValue(RDF_NS, "parseType") == null &&
+                                reader.getAttributeValue(RDF_NS, "nodeID") == null) {
+                            literal = new StringBuilder();
+                            literalProperty = name;
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Scan N-Triples for triples with the given properties.
+     *
+     * @param input the N-Triples
+     * @param properties the property URIs
+     * @param visitor receives the value of each matching triple, and may end the scan
+     * @throws IOException if the N-Triples could not be read
+     */
+    static void scanNTriples(final InputStream input, final Set<String> properties, final Visitor visitor)
+            throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // the predicate follows the subject, which is a URI or a blank node
+            final String triple = line.trim();
+            int subject = triple.startsWith("<") ? triple.indexOf('>') + 1 : 0;
+            while (subject < triple.length() && !Character.isWhitespace(triple.charAt(subject))) {
+                subject += 1;
+            }
+            final String rest = triple.substring(subject).trim();
+            final int end = rest.indexOf('>');
+            if (rest.startsWith("<") && end > 0) {
+                final String property = rest.substring(1, end);
+                if (properties.contains(property)) {
+                    final String object = object(rest.substring(end + 1).trim());
+                    if (object != null && visitor.visit(property, object)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the values of the triples found by a scan.
+     */
+    @FunctionalInterface
+    interface Visitor {
+
+        /**
+         * @param property the property URI
+         * @param value the value, a URI or the lexical form of a literal
+         * @return whether to end the scan
+         */
+        boolean visit(String property, String value);
+    }
+
+    /**
+     * Copies the values of properties in the body of a message into headers, in a single pass.
+     * A header is removed if the body has no value for its property.
+     */
+    static final class Extraction implements Processor {
+
+        private final Map<String, String> first = new LinkedHashMap<>();
+
+        private final Map<String, String> all = new LinkedHashMap<>();
+
+        private Extraction() {
+            // use StreamingRdf.extract()
+        }
+
+        /**
+         * @param property the property URI
+         * @param header the header to hold the first value of the property
+         * @return this extraction
+         */
+        Extraction first(final String property, final String header) {
+            first.put(property, header);
+            return this;
+        }
+
+        /**
+         * @param property the property URI
+         * @param header the header to hold a list of all of the values of the property
+         * @return this extraction
+         */
+        Extraction all(final String property, final String header) {
+            all.put(property, header);
+            return this;
+        }
+
+        @Override
+        public void process(final Exchange exchange) {
+            final Map<String, List<String>> values = new LinkedHashMap<>();
+            final Set<String> properties = new HashSet<>(first.keySet());
+            properties.addAll(all.keySet());
+            scan(exchange, properties, (property, value) -> {
+                values.computeIfAbsent(property, p -> new ArrayList<>()).add(value);
+                return false;
+            });
+
+            final Message in = exchange.getIn();
+            first.forEach((property, header) -> {
+                final List<String> found = values.get(property);
+                if (found == null) {
+                    in.removeHeader(header);
+                } else {
+                    in.setHeader(header, found.get(0));
+                }
+            });
+            all.forEach((property, header) -> {
+                final List<String> found = values.get(property);
+                if (found == null) {
+                    in.removeHeader(header);
+                } else {
+                    in.setHeader(header, found);
+                }
+            });
+        }
+    }
+
+    /*
+     * The value of the object of an N-Triples statement: a URI or the lexical form of a literal.
+     */
+    private static String object(final String object) {
+        if (object.startsWith("<")) {
+            final int end = object.indexOf('>');
+            return end > 0 ? object.substring(1, end) : null;
+        } else if (object.startsWith("\"")) {
+            final StringBuilder literal = new StringBuilder();
+            for (int i = 1; i < object.length(); i++) {
+                final char c = object.charAt(i);
+                if (c == '"') {
+                    return literal.toString();
+                } else if (c == '\\' && i + 1 < object.length()) {
+                    i += 1;
+                    final char escaped = object.charAt(i);
+                    literal.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped == 'r' ? '\r' : escaped);
+                } else {
+                    literal.append(c);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(final String actual, final String value) {
+        return value == null || value.equals(actual.trim());
+    }
+
+    private StreamingRdf() {
+        // prevent instantiation
+    }
+}
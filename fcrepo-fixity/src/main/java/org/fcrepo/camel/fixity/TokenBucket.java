@@ -0,0 +1,87 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+/**
+ * A token bucket, used to limit the rate at which fixity checks are started.
+ *
+ * Tokens accumulate at a fixed rate up to the capacity of the bucket. A caller may take
+ * tokens whenever at least one is available, even if it takes more than are available: the bucket
+ * is then in debt, and no further tokens are available until it has been repaid. This
+ * allows work of unknown or very large size (e.g. a binary larger than the capacity) to
+ * proceed while still holding the long-term rate to the configured limit.
+ *
+ * @author agent
+ */
+class TokenBucket {
+
+    private final double rate;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long updated;
+
+    /**
+     * Create a token bucket, initially full.
+     *
+     * @param rate the number of tokens added per second; zero or less means no limit
+     * @param capacity the maximum number of tokens
+     */
+    TokenBucket(final double rate, final double capacity) {
+        this.rate = rate;
+        this.capacity = Math.max(capacity, 1.0);
+        this.tokens = this.capacity;
+        this.updated = System.nanoTime();
+    }
+
+    /**
+     * @return whether at least one token is available
+     */
+    synchronized boolean hasTokens() {
+        refill();
+        return rate <= 0 || tokens >= 1.0;
+    }
+
+    /**
+     * Take tokens from the bucket, possibly leaving it in debt.
+     *
+     * @param count the number of tokens
+     */
+    synchronized void take(final double count) {
+        refill();
+        tokens -= count;
+    }
+
+    /**
+     * @return the number of tokens available, which is negative while the bucket is in debt
+     */
+    synchronized double getTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(capacity, tokens + (now - updated) / 1e9 * rate);
+        }
+        updated = now;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batched recording of PREMIS fixity events.
+ *
+ * @author agent
+ */
+public class FixityEventsTest {
+
+    private static final String BINARY = "http://localhost/rest/binary";
+
+    private static final String DIGEST = "urn:sha1:7bc68857c9462100f17042d2d07f482721444eba";
+
+    private final List<String> updates = new CopyOnWriteArrayList<>();
+
+    private volatile int status = 204;
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private Path spool;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/update", exchange -> {
+            try (final InputStream body = exchange.getRequestBody()) {
+                final String form = IOUtils.toString(body, "UTF-8");
+                if (status < 300) {
+                    updates.add(URLDecoder.decode(form.substring("update=".length()), "UTF-8"));
+                }
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/update";
+        spool = Paths.get(System.getProperty("project.build.directory", "target"),
+                "fixity-" + UUID.randomUUID(), "events");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testEvent() {
+        final String event = FixityEvents.event(BINARY, Instant.parse("2026-10-18T12:00:00Z"), "SUCCESS", DIGEST,
+                "74");
+        assertEquals(7, event.split("\n").length);
+        assertTrue(event.contains("<http://www.loc.gov/premis/rdf/v1#hasEventRelatedObject> <" + BINARY + "> .\n"));
+        assertTrue(event.contains("\"2026-10-18T12:00:00Z\"^^<http://www.w3.org/2001/XMLSchema#dateTime>"));
+        assertTrue(event.contains("<http://www.loc.gov/premis/rdf/v1#hasEventOutcome> \"SUCCESS\" .\n"));
+        assertTrue(event.contains("<http://www.loc.gov/premis/rdf/v1#hasMessageDigest> <" + DIGEST + "> .\n"));
+
+        // the digest and size are omitted if unknown
+        assertEquals(5, FixityEvents.event(BINARY, Instant.now(), "BAD_CHECKSUM", null, "").split("\n").length);
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        final FixityEvents events = new FixityEvents(baseUrl, "http://localhost/fixity", 2, 10, spool.toString());
+        for (int i = 0; i < 5; ++i) {
+            events.add(FixityEvents.event(BINARY, Instant.now(), "SUCCESS", DIGEST, "74"));
+        }
+        assertEquals(5, events.getBufferedCount());
+
+        events.flush();
+        assertEquals(3, updates.size());
+        assertTrue(updates.get(0).startsWith("INSERT DATA { GRAPH <http://localhost/fixity> {\n"));
+        assertEquals(0, events.getBufferedCount());
+        assertEquals(3L, events.getWrittenBatchCount());
+        events.shutdown();
+
+        // nothing was spilled, so the spool directory was never created
+        assertFalse(Files.exists(spool));
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        final FixityEvents events = new FixityEvents(baseUrl, "", 2, 4, spool.toString());
+        status = 503;
+        for (int i = 0; i < 3; ++i) {
+            events.add(FixityEvents.event(BINARY, Instant.now(), "SUCCESS", DIGEST, "74"));
+        }
+        events.flush();
+        assertEquals(1, events.getSpilledBatchCount());
+        assertEquals(1, events.getBufferedCount());
+
+        // a full buffer is spilled without waiting for a flush
+        for (int i = 0; i < 3; ++i) {
+            events.add(FixityEvents.event(BINARY, Instant.now(), "SUCCESS", DIGEST, "74"));
+        }
+        assertEquals(0, events.getBufferedCount());
+        assertEquals(3, events.getSpilledBatchCount());
+        events.shutdown();
+        assertTrue(updates.isEmpty());
+
+        // spilled events are written once the triplestore is available, even after a restart
+        status = 204;
+        final FixityEvents restarted = new FixityEvents(baseUrl, "", 2, 4, spool.toString());
+        restarted.flush();
+        assertEquals(0, restarted.getSpilledBatchCount());
+        assertEquals(3, updates.size());
+        assertEquals(6, updates.stream().mapToInt(update -> update.split("Event> .\n").length - 1).sum());
+        assertTrue(updates.get(0).startsWith("INSERT DATA {\n"));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        final FixityEvents events = new FixityEvents(baseUrl, "", 2, 4, spool.toString());
+        status = 400;
+        events.add(FixityEvents.event(BINARY, Instant.now(), "SUCCESS", DIGEST, "74"));
+        events.flush();
+        status = 204;
+        events.flush();
+        assertEquals(0, events.getSpilledBatchCount());
+        assertTrue(updates.isEmpty());
+        // the rejected batch is set aside
+        final Path rejected = Files.list(spool).findFirst().get();
+        assertTrue(rejected.toString().endsWith(".rejected"));
+        assertFalse(new String(Files.readAllBytes(rejected), UTF_8).isEmpty());
+        events.shutdown();
+    }
+}
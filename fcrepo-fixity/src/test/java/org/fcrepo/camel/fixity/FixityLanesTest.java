@@ -0,0 +1,100 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixityLanes.FIXITY_LANE;
+import static org.fcrepo.camel.fixity.FixityLanes.LARGE;
+import static org.fcrepo.camel.fixity.FixityLanes.SMALL;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.fcrepo.camel.fixity.FixityLanes.Throughput;
+import org.junit.Test;
+
+/**
+ * Test the size-based fixity lanes.
+ *
+ * @author agent
+ */
+public class FixityLanesTest {
+
+    @Test
+    public void testAssign() {
+        final FixityLanes lanes = new FixityLanes(1000L);
+        assertEquals(SMALL, assign(lanes, "1000"));
+        assertEquals(LARGE, assign(lanes, "1001"));
+        // binaries of unknown size are assumed to be large
+        assertEquals(LARGE, assign(lanes, null));
+        assertEquals(LARGE, assign(lanes, "unknown"));
+    }
+
+    @Test
+    public void testDigestsJoined() {
+        final FixityLanes lanes = new FixityLanes(1000L);
+        final Exchange exchange = exchange("10", null);
+        exchange.getIn().setHeader(FIXITY_MESSAGE_DIGEST, asList("urn:sha1:abc", "urn:md5:def"));
+        lanes.assign(exchange);
+        // a message broker only carries single header values
+        assertEquals("urn:sha1:abc urn:md5:def", exchange.getIn().getHeader(FIXITY_MESSAGE_DIGEST));
+    }
+
+    @Test
+    public void testCompleted() {
+        final FixityLanes lanes = new FixityLanes(1000L);
+        lanes.completed(exchange("10", SMALL));
+        lanes.completed(exchange("20", SMALL));
+        lanes.completed(exchange("5000", LARGE));
+        assertEquals(2L, lanes.getSmallCount());
+        assertEquals(30L, lanes.getSmallBytes());
+        assertEquals(1L, lanes.getLargeCount());
+        assertEquals(5000L, lanes.getLargeBytes());
+    }
+
+    @Test
+    public void testThroughput() {
+        final Throughput throughput = new Throughput();
+        final long now = 1000000000000L;
+        throughput.add(60000L, now);
+        throughput.add(60000L, now + 30000L);
+        assertEquals(2000L, throughput.rate(now + 30000L));
+        // the first check is no longer within the last minute
+        assertEquals(1000L, throughput.rate(now + 61000L));
+        assertEquals(0L, throughput.rate(now + 200000L));
+        assertEquals(120000L, throughput.getBytes());
+    }
+
+    private static String assign(final FixityLanes lanes, final String size) {
+        final Exchange exchange = exchange(size, null);
+        lanes.assign(exchange);
+        return exchange.getIn().getHeader(FIXITY_LANE, String.class);
+    }
+
+    private static Exchange exchange(final String size, final String lane) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(FCREPO_URI, "http://localhost/rest/binary");
+        exchange.getIn().setHeader(FIXITY_SIZE, size);
+        exchange.getIn().setHeader(FIXITY_LANE, lane);
+        return exchange;
+    }
+}
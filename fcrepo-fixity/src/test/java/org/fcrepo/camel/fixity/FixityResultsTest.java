@@ -0,0 +1,146 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static org.apache.camel.Exchange.ROUTE_STOP;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixityResults.FIXITY_OUTCOME;
+import static org.fcrepo.camel.fixity.FixityTrigger.FIXITY_TRIGGERED;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the fixity results store.
+ *
+ * @author agent
+ */
+public class FixityResultsTest {
+
+    private static final String BINARY1 = "http://localhost/rest/binary1";
+
+    private static final String BINARY2 = "http://localhost/rest/binary2";
+
+    private static final String DIGEST = "urn:sha1:7bc68857c9462100f17042d2d07f482721444eba";
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = Paths.get(System.getProperty("project.build.directory", "target"),
+                "fixity-" + UUID.randomUUID(), "results.store");
+    }
+
+    @Test
+    public void testFreshness() throws Exception {
+        final long now = System.currentTimeMillis();
+        final FixityResults results = new FixityResults(path.toString(), 3600L);
+        results.record(BINARY1, now - 1000L, "SUCCESS", DIGEST);
+        results.record(BINARY2, now - 1000L, "BAD_CHECKSUM", DIGEST);
+
+        assertTrue(results.isFresh(BINARY1, now));
+        assertFalse(results.isFresh(BINARY1, now + 3600000L));
+        // failures are always checked again
+        assertFalse(results.isFresh(BINARY2, now));
+        assertFalse(results.isFresh("http://localhost/rest/binary3", now));
+        results.shutdown();
+    }
+
+    @Test
+    public void testExchanges() throws Exception {
+        final FixityResults results = new FixityResults(path.toString(), 3600L);
+        final Exchange checked = exchange(BINARY1);
+        checked.getIn().setHeader(FIXITY_OUTCOME, "SUCCESS");
+        checked.getIn().setHeader(FIXITY_MESSAGE_DIGEST, DIGEST);
+        results.record(checked);
+        assertEquals(1L, results.getRecordedCount());
+        assertTrue(results.status(BINARY1).startsWith("SUCCESS " + DIGEST + " "));
+        assertEquals("UNKNOWN", results.status(BINARY2));
+
+        final Exchange repeated = exchange(BINARY1);
+        results.fresh(repeated);
+        assertTrue(repeated.getProperty(ROUTE_STOP, false, Boolean.class));
+        final Exchange other = exchange(BINARY2);
+        results.fresh(other);
+        assertFalse(other.getProperty(ROUTE_STOP, false, Boolean.class));
+        assertEquals(1L, results.getSkippedCount());
+        results.shutdown();
+    }
+
+    @Test
+    public void testTriggeredCheck() throws Exception {
+        final FixityResults results = new FixityResults(path.toString(), 3600L);
+        results.record(BINARY1, System.currentTimeMillis(), "SUCCESS", DIGEST);
+
+        // a binary that has changed since its last check is checked again
+        final Exchange triggered = exchange(BINARY1);
+        triggered.getIn().setHeader(FIXITY_TRIGGERED, true);
+        results.fresh(triggered);
+        assertFalse(triggered.getProperty(ROUTE_STOP, false, Boolean.class));
+        assertEquals(0L, results.getSkippedCount());
+        results.shutdown();
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        final long now = System.currentTimeMillis();
+        final FixityResults results = new FixityResults(path.toString(), 3600L);
+        results.record(BINARY1, now - 2000L, "BAD_CHECKSUM", null);
+        results.record(BINARY1, now - 1000L, "SUCCESS", DIGEST);
+        results.record(BINARY2, now, "SUCCESS", "");
+        results.shutdown();
+
+        final FixityResults reopened = new FixityResults(path.toString(), 3600L);
+        assertEquals(2, reopened.getResultCount());
+        assertEquals(DIGEST, reopened.get(BINARY1).get().getDigest());
+        assertEquals(now - 1000L, reopened.get(BINARY1).get().getTime());
+        assertEquals("-", reopened.get(BINARY2).get().getDigest());
+        assertTrue(reopened.isFresh(BINARY1, now));
+        reopened.shutdown();
+    }
+
+    private static Exchange exchange(final String uri) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(FCREPO_URI, uri);
+        return exchange;
+    }
+
+    @Test
+    public void testUnused() throws Exception {
+        final FixityResults results = new FixityResults(path.toString(), 3600L);
+        assertEquals(0, results.getResultCount());
+        assertEquals("UNKNOWN", results.status(BINARY1));
+        results.compact();
+        results.shutdown();
+
+        // the store is only created once it is used by the routes
+        assertFalse(Files.exists(path.getParent()));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test the stratified fixity sample and its report.
+ *
+ * @author agent
+ */
+public class FixitySampleTest {
+
+    private static final String BASE = "http://localhost/rest/";
+
+    private static final long QUIET = 60000L;
+
+    private static List<String> inventory(final int containers, final int binaries) {
+        final List<String> uris = new ArrayList<>();
+        for (int c = 0; c < containers; c++) {
+            for (int b = 0; b < binaries; b++) {
+                uris.add(BASE + "container" + c + "/binary" + b);
+            }
+        }
+        return uris;
+    }
+
+    private static List<String> sample(final List<String> uris, final long seed) {
+        final FixitySample sample = new FixitySample("container", 5, seed, QUIET);
+        uris.forEach(uri -> sample.offer(uri, null, 0L));
+        final List<String> drawn = sample.draw(QUIET);
+        Collections.sort(drawn);
+        return drawn;
+    }
+
+    @Test
+    public void testReproducible() {
+        final List<String> uris = inventory(4, 1000);
+        final List<String> drawn = sample(uris, 1L);
+        assertEquals(20, drawn.size());
+        assertEquals(20, new HashSet<>(drawn).size());
+        for (int c = 0; c < 4; c++) {
+            final String container = BASE + "container" + c + "/";
+            assertEquals(5, drawn.stream().filter(uri -> uri.startsWith(container)).count());
+        }
+
+        // the order of the inventory does not matter, but the seed does
+        Collections.shuffle(uris, new Random(42L));
+        assertEquals(drawn, sample(uris, 1L));
+        assertNotEquals(drawn, sample(uris, 2L));
+    }
+
+    @Test
+    public void testQuietPeriod() {
+        final FixitySample sample = new FixitySample("none", 10, 1L, QUIET);
+        assertTrue(sample.draw(0L).isEmpty());
+
+        sample.offer(BASE + "binary1", null, 1000L);
+        sample.offer(BASE + "binary2", null, 2000L);
+        sample.offer(BASE + "binary1", null, 3000L);
+        assertEquals(2L, sample.getInventoryCount());
+        assertTrue(sample.draw(3000L + QUIET - 1).isEmpty());
+        assertEquals(2, sample.draw(3000L + QUIET).size());
+
+        // the next inventory starts afresh
+        assertEquals(0L, sample.getInventoryCount());
+        assertEquals(2L, sample.getPopulationCount());
+        assertTrue(sample.draw(10 * QUIET).isEmpty());
+    }
+
+    @Test
+    public void testStrataByDay() {
+        final FixitySample sample = new FixitySample("day", 1, 1L, QUIET);
+        sample.offer(BASE + "binary1", "2017-06-01T10:00:00.000Z", 0L);
+        sample.offer(BASE + "binary2", "2017-06-01T11:00:00.000Z", 0L);
+        sample.offer(BASE + "binary3", "2017-06-02T10:00:00.000Z", 0L);
+        sample.offer(BASE + "binary4", null, 0L);
+        assertEquals(3, sample.draw(QUIET).size());
+        assertTrue(sample.report().contains("2017-06-01: population 2, sampled 1"));
+        assertTrue(sample.report().contains("unknown: population 1, sampled 1"));
+    }
+
+    @Test
+    public void testReport() {
+        final FixitySample sample = new FixitySample("container", 10, 1L, QUIET);
+        inventory(2, 1000).forEach(uri -> sample.offer(uri, null, 0L));
+        final List<String> drawn = sample.draw(QUIET);
+        assertEquals(2000L, sample.getPopulationCount());
+        assertEquals(20, sample.getSampleCount());
+        assertEquals(1.0, sample.getFailureRateUpperBound(), 0.0);
+
+        // no failures: the estimate is zero, but the upper bound reflects the size of the sample
+        drawn.forEach(uri -> sample.checked(uri, "SUCCESS"));
+        assertEquals(20, sample.getCheckedCount());
+        assertEquals(0.01, sample.getCoverage(), 1e-9);
+        assertEquals(0.0, sample.getFailureRate(), 0.0);
+        assertEquals(0.161, sample.getFailureRateUpperBound(), 0.001);
+
+        // binaries outside the sample, and repeated checks, are not counted
+        sample.checked(BASE + "other", "BAD_CHECKSUM");
+        sample.checked(drawn.get(0), "BAD_CHECKSUM");
+        assertEquals(0, sample.getFailureCount());
+    }
+
+    @Test
+    public void testFailureRate() {
+        final FixitySample sample = new FixitySample("container", 10, 1L, QUIET);
+        final List<String> uris = inventory(1, 100);
+        uris.addAll(inventory(2, 300).subList(300, 600));
+        uris.forEach(uri -> sample.offer(uri, null, 0L));
+        final List<String> drawn = sample.draw(QUIET);
+
+        // two failures in the smaller stratum and one in the larger: strata are weighted by their population
+        final List<String> failed = new ArrayList<>();
+        drawn.stream().filter(uri -> uri.contains("container0/")).limit(2).forEach(failed::add);
+        drawn.stream().filter(uri -> uri.contains("container1/")).limit(1).forEach(failed::add);
+        drawn.forEach(uri -> sample.checked(uri, failed.contains(uri) ? "BAD_CHECKSUM" : "SUCCESS"));
+        assertEquals(3, sample.getFailureCount());
+        assertEquals(0.125, sample.getFailureRate(), 1e-9);
+        assertTrue(sample.getFailureRateUpperBound() > 0.125);
+        assertFalse(sample.report().isEmpty());
+    }
+}
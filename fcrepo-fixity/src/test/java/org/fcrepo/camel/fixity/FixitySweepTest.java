@@ -0,0 +1,151 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the fixity sweep, its index and its budget.
+ *
+ * @author agent
+ */
+public class FixitySweepTest {
+
+    private static final String BINARY1 = "http://localhost/rest/binary1";
+
+    private static final String BINARY2 = "http://localhost/rest/binary2";
+
+    private static final String BINARY3 = "http://localhost/rest/binary3";
+
+    private static final long DAY = 86400000L;
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = Paths.get(System.getProperty("project.build.directory", "target"),
+                "fixity-" + UUID.randomUUID(), "sweep.index");
+    }
+
+    @Test
+    public void testStalestFirst() throws Exception {
+        final long now = System.currentTimeMillis();
+        try (final FixityIndex index = new FixityIndex(path, 90 * DAY)) {
+            index.checked(BINARY1, now - 100 * DAY, 10L);
+            index.checked(BINARY2, now - 95 * DAY, 20L);
+            index.checked(BINARY3, now - DAY, 30L);
+            assertTrue(index.register("http://localhost/rest/binary4"));
+            assertFalse(index.register(BINARY1));
+
+            assertEquals(3, index.countDue(now));
+            assertEquals("http://localhost/rest/binary4", index.poll(now, DAY).get().getUri());
+            assertEquals(BINARY1, index.poll(now, DAY).get().getUri());
+            assertEquals(20L, index.poll(now, DAY).get().getSize());
+            assertFalse(index.poll(now, DAY).isPresent());
+
+            // unrecorded checks are due again after the retry interval
+            assertEquals(BINARY1, index.poll(now + 2 * DAY, DAY).get().getUri());
+        }
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        final long now = System.currentTimeMillis();
+        try (final FixityIndex index = new FixityIndex(path, 90 * DAY)) {
+            index.register(BINARY1);
+            index.register(BINARY2);
+            index.checked(BINARY1, now, 10L);
+            index.checked(BINARY1, now, 10L);
+            index.checked(BINARY1, now, 10L);
+            index.remove(BINARY2);
+        }
+        try (final FixityIndex index = new FixityIndex(path, 90 * DAY)) {
+            assertEquals(1, index.size());
+            assertEquals(0, index.countDue(now));
+            assertEquals(BINARY1, index.poll(now + 91 * DAY, DAY).get().getUri());
+        }
+    }
+
+    @Test
+    public void testRequestBudget() throws Exception {
+        final FixitySweep sweep = new FixitySweep(path.toString(), 90L, 0L, 2.0);
+        for (final String uri : asList(BINARY1, BINARY2, BINARY3)) {
+            sweep.register(exchange(uri, null));
+        }
+        assertEquals(3, sweep.getDueCount());
+        assertEquals(asList(BINARY1, BINARY2), sweep.due());
+        assertEquals(emptyList(), sweep.due());
+
+        Thread.sleep(600L);
+        assertEquals(singletonList(BINARY3), sweep.due());
+        assertEquals(3L, sweep.getEmittedCount());
+        sweep.shutdown();
+    }
+
+    @Test
+    public void testByteBudget() throws Exception {
+        // 3600 bytes per hour allows a burst of 60 bytes
+        final FixitySweep sweep = new FixitySweep(path.toString(), 0L, 3600L, 0.0);
+        sweep.checked(exchange(BINARY1, "100"));
+        sweep.checked(exchange(BINARY2, "10"));
+        assertEquals(2L, sweep.getCheckedCount());
+
+        // the first binary puts the budget into debt
+        assertEquals(singletonList(BINARY1), sweep.due());
+        assertTrue(sweep.getAvailableBytes() < 0);
+        assertEquals(emptyList(), sweep.due());
+        sweep.shutdown();
+    }
+
+    private static Exchange exchange(final String uri, final String size) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(FCREPO_URI, uri);
+        exchange.getIn().setHeader(FIXITY_SIZE, size);
+        return exchange;
+    }
+
+    @Test
+    public void testUnused() throws Exception {
+        final FixitySweep sweep = new FixitySweep(path.toString(), 90L, 0L, 2.0);
+        assertEquals(emptyList(), sweep.due());
+        assertEquals(0, sweep.getIndexedCount());
+        sweep.compact();
+        sweep.shutdown();
+
+        // the index is only created once a binary is added
+        assertFalse(Files.exists(path.getParent()));
+    }
+}
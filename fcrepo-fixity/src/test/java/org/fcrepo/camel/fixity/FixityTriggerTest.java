@@ -0,0 +1,112 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_EVENT_TYPE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_RESOURCE_TYPE;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+/**
+ * Test the scheduling of fixity checks from repository events.
+ *
+ * @author agent
+ */
+public class FixityTriggerTest {
+
+    private static final String BINARY1 = "http://localhost/rest/binary1";
+
+    private static final String BINARY2 = "http://localhost/rest/binary2";
+
+    private static final String CREATE = "https://www.w3.org/ns/activitystreams#Create";
+
+    private static final String UPDATE = "https://www.w3.org/ns/activitystreams#Update";
+
+    private static final String DELETE = "https://www.w3.org/ns/activitystreams#Delete";
+
+    private static final String BINARY = "http://fedora.info/definitions/v4/repository#Binary";
+
+    private static final String CONTAINER = "http://fedora.info/definitions/v4/repository#Container";
+
+    private static final long SETTLE = 1000L;
+
+    private static Exchange event(final String uri, final List<String> eventTypes, final List<String> resourceTypes) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(FCREPO_URI, uri);
+        exchange.getIn().setHeader(FCREPO_EVENT_TYPE, eventTypes);
+        exchange.getIn().setHeader(FCREPO_RESOURCE_TYPE, resourceTypes);
+        return exchange;
+    }
+
+    @Test
+    public void testSettle() {
+        final FixityTrigger trigger = new FixityTrigger(SETTLE);
+        trigger.event(BINARY1, 0L);
+        trigger.event(BINARY2, 100L);
+        assertEquals(emptyList(), trigger.due(SETTLE - 1));
+        assertEquals(singletonList(BINARY1), trigger.due(SETTLE));
+        assertEquals(singletonList(BINARY2), trigger.due(SETTLE + 100L));
+        assertEquals(0, trigger.getPendingCount());
+        assertEquals(2L, trigger.getEmittedCount());
+    }
+
+    @Test
+    public void testCoalesce() {
+        final FixityTrigger trigger = new FixityTrigger(SETTLE);
+        trigger.event(BINARY1, 0L);
+        trigger.event(BINARY1, 500L);
+        trigger.event(BINARY1, 900L);
+        assertEquals(1, trigger.getPendingCount());
+        assertEquals(2L, trigger.getCoalescedCount());
+        assertEquals(emptyList(), trigger.due(SETTLE + 899L));
+        assertEquals(singletonList(BINARY1), trigger.due(SETTLE + 900L));
+    }
+
+    @Test
+    public void testMaximumPostponement() {
+        final FixityTrigger trigger = new FixityTrigger(SETTLE);
+        for (long now = 0L; now < 20 * SETTLE; now += SETTLE / 2) {
+            trigger.event(BINARY1, now);
+        }
+        assertEquals(singletonList(BINARY1), trigger.due(10 * SETTLE));
+    }
+
+    @Test
+    public void testEvents() {
+        final FixityTrigger trigger = new FixityTrigger(0L);
+        trigger.event(event(BINARY1, singletonList(CREATE), asList(BINARY, CONTAINER)));
+        trigger.event(event(BINARY2, singletonList(UPDATE), emptyList()));
+        trigger.event(event("http://localhost/rest/binary3", singletonList(DELETE), singletonList(BINARY)));
+        trigger.event(event("http://localhost/rest/container", singletonList(CREATE), singletonList(CONTAINER)));
+        trigger.event(event(BINARY1 + "/fcr:metadata", singletonList(UPDATE), singletonList(BINARY)));
+        trigger.event(event(BINARY1, asList(UPDATE,
+                        "http://fedora.info/definitions/v4/event#ResourceModification"), singletonList(BINARY)));
+        assertEquals(3L, trigger.getReceivedCount());
+        assertEquals(asList(BINARY1, BINARY2), trigger.due(System.currentTimeMillis()));
+    }
+}
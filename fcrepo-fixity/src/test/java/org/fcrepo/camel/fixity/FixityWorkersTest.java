@@ -0,0 +1,95 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Test the fixity worker limits.
+ *
+ * @author agent
+ */
+public class FixityWorkersTest {
+
+    private static final String TAPE = "http://localhost/rest/tape";
+
+    private static final String SLOW_TAPE = "http://localhost/rest/tape/slow";
+
+    @Test
+    public void testPrefixes() {
+        final FixityWorkers workers = new FixityWorkers(4, TAPE + "=2, " + SLOW_TAPE + "=1, malformed", false, 0L);
+        assertEquals(SLOW_TAPE, workers.prefix(SLOW_TAPE + "/binary"));
+        assertEquals(TAPE, workers.prefix(TAPE + "/binary"));
+        assertNull(workers.prefix("http://localhost/rest/disk/binary"));
+        assertEquals(2, workers.getPrefixes().size());
+        assertEquals("0/1", workers.getPrefixes().get(SLOW_TAPE));
+    }
+
+    @Test
+    public void testPrefixLimit() throws Exception {
+        final FixityWorkers workers = new FixityWorkers(4, TAPE + "=1", false, 0L);
+        workers.acquire(TAPE);
+        // binaries elsewhere are only subject to the global limit
+        workers.acquire(null);
+        assertEquals(2, workers.getInFlightCount());
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                workers.acquire(TAPE);
+                started.countDown();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assertFalse(started.await(200, MILLISECONDS));
+        assertEquals(1, workers.getWaitingCount());
+
+        workers.release(TAPE, 0L);
+        assertTrue(started.await(5, SECONDS));
+        assertEquals("1/1", workers.getPrefixes().get(TAPE));
+        assertEquals(1L, workers.getCompletedCount());
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        final FixityWorkers workers = new FixityWorkers(4, "", true, 1000L);
+        assertEquals(1, workers.getLimit());
+        for (int i = 0; i < 10; ++i) {
+            workers.acquire(null);
+            workers.release(null, MILLISECONDS.toNanos(10));
+        }
+        assertEquals(4, workers.getLimit());
+
+        for (int i = 0; i < 20; ++i) {
+            workers.acquire(null);
+            workers.release(null, SECONDS.toNanos(2));
+        }
+        assertEquals(1, workers.getLimit());
+    }
+}
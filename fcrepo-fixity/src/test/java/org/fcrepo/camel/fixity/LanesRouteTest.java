@@ -0,0 +1,38 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import java.util.Properties;
+
+/**
+ * Run the route tests with the binaries checked in size-based lanes.
+ *
+ * @author agent
+ */
+public class LanesRouteTest extends RouteTest {
+
+    @Override
+    protected Properties useOverridePropertiesWithPropertiesComponent() {
+        final Properties props = super.useOverridePropertiesWithPropertiesComponent();
+        props.put("fixity.lanes.enabled", "true");
+        // the lanes are broker queues in production; the mock broker cannot be consumed from
+        props.put("fixity.lanes.large.stream", "seda:large");
+        props.put("fixity.lanes.small.stream", "seda:small");
+        return props;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.fixity.FixitySweep.FIXITY_SIZE;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FAILURE;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.FIXITY_MESSAGE_DIGEST;
+import static org.fcrepo.camel.fixity.LocalFixityChecker.SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.http.message.BasicHeader;
+import org.fcrepo.camel.fixity.LocalFixityChecker.Digests;
+import org.fcrepo.client.FcrepoHttpClientBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the local computation and comparison of digests.
+ *
+ * @author agent
+ */
+public class LocalFixityCheckerTest {
+
+    private static final String SHA1 = "urn:sha1:7bc68857c9462100f17042d2d07f482721444eba";
+
+    private static final String SHA256 = "urn:sha-256:c85d9f19357a6bf36ae54523f8d99dc1664fb781c299d4e429cab0927c0f7eb5";
+
+    private static final String MD5 = "urn:md5:fc5a705430511e08c0078fa5b58b2354";
+
+    private Digests digests;
+
+    private byte[] binary;
+
+    private HttpServer server;
+
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    /* the number of the request that fails, or zero */
+    private volatile int failing;
+
+    /* whether every request after the failing one fails */
+    private volatile boolean unavailable;
+
+    private volatile boolean rangesSupported = true;
+
+    @Before
+    public void setUp() throws IOException {
+        digests = new Digests();
+        try (final InputStream input = getClass().getResourceAsStream("/binary.txt")) {
+            // a small buffer, so that the binary is read in several parts
+            digests.update(input, new byte[16]);
+        }
+        try (final InputStream input = getClass().getResourceAsStream("/binary.txt")) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            binary = output.toByteArray();
+        }
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/binary", exchange -> {
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            ranges.add(range);
+            if (failing > 0 && (ranges.size() == failing || unavailable && ranges.size() > failing)) {
+                exchange.sendResponseHeaders(503, -1);
+            } else if (range == null || !rangesSupported) {
+                exchange.sendResponseHeaders(200, binary.length);
+                try (final OutputStream output = exchange.getResponseBody()) {
+                    output.write(binary);
+                }
+            } else {
+                final String[] bounds = range.substring("bytes=".length()).split("-");
+                final int first = Integer.parseInt(bounds[0]);
+                final int last = Math.min(Integer.parseInt(bounds[1]), binary.length - 1);
+                if (first >= binary.length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + binary.length);
+                    exchange.sendResponseHeaders(416, -1);
+                } else {
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + first + "-" + last + "/" + binary.length);
+                    exchange.sendResponseHeaders(206, last - first + 1);
+                    try (final OutputStream output = exchange.getResponseBody()) {
+                        output.write(Arrays.copyOfRange(binary, first, last + 1));
+                    }
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDigests() {
+        assertEquals(74L, digests.getSize());
+        assertEquals(asList(SHA1, SHA256, MD5), digests.urns());
+    }
+
+    @Test
+    public void testParseDigestHeader() {
+        assertEquals(asList(SHA1, MD5),
+                LocalFixityChecker.parseDigestHeader("sha=e8aIV8lGIQDxcELS0H9IJyFETro=, md5=/FpwVDBRHgjAB4+ltYsjVA=="));
+        assertEquals(emptyList(), LocalFixityChecker.parseDigestHeader("sha-512=AAAA, sha=not base64!"));
+    }
+
+    @Test
+    public void testVerify() {
+        assertTrue(LocalFixityChecker.verify(digests, asList(SHA1, SHA256, MD5), "74"));
+        assertTrue(LocalFixityChecker.verify(digests,
+                singletonList("urn:SHA1:7BC68857C9462100F17042D2D07F482721444EBA"), null));
+        assertFalse(LocalFixityChecker.verify(digests, asList(SHA1, "urn:md5:00000000000000000000000000000000"),
+                "74"));
+        assertFalse(LocalFixityChecker.verify(digests, singletonList(SHA1), "75"));
+        // nothing could be compared
+        assertFalse(LocalFixityChecker.verify(digests, singletonList("urn:sha-512:abcd"), "74"));
+    }
+
+    @Test
+    public void testRdf() {
+        final String rdf = LocalFixityChecker.rdf("http://localhost/rest/a&b", SUCCESS, digests.urns(), 74L);
+        assertTrue(rdf.contains("rdf:about=\"http://localhost/rest/a&amp;b\""));
+        assertTrue(rdf.contains("<premis:hasEventOutcome>SUCCESS</premis:hasEventOutcome>"));
+        assertTrue(rdf.contains("<premis:hasMessageDigest rdf:resource=\"" + SHA256 + "\"/>"));
+        assertTrue(rdf.contains(">74</premis:hasSize>"));
+        assertFalse(LocalFixityChecker.rdf("http://localhost/rest/a", FAILURE, emptyList(), 0L).contains(SUCCESS));
+    }
+
+    @Test
+    public void testParseContentRange() throws IOException {
+        assertTrue(Arrays.equals(new long[] {0L, 15L, 74L},
+                    LocalFixityChecker.parseContentRange(new BasicHeader("Content-Range", "bytes 0-15/74"))));
+        assertTrue(Arrays.equals(new long[] {16L, 31L, -1L},
+                    LocalFixityChecker.parseContentRange(new BasicHeader("Content-Range", "bytes 16-31/*"))));
+        try {
+            LocalFixityChecker.parseContentRange(new BasicHeader("Content-Range", "bytes */74"));
+            fail("Expected a malformed Content-Range");
+        } catch (final IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRangedRead() throws Exception {
+        // the third request fails, and the read resumes from the end of the second chunk
+        failing = 3;
+        final LocalFixityChecker checker = new LocalFixityChecker(new FcrepoHttpClientBuilder(null, null, null),
+                2, 8192, 16L, 1);
+        try {
+            final Exchange exchange = check(checker);
+            assertTrue(exchange.getIn().getBody(String.class).contains(SUCCESS));
+            assertEquals(Arrays.asList("bytes=0-15", "bytes=16-31", "bytes=32-47", "bytes=32-47", "bytes=48-63",
+                        "bytes=64-79"), ranges);
+            assertEquals(1L, checker.getResumedCount());
+        } finally {
+            checker.shutdown();
+        }
+    }
+
+    @Test
+    public void testAllDescribedDigests() throws Exception {
+        final LocalFixityChecker checker = new LocalFixityChecker(new FcrepoHttpClientBuilder(null, null, null),
+                2, 8192, 0L, 0);
+        try {
+            final Exchange exchange = check(checker, asList(SHA1, SHA256));
+            assertTrue(exchange.getIn().getBody(String.class).contains(SUCCESS));
+
+            // a mismatch in any of the described digests is a failure
+            final Exchange mismatch = check(checker, asList(SHA1, "urn:md5:00000000000000000000000000000000"));
+            assertTrue(mismatch.getIn().getBody(String.class).contains(FAILURE));
+
+            // digests joined into a single value, as they are by the fixity lanes
+            final Exchange joined = check(checker, SHA1 + " urn:md5:00000000000000000000000000000000");
+            assertTrue(joined.getIn().getBody(String.class).contains(FAILURE));
+        } finally {
+            checker.shutdown();
+        }
+    }
+
+    @Test
+    public void testRangedReadExactChunks() throws Exception {
+        final LocalFixityChecker checker = new LocalFixityChecker(new FcrepoHttpClientBuilder(null, null, null),
+                2, 8192, 37L, 0);
+        try {
+            assertTrue(check(checker).getIn().getBody(String.class).contains(SUCCESS));
+            assertEquals(Arrays.asList("bytes=0-36", "bytes=37-73"), ranges);
+        } finally {
+            checker.shutdown();
+        }
+    }
+
+    @Test
+    public void testRangesNotSupported() throws Exception {
+        rangesSupported = false;
+        final LocalFixityChecker checker = new LocalFixityChecker(new FcrepoHttpClientBuilder(null, null, null),
+                2, 8192, 16L, 1);
+        try {
+            assertTrue(check(checker).getIn().getBody(String.class).contains(SUCCESS));
+            assertEquals(1, ranges.size());
+        } finally {
+            checker.shutdown();
+        }
+    }
+
+    @Test
+    public void testRangedReadFails() throws Exception {
+        failing = 2;
+        unavailable = true;
+        final LocalFixityChecker checker = new LocalFixityChecker(new FcrepoHttpClientBuilder(null, null, null),
+                2, 8192, 16L, 2);
+        try {
+            check(checker);
+            fail("Expected the check to fail");
+        } catch (final IOException ex) {
+            // the first chunk, and the second chunk three times
+            assertEquals(4, ranges.size());
+        } finally {
+            checker.shutdown();
+        }
+    }
+
+    private Exchange check(final LocalFixityChecker checker) throws Exception {
+        return check(checker, SHA1);
+    }
+
+    private Exchange check(final LocalFixityChecker checker, final Object messageDigest) throws Exception {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(FCREPO_URI, "http://localhost:" + server.getAddress().getPort() + "/binary");
+        exchange.getIn().setHeader(FIXITY_MESSAGE_DIGEST, messageDigest);
+        exchange.getIn().setHeader(FIXITY_SIZE, "74");
+        checker.check(exchange);
+        return exchange;
+    }
+}
@@ -20,15 +20,20 @@ package org.fcrepo.camel.fixity;
 import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
 
+import java.net.URI;
 import java.util.Properties;
+import java.util.UUID;
 
 import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
 import org.apache.camel.Produce;
 import org.apache.camel.ProducerTemplate;
 import org.apache.camel.builder.AdviceWithRouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.test.blueprint.CamelBlueprintTestSupport;
 import org.apache.commons.io.IOUtils;
+import org.fcrepo.client.FcrepoOperationFailedException;
 
 import org.junit.Test;
 
@@ -70,6 +75,8 @@ public class RouteTest extends CamelBlueprintTestSupport {
          props.put("fixity.failure", "mock:failure");
          props.put("fixity.success", "mock:success");
          props.put("fixity.stream", "seda:foo");
+         props.put("fixity.sweep.enabled", "true");
+         props.put("fixity.sweep.index", "target/fixity-" + UUID.randomUUID() + "/sweep.index");
          return props;
     }
 
@@ -135,4 +142,32 @@ public class RouteTest extends CamelBlueprintTestSupport {
 
         assertMockEndpointsSatisfied();
     }
+
+    @Test
+    public void testDeletedBinary() throws Exception {
+
+        context.getRouteDefinition("FcrepoFixity").adviceWith(context, new AdviceWithRouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                replaceFromWith("direct:start");
+                interceptSendToEndpoint("fcrepo:*").skipSendToOriginalEndpoint()
+                    .throwException(new FcrepoOperationFailedException(URI.create(baseURL + identifier), 410, "Gone"));
+            }
+        });
+        context.start();
+
+        final FixitySweep sweep = context.getRegistry().lookupByNameAndType("fixitySweep", FixitySweep.class);
+        final Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader(FCREPO_URI, baseURL + identifier);
+        sweep.register(exchange);
+        assertEquals(1, sweep.getIndexedCount());
+
+        getMockEndpoint("mock:failure").expectedMessageCount(0);
+        getMockEndpoint("mock:success").expectedMessageCount(0);
+
+        template.sendBodyAndHeader(null, FCREPO_URI, baseURL + identifier);
+
+        assertMockEndpointsSatisfied();
+        assertEquals(0, sweep.getIndexedCount());
+    }
 }
@@ -0,0 +1,189 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.fixity;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.fcrepo.camel.fixity.StreamingRdf.RDF_TYPE;
+import static org.fcrepo.camel.fixity.StreamingRdf.extract;
+import static org.fcrepo.camel.fixity.StreamingRdf.find;
+import static org.fcrepo.camel.fixity.StreamingRdf.isBinary;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.xml.Namespaces;
+import org.apache.camel.builder.xml.XPathBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Test the streaming checks of repository RDF, and compare them with XPath.
+ *
+ * @author agent
+ */
+public class StreamingRdfTest {
+
+    private static final Logger LOGGER = getLogger(StreamingRdfTest.class);
+
+    private static final String BINARY = "http://fedora.info/definitions/v4/repository#Binary";
+
+    private static final String PREMIS = "http://www.loc.gov/premis/rdf/v1#";
+
+    private static final int ITERATIONS = 20;
+
+    private final CamelContext context = new DefaultCamelContext();
+
+    @Test
+    public void testRdfXml() throws Exception {
+        final Exchange success = exchange(resource("/fixity.rdf"), "application/rdf+xml");
+        assertTrue(isBinary(BINARY).matches(success));
+        extract().first(PREMIS + "hasEventOutcome", "outcome").first(PREMIS + "hasSize", "size")
+            .first(PREMIS + "hasMessageDigest", "digest").process(success);
+        assertEquals("SUCCESS", success.getIn().getHeader("outcome"));
+        assertEquals("1636261", success.getIn().getHeader("size"));
+        assertEquals("urn:sha1:a8069665cdee87b7963676cfcc759ef0f0c9a0e9", success.getIn().getHeader("digest"));
+
+        final Exchange failure = exchange(resource("/fixityFailure.rdf"), "application/rdf+xml");
+        assertTrue(isBinary(BINARY).matches(failure));
+        assertFalse(find(failure, PREMIS + "hasEventOutcome", "SUCCESS").isPresent());
+
+        final Exchange container = exchange(resource("/container.rdf"), "application/rdf+xml");
+        container.getIn().setHeader("size", "42");
+        assertFalse(isBinary(BINARY).matches(container));
+        extract().first(PREMIS + "hasSize", "size").process(container);
+        assertNull(container.getIn().getHeader("size"));
+    }
+
+    @Test
+    public void testAbbreviatedRdfXml() throws Exception {
+        final String rdf = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"" +
+            " xmlns:fedora=\"http://fedora.info/definitions/v4/repository#\" xmlns:premis=\"" + PREMIS + "\">" +
+            "<fedora:Binary rdf:about=\"http://localhost/rest/binary\" premis:hasSize=\"74\">" +
+            "<premis:hasFixity><rdf:Description><premis:hasEventOutcome>SUCCESS</premis:hasEventOutcome>" +
+            "</rdf:Description></premis:hasFixity></fedora:Binary></rdf:RDF>";
+        final Exchange exchange = exchange(rdf, "application/rdf+xml");
+        assertTrue(isBinary(BINARY).matches(exchange));
+        extract().all(RDF_TYPE, "type").first(PREMIS + "hasSize", "size")
+            .first(PREMIS + "hasEventOutcome", "outcome").process(exchange);
+        assertEquals("74", exchange.getIn().getHeader("size"));
+        assertEquals("SUCCESS", exchange.getIn().getHeader("outcome"));
+        assertEquals(singletonList(BINARY), exchange.getIn().getHeader("type"));
+    }
+
+    @Test
+    public void testNTriples() throws Exception {
+        final String triples = "<http://localhost/rest/binary> <" + RDF_TYPE + "> <" + BINARY + "> .\n" +
+            "<http://localhost/rest/binary>\t<" + RDF_TYPE + ">\t<http://www.w3.org/ns/ldp#NonRDFSource> .\n" +
+            "_:b0 <" + PREMIS + "hasEventOutcome> " +
+            "\"SUCCESS\"^^<http://www.w3.org/2001/XMLSchema#string> .\n" +
+            "<http://localhost/rest/binary#fixity> <" + PREMIS + "hasSize> " +
+            "\"74\"^^<http://www.w3.org/2001/XMLSchema#long> .\n";
+        final Exchange exchange = exchange(triples, "application/n-triples");
+        assertTrue(isBinary(BINARY).matches(exchange));
+        assertTrue(find(exchange, PREMIS + "hasEventOutcome", "SUCCESS").isPresent());
+        assertFalse(find(exchange, PREMIS + "hasEventOutcome", "FAILURE").isPresent());
+
+        extract().all(RDF_TYPE, "type").first(PREMIS + "hasSize", "size")
+            .first(PREMIS + "hasEventOutcome", "outcome").process(exchange);
+        assertEquals(asList(BINARY, "http://www.w3.org/ns/ldp#NonRDFSource"), exchange.getIn().getHeader("type"));
+        assertEquals("74", exchange.getIn().getHeader("size"));
+        assertEquals("SUCCESS", exchange.getIn().getHeader("outcome"));
+    }
+
+    @Test
+    public void testLinkHeadersAreIgnored() throws Exception {
+        // Link headers may be left over from an earlier response, so only the body is read
+        final Exchange container = exchange(resource("/container.rdf"), "application/rdf+xml");
+        container.getIn().setHeader("Link", asList("<http://www.w3.org/ns/ldp#Resource>;rel=\"type\"",
+                    "<http://www.w3.org/ns/ldp#NonRDFSource>;rel=\"type\""));
+        assertFalse(isBinary(BINARY).matches(container));
+
+        final Exchange binary = exchange(resource("/fixity.rdf"), "application/rdf+xml");
+        binary.getIn().setHeader("Link", "<http://www.w3.org/ns/ldp#BasicContainer>;rel=\"type\"");
+        assertTrue(isBinary(BINARY).matches(binary));
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        final String rdf = largeFixityResult(20000);
+        final Namespaces ns = new Namespaces("rdf", StreamingRdf.RDF_NS);
+        ns.add("premis", PREMIS);
+        final XPathBuilder binaryXPath = XPathBuilder.xpath("/rdf:RDF/rdf:Description/rdf:type" +
+                "[@rdf:resource='" + BINARY + "']").namespaces(ns);
+        final XPathBuilder outcomeXPath = XPathBuilder.xpath("/rdf:RDF/rdf:Description/premis:hasEventOutcome" +
+                "[text()='SUCCESS']").namespaces(ns);
+
+        final Exchange exchange = exchange(rdf, "application/rdf+xml");
+        assertEquals(binaryXPath.matches(context, rdf), isBinary(BINARY).matches(exchange));
+        assertEquals(outcomeXPath.matches(context, rdf),
+                find(exchange, PREMIS + "hasEventOutcome", "SUCCESS").isPresent());
+
+        final long xpathStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            binaryXPath.matches(context, rdf);
+            outcomeXPath.matches(context, rdf);
+        }
+        final long xpathTime = System.nanoTime() - xpathStart;
+
+        final long streamingStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            isBinary(BINARY).matches(exchange);
+            find(exchange, PREMIS + "hasEventOutcome", "SUCCESS");
+        }
+        final long streamingTime = System.nanoTime() - streamingStart;
+
+        LOGGER.info("Checked type and outcome of {} bytes of RDF/XML {} times: XPath {} ms, streaming {} ms",
+                rdf.length(), ITERATIONS, xpathTime / 1000000, streamingTime / 1000000);
+    }
+
+    /*
+     * A fixity result for a binary with many other triples, with the outcome after them.
+     */
+    private static String largeFixityResult(final int triples) {
+        final StringBuilder rdf = new StringBuilder(
+                "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"" +
+                " xmlns:premis=\"" + PREMIS + "\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n" +
+                "<rdf:Description rdf:about=\"http://localhost/rest/binary\">\n" +
+                "  <rdf:type rdf:resource=\"" + BINARY + "\"/>\n");
+        for (int i = 0; i < triples; ++i) {
+            rdf.append("  <dc:subject>Subject ").append(i).append("</dc:subject>\n");
+        }
+        return rdf.append("</rdf:Description>\n<rdf:Description rdf:about=\"http://localhost/rest/binary#fixity\">\n")
+            .append("  <premis:hasEventOutcome>SUCCESS</premis:hasEventOutcome>\n")
+            .append("</rdf:Description>\n</rdf:RDF>\n").toString();
+    }
+
+    private Exchange exchange(final String body, final String contentType) {
+        final Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(body);
+        exchange.getIn().setHeader(Exchange.CONTENT_TYPE, contentType);
+        return exchange;
+    }
+
+    private String resource(final String name) throws Exception {
+        return IOUtils.toString(getClass().getResourceAsStream(name), "UTF-8");
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.apache.camel.Exchange.ROUTE_STOP;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.slf4j.Logger;
+
+/**
+ * Limit the number of LDPath requests that are evaluated concurrently.
+ *
+ * Requests beyond the limit wait in a bounded queue for up to a maximum length of time.
+ * When the queue is full, or the wait times out, the request is rejected with a 503
+ * response and a Retry-After header.
+ *
+ * In adaptive mode, the limit is adjusted between 1 and the configured maximum using
+ * additive increase and multiplicative decrease: it grows slowly while requests complete
+ * within the target latency and is reduced when they do not.
+ *
+ * @author agent
+ */
+public class AdmissionController implements Processor, AdmissionControllerMBean {
+
+    private static final Logger LOGGER = getLogger(AdmissionController.class);
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private final int maxLimit;
+
+    private final int queueSize;
+
+    private final long maxWait;
+
+    private final int retryAfter;
+
+    private final boolean adaptive;
+
+    private final long targetLatency;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private double limit;
+
+    private int inFlight;
+
+    private int queued;
+
+    /**
+     * Create a fixed admission controller.
+     *
+     * @param limit the maximum number of concurrent requests; zero or less disables admission control
+     * @param queueSize the maximum number of waiting requests
+     * @param maxWait the maximum length of time (in milliseconds) that a request may wait
+     * @param retryAfter the value (in seconds) of the Retry-After header of a rejected request
+     */
+    public AdmissionController(final int limit, final int queueSize, final long maxWait, final int retryAfter) {
+        this(limit, queueSize, maxWait, retryAfter, false, 0L);
+    }
+
+    /**
+     * Create an admission controller.
+     *
+     * @param limit the maximum number of concurrent requests; zero or less disables admission control
+     * @param queueSize the maximum number of waiting requests
+     * @param maxWait the maximum length of time (in milliseconds) that a request may wait
+     * @param retryAfter the value (in seconds) of the Retry-After header of a rejected request
+     * @param adaptive whether to adjust the limit according to the observed latency
+     * @param targetLatency the latency (in milliseconds) above which the adaptive limit is reduced
+     */
+    public AdmissionController(final int limit, final int queueSize, final long maxWait, final int retryAfter,
+            final boolean adaptive, final long targetLatency) {
+        this.maxLimit = limit;
+        this.queueSize = Math.max(queueSize, 0);
+        this.maxWait = Math.max(maxWait, 0L);
+        this.retryAfter = retryAfter;
+        this.adaptive = adaptive;
+        this.targetLatency = MILLISECONDS.toNanos(targetLatency);
+        this.limit = limit;
+    }
+
+    /**
+     * Admit the current request, or reject it with a 503 response and stop the route.
+     *
+     * @param exchange the current message exchange
+     */
+    @Override
+    public void process(final Exchange exchange) throws Exception {
+        if (maxLimit <= 0) {
+            return;
+        }
+
+        if (acquire()) {
+            final long start = System.nanoTime();
+            exchange.addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(final Exchange completed) {
+                    release(System.nanoTime() - start);
+                }
+            });
+        } else {
+            LOGGER.debug("Rejecting LDPath request: too many concurrent requests");
+            final Message in = exchange.getIn();
+            in.setHeader(HTTP_RESPONSE_CODE, 503);
+            in.setHeader("Retry-After", retryAfter);
+            in.setHeader(CONTENT_TYPE, "text/plain");
+            in.setBody("Service temporarily unavailable");
+            exchange.setProperty(ROUTE_STOP, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Wait for a request to be admitted.
+     *
+     * @return whether the request was admitted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight += 1;
+                return true;
+            }
+            if (queued >= queueSize) {
+                rejected.incrementAndGet();
+                return false;
+            }
+
+            queued += 1;
+            try {
+                long remaining = MILLISECONDS.toNanos(maxWait);
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0L) {
+                        rejected.incrementAndGet();
+                        return false;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+                inFlight += 1;
+                return true;
+            } finally {
+                queued -= 1;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the completion of an admitted request.
+     *
+     * @param latency the time (in nanoseconds) taken to handle the request
+     */
+    public void release(final long latency) {
+        lock.lock();
+        try {
+            inFlight -= 1;
+            if (adaptive) {
+                if (latency > targetLatency) {
+                    limit = Math.max(1.0, limit * DECREASE_FACTOR);
+                } else {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+                LOGGER.trace("Request completed in {} ms, limit is now {}", NANOSECONDS.toMillis(latency), limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getInFlightCount() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+/**
+ * Management interface for the LDPath admission controller.
+ *
+ * @author agent
+ */
+public interface AdmissionControllerMBean {
+
+    /**
+     * @return the current limit on concurrent requests
+     */
+    int getLimit();
+
+    /**
+     * @return the number of requests currently being handled
+     */
+    int getInFlightCount();
+
+    /**
+     * @return the number of requests waiting to be admitted
+     */
+    int getQueuedCount();
+
+    /**
+     * @return the number of rejected requests
+     */
+    long getRejectedCount();
+}
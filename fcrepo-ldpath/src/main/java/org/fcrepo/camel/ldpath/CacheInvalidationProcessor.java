@@ -0,0 +1,104 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.Arrays.asList;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.openrdf.model.impl.URIImpl;
+import org.slf4j.Logger;
+
+/**
+ * A processor that removes a Fedora resource from the LDCache in response
+ * to a repository event. Because a binary and its description are cached
+ * separately, both are removed. Any cached describedby lookup held by the
+ * Fedora data provider is also removed.
+ *
+ * This assumes that the event has been parsed by the fcrepo-camel EventProcessor,
+ * so that the resource URI is available in the CamelFcrepoUri header.
+ *
+ * @author agent
+ */
+public class CacheInvalidationProcessor implements Processor {
+
+    private static final Logger LOGGER = getLogger(CacheInvalidationProcessor.class);
+
+    private static final String FCR_METADATA = "/fcr:metadata";
+
+    private final LDCachingBackend backend;
+
+    private final FedoraProvider provider;
+
+    /**
+     * Create a cache invalidation processor.
+     *
+     * @param backend the LDCache backend
+     */
+    public CacheInvalidationProcessor(final LDCachingBackend backend) {
+        this(backend, null);
+    }
+
+    /**
+     * Create a cache invalidation processor.
+     *
+     * @param backend the LDCache backend
+     * @param provider the Fedora data provider, may be null
+     */
+    public CacheInvalidationProcessor(final LDCachingBackend backend, final FedoraProvider provider) {
+        this.backend = Objects.requireNonNull(backend);
+        this.provider = provider;
+    }
+
+    /**
+     * Remove the resource identified by the current message from the cache.
+     *
+     * @param exchange the current message exchange
+     */
+    public void process(final Exchange exchange) throws Exception {
+        final String uri = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (uri != null) {
+            for (final String resource : relatedResources(uri)) {
+                LOGGER.debug("Removing {} from the LDCache", resource);
+                backend.removeEntry(new URIImpl(resource));
+                if (provider != null) {
+                    provider.invalidate(resource);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the resource together with its binary or description counterpart.
+     *
+     * @param uri the resource URI
+     * @return the URIs that may hold cached data for this resource
+     */
+    static List<String> relatedResources(final String uri) {
+        if (uri.endsWith(FCR_METADATA)) {
+            return asList(uri, uri.substring(0, uri.length() - FCR_METADATA.length()));
+        }
+        return asList(uri, uri + FCR_METADATA);
+    }
+}
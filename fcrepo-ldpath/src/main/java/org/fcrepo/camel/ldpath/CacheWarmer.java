@@ -0,0 +1,190 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.openrdf.model.impl.URIImpl;
+import org.slf4j.Logger;
+
+/**
+ * A processor that retrieves resources into the LDCache ahead of the LDPath requests that will use them.
+ *
+ * The resource is taken from the CamelFcrepoUri header, as set by the reindexing service,
+ * or otherwise from the message body, which may list several resources, one per line.
+ * Resources are retrieved in the background by a bounded pool of threads; when its queue
+ * is full, the consumer waits, so that a fast message source cannot exhaust memory.
+ *
+ * Retrieval goes through the LDCache backend, so a resource that is already being fetched
+ * (by an LDPath request or by another warm-up message) is fetched only once. Repository
+ * resources are skipped when they are not cached at all (fcrepo.cache.timeout=0), since
+ * they would expire as soon as they were retrieved.
+ *
+ * @author agent
+ */
+public class CacheWarmer implements Processor, CacheWarmerMBean {
+
+    private static final Logger LOGGER = getLogger(CacheWarmer.class);
+
+    private static final long SHUTDOWN_TIMEOUT = 30L;
+
+    private final PrefetchingLDCacheBackend backend;
+
+    private final String baseUrl;
+
+    private final boolean cacheRepository;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong warmed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Create a cache warmer.
+     *
+     * @param backend the LDCache backend through which resources are retrieved
+     * @param baseUrl the base URL of the repository
+     * @param repositoryTimeout the length of time (in seconds) that repository resources are cached;
+     *        if zero, repository resources are not warmed
+     * @param threads the maximum number of concurrent retrievals
+     * @param queueSize the maximum number of resources waiting to be retrieved
+     */
+    public CacheWarmer(final PrefetchingLDCacheBackend backend, final String baseUrl, final long repositoryTimeout,
+            final int threads, final int queueSize) {
+        this.backend = Objects.requireNonNull(backend);
+        this.baseUrl = Objects.requireNonNull(baseUrl);
+        this.cacheRepository = repositoryTimeout > 0;
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueSize, 1)),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "LDCache warm-up-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    // apply back-pressure to the consumer
+                    try {
+                        if (!pool.isShutdown()) {
+                            pool.getQueue().put(runnable);
+                        }
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(ex);
+                    }
+                });
+    }
+
+    /**
+     * Queue the resources identified by the current message for retrieval.
+     *
+     * @param exchange the current message exchange
+     */
+    @Override
+    public void process(final Exchange exchange) {
+        for (final String uri : resources(exchange)) {
+            if (!cacheRepository && uri.startsWith(baseUrl)) {
+                LOGGER.debug("Not warming {}: repository resources are not cached", uri);
+                skipped.incrementAndGet();
+            } else {
+                executor.execute(() -> warm(uri));
+            }
+        }
+    }
+
+    /**
+     * Stop the warm-up threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT, SECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public long getWarmedCount() {
+        return warmed.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    @Override
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    private void warm(final String uri) {
+        try {
+            LOGGER.debug("Warming LDCache with {}", uri);
+            if (backend.getModel(new URIImpl(uri)) != null) {
+                warmed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        } catch (final Exception ex) {
+            LOGGER.debug("Could not retrieve {} into the LDCache: {}", uri, ex.getMessage());
+            failed.incrementAndGet();
+        }
+    }
+
+    private static List<String> resources(final Exchange exchange) {
+        final List<String> resources = new ArrayList<>();
+        final String header = exchange.getIn().getHeader(FCREPO_URI, String.class);
+        if (header != null) {
+            resources.add(header);
+        } else {
+            final String body = exchange.getIn().getBody(String.class);
+            if (body != null) {
+                for (final String line : body.split("\\r?\\n")) {
+                    if (line.trim().matches("^https?://.+")) {
+                        resources.add(line.trim());
+                    }
+                }
+            }
+        }
+        return resources;
+    }
+}
@@ -20,13 +20,22 @@ package org.fcrepo.camel.ldpath;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.api.provider.DataProvider;
 import org.apache.marmotta.ldclient.endpoint.rdf.LinkedDataEndpoint;
@@ -103,31 +112,108 @@ public class ClientFactory {
      */
     public static ClientConfiguration createClient(final AuthScope authScope, final Credentials credentials,
             final List<Endpoint> endpoints, final List<DataProvider> providers) {
+        return createClient(authScope, credentials, endpoints, providers, null);
+    }
+
+    /**
+     * Create a linked data client suitable for use with a Fedora Repository.
+     * @param authScope the authentication scope
+     * @param credentials the credentials
+     * @param endpoints additional endpoints to enable on the client
+     * @param providers additional providers to enable on the client
+     * @param negativeCache a record of failed dereferences, used by all but the Fedora provider; may be null
+     * @return a configuration for use with an LDClient
+     */
+    public static ClientConfiguration createClient(final AuthScope authScope, final Credentials credentials,
+            final List<Endpoint> endpoints, final List<DataProvider> providers, final NegativeCache negativeCache) {
+
+        // Fedora resources are not negatively cached, since they may be created at any time
+        final UnaryOperator<DataProvider> wrap = provider ->
+            negativeCache == null || provider instanceof FedoraProvider ?
+                new TimingProvider(provider) :
+                new NegativeCachingProvider(new TimingProvider(provider), negativeCache);
 
         final ClientConfiguration client = new ClientConfiguration();
 
+        // the bytes read by each LDPath request are counted as the retrieved entities are consumed;
+        // without credentials, the LDClient keeps its own default HttpClient and bytes are not counted
         if (credentials != null && authScope != null) {
             final CredentialsProvider credsProvider = new BasicCredentialsProvider();
             credsProvider.setCredentials(authScope, credentials);
             client.setHttpClient(HttpClients.custom()
                     .setDefaultCredentialsProvider(credsProvider)
+                    .addInterceptorLast(ClientFactory::countBytes)
                     .useSystemProperties().build());
         }
 
         // manually add default Providers and Endpoints
-        client.addProvider(new LinkedDataProvider());
-        client.addProvider(new CacheProvider());
-        client.addProvider(new RegexUriProvider());
-        client.addProvider(new SPARQLProvider());
+        client.addProvider(wrap.apply(new LinkedDataProvider()));
+        client.addProvider(wrap.apply(new CacheProvider()));
+        client.addProvider(wrap.apply(new RegexUriProvider()));
+        client.addProvider(wrap.apply(new SPARQLProvider()));
         client.addEndpoint(new LinkedDataEndpoint());
 
         // add any injected endpoints/providers
         endpoints.forEach(client::addEndpoint);
-        providers.forEach(client::addProvider);
+        providers.stream().map(wrap).forEach(client::addProvider);
 
         return client;
     }
 
+    /*
+     * Count the bytes of a response entity towards the current LDPath request, if any.
+     */
+    private static void countBytes(final HttpResponse response, final HttpContext context) {
+        final HttpEntity entity = response.getEntity();
+        if (entity != null && RequestTimings.current() != null) {
+            response.setEntity(new HttpEntityWrapper(entity) {
+                @Override
+                public InputStream getContent() throws IOException {
+                    return new CountingInputStream(super.getContent());
+                }
+
+                @Override
+                public void writeTo(final OutputStream output) throws IOException {
+                    try (final InputStream input = getContent()) {
+                        final byte[] buffer = new byte[8192];
+                        int count;
+                        while ((count = input.read(buffer)) != -1) {
+                            output.write(buffer, 0, count);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /*
+     * Reads happen on the thread handling the request, so the count is recorded as it is read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(final InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                RequestTimings.read(1L);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                RequestTimings.read(count);
+            }
+            return count;
+        }
+    }
+
     private ClientFactory() {
         // prevent instantiation
     }
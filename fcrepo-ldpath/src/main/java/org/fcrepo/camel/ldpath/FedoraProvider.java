@@ -17,8 +17,11 @@
  */
 package org.fcrepo.camel.ldpath;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.provider.rdf.LinkedDataProvider;
 import org.fcrepo.client.FcrepoHttpClientBuilder;
@@ -30,20 +33,27 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
 import org.slf4j.Logger;
 
 
 /**
  * An extension Linked Data provider to support Binary nodes in Fedora.
  *
+ * Discovering whether a resource is a binary requires a HEAD request. The outcome
+ * of that request (the description URL of a binary, or the fact that the resource
+ * is not a binary) can be held in a bounded cache, so that repeated dereferences
+ * of the same resource do not each require an additional request.
+ *
  * @author Mohamed Mohideen Abdul Rasheed
  */
-public class FedoraProvider extends LinkedDataProvider {
+public class FedoraProvider extends LinkedDataProvider implements FedoraProviderMBean {
 
     private static final Logger LOGGER = getLogger(FedoraProvider.class);
 
@@ -53,13 +63,37 @@ public class FedoraProvider extends LinkedDataProvider {
 
     private final String NON_RDF_SOURCE_URI = "http://www.w3.org/ns/ldp#NonRDFSource";
 
+    private final Cache<String, Optional<String>> describedBy;
+
+    private final AtomicLong headRequests = new AtomicLong();
+
+    private final AtomicLong headRequestsAvoided = new AtomicLong();
+
     /**
      * FedoraProvider
      * @param builder FcrepoHttpClientBuilder for building HttpClient
      */
     public FedoraProvider(final FcrepoHttpClientBuilder builder) {
+        this(builder, 0L, 0L);
+    }
+
+    /**
+     * FedoraProvider
+     * @param builder FcrepoHttpClientBuilder for building HttpClient
+     * @param cacheSize the maximum number of resources for which the describedby lookup is cached;
+     *        zero disables the cache
+     * @param cacheTimeout the length of time (in seconds) to cache a describedby lookup;
+     *        zero or less means that entries are only removed when the cache is full or invalidated
+     */
+    public FedoraProvider(final FcrepoHttpClientBuilder builder, final long cacheSize, final long cacheTimeout) {
         Objects.requireNonNull(builder);
         httpClient = builder.build();
+
+        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().maximumSize(cacheSize);
+        if (cacheTimeout > 0) {
+            cacheBuilder.expireAfterWrite(cacheTimeout, SECONDS);
+        }
+        describedBy = cacheBuilder.build();
     }
 
     /*
@@ -78,8 +112,7 @@ public class FedoraProvider extends LinkedDataProvider {
         LOGGER.debug("Processing: " + resourceUri);
         Objects.requireNonNull(resourceUri);
         try {
-            final Optional<String> nonRdfSourceDescUri =
-                    getNonRDFSourceDescribedByUri(resourceUri);
+            final Optional<String> nonRdfSourceDescUri = getCachedDescribedByUri(resourceUri);
             if ( nonRdfSourceDescUri.isPresent() ) {
                 return Collections.singletonList(nonRdfSourceDescUri.get());
             }
@@ -89,12 +122,58 @@ public class FedoraProvider extends LinkedDataProvider {
         return Collections.singletonList(resourceUri);
     }
 
+    /**
+     * Remove any cached describedby lookup for a resource.
+     *
+     * @param resourceUri the resource URI
+     */
+    @Override
+    public void invalidate(final String resourceUri) {
+        describedBy.invalidate(resourceUri);
+    }
+
+    /**
+     * Remove all cached describedby lookups.
+     */
+    @Override
+    public void clear() {
+        describedBy.invalidateAll();
+    }
+
+    @Override
+    public long getDescribedByCacheSize() {
+        return describedBy.size();
+    }
+
+    @Override
+    public long getHeadRequestCount() {
+        return headRequests.get();
+    }
+
+    @Override
+    public long getHeadRequestsAvoidedCount() {
+        return headRequestsAvoided.get();
+    }
+
+    /*
+    * Get the describedBy Uri from the cache, issuing a HEAD request if it is not present.
+    */
+    private Optional<String> getCachedDescribedByUri(final String resourceUri) throws IOException {
+        final Optional<String> cached = describedBy.getIfPresent(resourceUri);
+        if (cached != null) {
+            headRequestsAvoided.incrementAndGet();
+            return cached;
+        }
+        return getNonRDFSourceDescribedByUri(resourceUri);
+    }
+
     /*
     * Get the describedBy Uri if the resource has a NON_RDF_SOURCE_URI link header.
     */
     private Optional<String> getNonRDFSourceDescribedByUri(final String resourceUri) throws IOException {
         Optional<String> nonRdfSourceDescUri = Optional.empty();
-        final Header[] links = getLinkHeaders(resourceUri);
+        final HttpResponse response = head(resourceUri);
+        final Header[] links = response.getHeaders("Link");
         if ( links != null ) {
             String descriptionUri = null;
             boolean isNonRDFSource = false;
@@ -111,17 +190,25 @@ public class FedoraProvider extends LinkedDataProvider {
                 nonRdfSourceDescUri = Optional.of(descriptionUri);
             }
         }
+        // only cache the outcome for resources that exist and are accessible
+        final int status = response.getStatusLine().getStatusCode();
+        if (status >= 200 && status < 300) {
+            describedBy.put(resourceUri, nonRdfSourceDescUri);
+        }
         return nonRdfSourceDescUri;
     }
 
     /*
-    * Get the link headers for the resource at the given Uri.
+    * Issue a HEAD request for the resource at the given Uri.
     */
-    private Header[] getLinkHeaders(final String resourceUri) throws IOException {
+    private HttpResponse head(final String resourceUri) throws IOException {
+        final long start = System.nanoTime();
         final HttpHead request = new HttpHead(resourceUri);
         final HttpResponse response = httpClient.execute(request);
+        RequestTimings.record(Stage.DESCRIBEDBY, start);
+        headRequests.incrementAndGet();
         LOGGER.debug("Got: " + response.getStatusLine().getStatusCode() + " for HEAD " + resourceUri);
-        return response.getHeaders("Link");
+        return response;
     }
 
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+/**
+ * Management interface for the Fedora data provider.
+ *
+ * @author agent
+ */
+public interface FedoraProviderMBean {
+
+    /**
+     * @return the number of resources with a cached describedby lookup
+     */
+    long getDescribedByCacheSize();
+
+    /**
+     * @return the number of HEAD requests issued to the repository
+     */
+    long getHeadRequestCount();
+
+    /**
+     * @return the number of HEAD requests avoided by the describedby cache
+     */
+    long getHeadRequestsAvoidedCount();
+
+    /**
+     * Remove any cached describedby lookup for a resource.
+     *
+     * @param resourceUri the resource URI
+     */
+    void invalidate(String resourceUri);
+
+    /**
+     * Remove all cached describedby lookups.
+     */
+    void clear();
+}
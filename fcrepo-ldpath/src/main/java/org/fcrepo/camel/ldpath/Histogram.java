@@ -0,0 +1,138 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * A histogram with fixed bucket boundaries, which can be written in the Prometheus text format.
+ *
+ * @author agent
+ */
+class Histogram {
+
+    private final double[] bounds;
+
+    private final AtomicLongArray counts;
+
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * Create a histogram.
+     *
+     * @param bounds the inclusive upper bounds of the buckets, in ascending order; a final
+     *        bucket holds any larger value
+     */
+    Histogram(final double... bounds) {
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * @param value the value to record
+     */
+    void record(final double value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket += 1;
+        }
+        counts.incrementAndGet(bucket);
+        sum.add(value);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    long getCount() {
+        long count = 0L;
+        for (int i = 0; i < counts.length(); ++i) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    double getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values, or zero if there are none
+     */
+    double getMean() {
+        final long count = getCount();
+        return count == 0 ? 0.0 : getSum() / count;
+    }
+
+    /**
+     * Estimate a percentile as the upper bound of the bucket in which it falls.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimate, or infinity if it falls in the final bucket
+     */
+    double getPercentile(final double percentile) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0.0;
+        }
+        final double rank = count * percentile / 100.0;
+        long cumulative = 0L;
+        for (int i = 0; i < bounds.length; ++i) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                return bounds[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Write the histogram in the Prometheus text exposition format.
+     *
+     * @param out the output
+     * @param name the metric name
+     * @param labels any labels, e.g. {@code stage="evaluation"}, or an empty string
+     */
+    void write(final StringBuilder out, final String name, final String labels) {
+        final String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0L;
+        for (int i = 0; i < bounds.length; ++i) {
+            cumulative += counts.get(i);
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ")
+                .append(cumulative).append('\n');
+        }
+        cumulative += counts.get(bounds.length);
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+        final String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(getSum()).append('\n');
+        out.append(name).append("_count").append(suffix).append(cumulative).append('\n');
+    }
+
+    /**
+     * Discard all recorded values.
+     */
+    void reset() {
+        for (int i = 0; i < counts.length(); ++i) {
+            counts.set(i, 0L);
+        }
+        sum.reset();
+    }
+}
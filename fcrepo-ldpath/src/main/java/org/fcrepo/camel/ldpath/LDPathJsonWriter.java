@@ -0,0 +1,282 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
+
+/**
+ * A processor that serializes LDPath results as JSON.
+ *
+ * The results are written field by field with a Jackson JsonGenerator, rather than being
+ * marshalled as a single object graph, so that a result with many values does not require
+ * the whole document to be assembled in a growing byte array. The message body is replaced
+ * by an InputStream that serializes the results as it is read, so the HTTP endpoint streams
+ * the document to the client without it being buffered. Only the LDPath result cache reads
+ * (at most its maximum size of) the document ahead of the response, when the result may be
+ * stored.
+ *
+ * As serialization happens while the response is written, the format stage of the request
+ * metrics only covers preparing the stream.
+ *
+ * @author agent
+ */
+public class LDPathJsonWriter implements Processor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Replace the LDPath results in the message body with their JSON serialization.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the results could not be written
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void process(final Exchange exchange) throws IOException {
+        final long start = System.nanoTime();
+        final List<Map<String, Collection<?>>> results = exchange.getIn().getBody(List.class);
+        final InputStream output = stream(results);
+        RequestTimings.record(Stage.FORMAT, start);
+        exchange.getIn().removeHeaders("*");
+        exchange.getIn().setHeader(CONTENT_TYPE, "application/json");
+        exchange.getIn().setBody(output);
+    }
+
+    /**
+     * Serialize LDPath results as JSON on demand.
+     *
+     * @param results the LDPath results
+     * @return a stream of the JSON serialization, which is written as the stream is read
+     * @throws IOException if the serialization could not be started
+     */
+    public static InputStream stream(final List<Map<String, Collection<?>>> results) throws IOException {
+        return new JsonStream(results);
+    }
+
+    /**
+     * Write LDPath results as JSON.
+     *
+     * @param results the LDPath results
+     * @param output the output stream, which is flushed but not closed
+     * @throws IOException if the results could not be written
+     */
+    public static void write(final List<Map<String, Collection<?>>> results, final OutputStream output)
+            throws IOException {
+        try (final JsonGenerator generator = MAPPER.getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (results == null) {
+                generator.writeNull();
+                return;
+            }
+            generator.writeStartArray();
+            for (final Map<String, Collection<?>> result : results) {
+                writeResult(generator, result);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeResult(final JsonGenerator generator, final Map<String, Collection<?>> result)
+            throws IOException {
+        if (result == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        for (final Map.Entry<String, Collection<?>> field : result.entrySet()) {
+            generator.writeFieldName(field.getKey());
+            if (field.getValue() == null) {
+                generator.writeNull();
+                continue;
+            }
+            generator.writeStartArray();
+            for (final Object value : field.getValue()) {
+                writeValue(generator, value);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(final JsonGenerator generator, final Object value) throws IOException {
+        // strings are written directly; any other value is serialized by the ObjectMapper
+        if (value instanceof String) {
+            generator.writeString((String) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    /*
+     * An InputStream that writes the next part of the document whenever its buffer has been read,
+     * so that no more than about one chunk of the serialization is held at a time.
+     */
+    private static class JsonStream extends InputStream {
+
+        private static final int CHUNK = 8192;
+
+        private final Buffer buffer = new Buffer();
+
+        private final JsonGenerator generator;
+
+        private final List<Map<String, Collection<?>>> results;
+
+        private Iterator<Map<String, Collection<?>>> remaining;
+
+        private Iterator<Map.Entry<String, Collection<?>>> fields = Collections.emptyIterator();
+
+        private Iterator<?> values = Collections.emptyIterator();
+
+        private boolean inResult;
+
+        private boolean inField;
+
+        private boolean done;
+
+        private int position;
+
+        JsonStream(final List<Map<String, Collection<?>>> results) throws IOException {
+            this.results = results;
+            this.generator = MAPPER.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == buffer.size() && !fill()) {
+                return -1;
+            }
+            return buffer.get(position++) & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == buffer.size() && !fill()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.size() - position);
+            buffer.copy(position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.size() - position;
+        }
+
+        @Override
+        public void close() {
+            done = true;
+            position = buffer.size();
+        }
+
+        private boolean fill() throws IOException {
+            buffer.reset();
+            position = 0;
+            while (!done && buffer.size() < CHUNK) {
+                next();
+                generator.flush();
+            }
+            return buffer.size() > 0;
+        }
+
+        /*
+         * Write the next value or structural token of the document.
+         */
+        private void next() throws IOException {
+            if (remaining == null) {
+                if (results == null) {
+                    generator.writeNull();
+                    finish();
+                } else {
+                    generator.writeStartArray();
+                    remaining = results.iterator();
+                }
+            } else if (values.hasNext()) {
+                writeValue(generator, values.next());
+            } else if (inField) {
+                generator.writeEndArray();
+                inField = false;
+            } else if (fields.hasNext()) {
+                final Map.Entry<String, Collection<?>> field = fields.next();
+                generator.writeFieldName(field.getKey());
+                if (field.getValue() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeStartArray();
+                    values = field.getValue().iterator();
+                    inField = true;
+                }
+            } else if (inResult) {
+                generator.writeEndObject();
+                inResult = false;
+            } else if (remaining.hasNext()) {
+                final Map<String, Collection<?>> result = remaining.next();
+                if (result == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeStartObject();
+                    fields = result.entrySet().iterator();
+                    inResult = true;
+                }
+            } else {
+                generator.writeEndArray();
+                finish();
+            }
+        }
+
+        private void finish() throws IOException {
+            generator.close();
+            done = true;
+        }
+    }
+
+    /*
+     * A ByteArrayOutputStream whose content can be read without being copied.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        byte get(final int index) {
+            return buf[index];
+        }
+
+        void copy(final int from, final byte[] b, final int off, final int len) {
+            System.arraycopy(buf, from, b, off, len);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.camel.Exchange.CONTENT_TYPE;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
+
+/**
+ * Per-stage latency metrics for LDPath requests.
+ *
+ * For each request, this records the time spent fetching the LDPath program, checking
+ * Fedora resources for a description (HEAD requests), retrieving and parsing linked data,
+ * looking up resources in the LDCache, evaluating the program and formatting the result,
+ * along with the number of resources retrieved, the bytes read and the LDCache hits and
+ * misses. The metrics are available over JMX and in the Prometheus text format, and the
+ * timings of an individual request may be returned in an X-LDPath-Timing response header.
+ *
+ * @author agent
+ */
+public class LDPathMetrics implements LDPathMetricsMBean {
+
+    public static final String LDPATH_TIMING_HEADER = "X-LDPath-Timing";
+
+    private static final String LDPATH_TIMINGS = "CamelLDPathTimings";
+
+    private static final String LDPATH_PROGRAM_START = "CamelLDPathProgramStart";
+
+    private static final double[] SECONDS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0, 30.0 };
+
+    private static final double[] FETCHES = { 0, 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000 };
+
+    private static final double[] BYTES = { 1024, 10240, 102400, 1048576, 10485760, 104857600 };
+
+    private final boolean timingHeader;
+
+    private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+
+    private final Histogram fetches = new Histogram(FETCHES);
+
+    private final Histogram bytes = new Histogram(BYTES);
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong bytesFetched = new AtomicLong();
+
+    /**
+     * Create an LDPath metrics recorder.
+     *
+     * @param timingHeader whether to add the X-LDPath-Timing header to responses
+     */
+    public LDPathMetrics(final boolean timingHeader) {
+        this.timingHeader = timingHeader;
+        for (final Stage stage : Stage.values()) {
+            stages.put(stage, new Histogram(SECONDS));
+        }
+    }
+
+    /**
+     * Start recording an LDPath request. The request is recorded when the exchange is done,
+     * whatever its outcome, so that failed, rejected and not modified responses are included.
+     *
+     * @param exchange the current message exchange
+     */
+    public void start(final Exchange exchange) {
+        final RequestTimings timings = RequestTimings.start();
+        exchange.setProperty(LDPATH_TIMINGS, timings);
+        exchange.addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(final Exchange completed) {
+                if (RequestTimings.current() == timings) {
+                    RequestTimings.attach(null);
+                }
+                record(timings);
+            }
+        });
+    }
+
+    /**
+     * Mark the start of the retrieval of an LDPath program.
+     *
+     * @param exchange the current message exchange
+     */
+    public void startProgram(final Exchange exchange) {
+        exchange.setProperty(LDPATH_PROGRAM_START, System.nanoTime());
+    }
+
+    /**
+     * Mark the end of the retrieval of an LDPath program.
+     *
+     * @param exchange the current message exchange
+     */
+    public void endProgram(final Exchange exchange) {
+        final Long start = exchange.getProperty(LDPATH_PROGRAM_START, Long.class);
+        if (start != null) {
+            RequestTimings.record(Stage.PROGRAM, start);
+        }
+    }
+
+    /**
+     * Add the timings of the current request to the response, if the timing header is enabled.
+     *
+     * @param exchange the current message exchange
+     */
+    public void timingHeader(final Exchange exchange) {
+        final RequestTimings timings = exchange.getProperty(LDPATH_TIMINGS, RequestTimings.class);
+        if (timingHeader && timings != null) {
+            exchange.getIn().setHeader(LDPATH_TIMING_HEADER, format(timings));
+        }
+    }
+
+    /**
+     * Replace the message body with the metrics, in the Prometheus text exposition format.
+     *
+     * @param exchange the current message exchange
+     */
+    public void scrape(final Exchange exchange) {
+        final StringBuilder out = new StringBuilder();
+        out.append("# HELP ldpath_stage_seconds Time spent in each stage of an LDPath request\n");
+        out.append("# TYPE ldpath_stage_seconds histogram\n");
+        for (final Stage stage : Stage.values()) {
+            stages.get(stage).write(out, "ldpath_stage_seconds", "stage=\"" + stage.getLabel() + "\"");
+        }
+        out.append("# HELP ldpath_request_fetches Resources retrieved from their source per LDPath request\n");
+        out.append("# TYPE ldpath_request_fetches histogram\n");
+        fetches.write(out, "ldpath_request_fetches", "");
+        out.append("# HELP ldpath_request_bytes Bytes read from retrieved resources per LDPath request\n");
+        out.append("# TYPE ldpath_request_bytes histogram\n");
+        bytes.write(out, "ldpath_request_bytes", "");
+        out.append("# HELP ldpath_cache_hits_total LDCache lookups answered without a retrieval\n");
+        out.append("# TYPE ldpath_cache_hits_total counter\n");
+        out.append("ldpath_cache_hits_total ").append(hits.get()).append('\n');
+        out.append("# HELP ldpath_cache_misses_total LDCache lookups that required a retrieval\n");
+        out.append("# TYPE ldpath_cache_misses_total counter\n");
+        out.append("ldpath_cache_misses_total ").append(misses.get()).append('\n');
+
+        exchange.getIn().removeHeaders("*");
+        exchange.getIn().setHeader(CONTENT_TYPE, "text/plain; version=0.0.4");
+        exchange.getIn().setBody(out.toString());
+    }
+
+    @Override
+    public long getRequestCount() {
+        return stages.get(Stage.REQUEST).getCount();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public long getBytesFetched() {
+        return bytesFetched.get();
+    }
+
+    @Override
+    public String[] getStages() {
+        return Arrays.stream(Stage.values()).map(Stage::getLabel).toArray(String[]::new);
+    }
+
+    @Override
+    public double getMeanTime(final String stage) {
+        return stage(stage).getMean() * 1000.0;
+    }
+
+    @Override
+    public double getPercentileTime(final String stage, final double percentile) {
+        return stage(stage).getPercentile(percentile) * 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        stages.values().forEach(Histogram::reset);
+        fetches.reset();
+        bytes.reset();
+        hits.set(0L);
+        misses.set(0L);
+        bytesFetched.set(0L);
+    }
+
+    private void record(final RequestTimings timings) {
+        for (final Stage stage : Stage.values()) {
+            stages.get(stage).record(timings.getNanos(stage) / 1e9);
+        }
+        fetches.record(timings.getRetrievals());
+        bytes.record(timings.getBytes());
+        hits.addAndGet(timings.getHits());
+        misses.addAndGet(timings.getRetrievals());
+        bytesFetched.addAndGet(timings.getBytes());
+    }
+
+    /*
+     * e.g. "program=0.0ms, describedby=3.2ms, ..., request=42.1ms, fetches=2, bytes=2048, hits=7, misses=2"
+     */
+    static String format(final RequestTimings timings) {
+        final StringBuilder value = new StringBuilder();
+        for (final Stage stage : Stage.values()) {
+            value.append(stage.getLabel()).append('=')
+                .append(String.format(Locale.ROOT, "%.1f", NANOSECONDS.toMicros(timings.getNanos(stage)) / 1000.0))
+                .append("ms, ");
+        }
+        return value.append("fetches=").append(timings.getRetrievals())
+            .append(", bytes=").append(timings.getBytes())
+            .append(", hits=").append(timings.getHits())
+            .append(", misses=").append(timings.getRetrievals()).toString();
+    }
+
+    private Histogram stage(final String label) {
+        return stages.entrySet().stream().filter(e -> e.getKey().getLabel().equals(label))
+            .map(Map.Entry::getValue).findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unknown stage: " + label));
+    }
+}
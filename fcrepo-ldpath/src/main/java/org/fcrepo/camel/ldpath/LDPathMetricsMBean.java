@@ -0,0 +1,69 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+/**
+ * Management interface for the LDPath request metrics.
+ *
+ * @author agent
+ */
+public interface LDPathMetricsMBean {
+
+    /**
+     * @return the number of LDPath requests recorded
+     */
+    long getRequestCount();
+
+    /**
+     * @return the number of LDCache lookups that were answered without retrieving the resource
+     */
+    long getCacheHitCount();
+
+    /**
+     * @return the number of resources retrieved from their source
+     */
+    long getCacheMissCount();
+
+    /**
+     * @return the number of bytes read from retrieved resources
+     */
+    long getBytesFetched();
+
+    /**
+     * @return the names of the recorded stages
+     */
+    String[] getStages();
+
+    /**
+     * @param stage the name of a stage
+     * @return the mean time (in milliseconds) per request spent in the stage
+     */
+    double getMeanTime(String stage);
+
+    /**
+     * @param stage the name of a stage
+     * @param percentile the percentile, between 0 and 100
+     * @return an upper bound (in milliseconds) on the given percentile of the time per request spent in the stage
+     */
+    double getPercentileTime(String stage, double percentile);
+
+    /**
+     * Discard all recorded metrics.
+     */
+    void reset();
+}
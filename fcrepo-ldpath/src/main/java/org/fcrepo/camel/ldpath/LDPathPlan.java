@@ -0,0 +1,197 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.Collections.singletonList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.marmotta.ldpath.api.transformers.NodeTransformer;
+import org.apache.marmotta.ldpath.backend.linkeddata.LDCacheBackend;
+import org.apache.marmotta.ldpath.model.fields.FieldMapping;
+import org.apache.marmotta.ldpath.model.programs.Program;
+import org.apache.marmotta.ldpath.model.selectors.PropertySelector;
+import org.apache.marmotta.ldpath.model.selectors.SelfSelector;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+
+/**
+ * An evaluation plan for a parsed LDPath program.
+ *
+ * Fields whose selector is a single property (e.g. {@code title = dcterms:title :: xsd:string})
+ * or the context itself are answered together: the triples of the context resource are
+ * scanned once, collecting the objects of every such property, rather than once per field.
+ * Any other field is evaluated by the LDPath selector as usual.
+ *
+ * Programs with a filter are not planned, since a filter may exclude the context entirely.
+ *
+ * @author agent
+ */
+final class LDPathPlan {
+
+    private static final Logger LOGGER = getLogger(LDPathPlan.class);
+
+    private final List<FieldMapping<?, Value>> self = new ArrayList<>();
+
+    private final Map<URI, List<FieldMapping<?, Value>>> oneHop = new HashMap<>();
+
+    private final List<FieldMapping<?, Value>> general = new ArrayList<>();
+
+    /**
+     * Analyse a program into an evaluation plan.
+     *
+     * @param program the parsed LDPath program
+     * @param backend the LDPath backend
+     * @return the plan, or empty if the program is to be evaluated in full by LDPath
+     */
+    static Optional<LDPathPlan> compile(final Program<Value> program, final LDCacheBackend backend) {
+        if (program.getFilter() != null) {
+            return Optional.empty();
+        }
+
+        final LDPathPlan plan = new LDPathPlan();
+        for (final FieldMapping<?, Value> field : program.getFields()) {
+            final Optional<URI> property = property(field, backend);
+            if (field.getSelector() instanceof SelfSelector) {
+                plan.self.add(field);
+            } else if (property.isPresent()) {
+                plan.oneHop.computeIfAbsent(property.get(), k -> new ArrayList<>()).add(field);
+            } else {
+                plan.general.add(field);
+            }
+        }
+        LOGGER.debug("Planned LDPath program: {} self, {} single-property ({} properties) and {} other fields",
+                plan.self.size(), plan.oneHop.values().stream().mapToInt(List::size).sum(), plan.oneHop.size(),
+                plan.general.size());
+        return Optional.of(plan);
+    }
+
+    /**
+     * Evaluate the plan for a context resource.
+     *
+     * @param backend the LDPath backend
+     * @param context the context resource
+     * @return the values of each field
+     */
+    Map<String, Collection<?>> evaluate(final LDCacheBackend backend, final URI context) {
+        final Map<String, Collection<?>> result = new HashMap<>();
+
+        for (final FieldMapping<?, Value> field : self) {
+            result.put(field.getFieldName(), transform(backend, field, singletonList(context)));
+        }
+
+        if (!oneHop.isEmpty()) {
+            final Map<URI, Set<Value>> objects = objects(backend, context);
+            oneHop.forEach((property, fields) -> {
+                final Collection<Value> values = objects.getOrDefault(property, Collections.emptySet());
+                fields.forEach(field -> result.put(field.getFieldName(), transform(backend, field, values)));
+            });
+        }
+
+        for (final FieldMapping<?, Value> field : general) {
+            result.put(field.getFieldName(), field.getValues(backend, context));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of fields answered from a single scan of the context resource
+     */
+    int getPlannedFieldCount() {
+        return self.size() + oneHop.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * @return the number of fields evaluated by their LDPath selector
+     */
+    int getGeneralFieldCount() {
+        return general.size();
+    }
+
+    /*
+     * Collect the objects of the planned properties, in a single pass over the context's triples where possible.
+     */
+    private Map<URI, Set<Value>> objects(final LDCacheBackend backend, final URI context) {
+        final Map<URI, Set<Value>> objects = new HashMap<>();
+        if (backend instanceof PrefetchingLDCacheBackend) {
+            final Model model = ((PrefetchingLDCacheBackend) backend).getModel(context);
+            if (model != null) {
+                for (final Statement statement : model) {
+                    if (context.equals(statement.getSubject()) && oneHop.containsKey(statement.getPredicate())) {
+                        objects.computeIfAbsent(statement.getPredicate(), k -> new LinkedHashSet<>())
+                            .add(statement.getObject());
+                    }
+                }
+            }
+        } else {
+            for (final URI property : oneHop.keySet()) {
+                objects.put(property, new LinkedHashSet<>(backend.listObjects(context, property)));
+            }
+        }
+        return objects;
+    }
+
+    /*
+     * The property of a single-property selector. PropertySelector does not expose its property,
+     * so it is read from the path expression, which is the property URI in angle brackets
+     * (or * for a wildcard).
+     */
+    private static Optional<URI> property(final FieldMapping<?, Value> field, final LDCacheBackend backend) {
+        if (field.getSelector() instanceof PropertySelector) {
+            final String expression = field.getSelector().getPathExpression(backend);
+            if (expression.length() > 2 && expression.startsWith("<") && expression.endsWith(">")) {
+                return Optional.of(backend.createURI(expression.substring(1, expression.length() - 1)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * Convert the selected nodes to field values, skipping any that the field type does not accept,
+     * as FieldMapping does.
+     */
+    private static List<Object> transform(final LDCacheBackend backend, final FieldMapping<?, Value> field,
+            final Collection<Value> nodes) {
+        final NodeTransformer<?, Value> transformer = field.getTransformer();
+        final List<Object> values = new ArrayList<>(nodes.size());
+        for (final Value node : nodes) {
+            try {
+                values.add(transformer.transform(backend, node, field.getFieldConfig()));
+            } catch (final IllegalArgumentException ex) {
+                LOGGER.debug("Ignoring value {} of field {}: {}", node, field.getFieldName(), ex.getMessage());
+            }
+        }
+        return values;
+    }
+
+    private LDPathPlan() {
+        // use compile()
+    }
+}
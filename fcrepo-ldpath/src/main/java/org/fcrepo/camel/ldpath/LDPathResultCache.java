@@ -0,0 +1,292 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpHead;
+import org.fcrepo.client.FcrepoHttpClientBuilder;
+import org.fcrepo.client.FcrepoLink;
+import org.slf4j.Logger;
+
+/**
+ * A cache of formatted LDPath results for repository resources.
+ *
+ * Results are keyed by the context URI, a hash of the LDPath program and the current ETag
+ * of the context resource (and, for a binary, of its description), so a modified resource
+ * is never served a result computed from an earlier version. The same key provides the
+ * ETag of the response, which allows clients to revalidate a result with If-None-Match
+ * without the program being evaluated at all.
+ *
+ * The validator covers the context resource only. A result may also depend on other
+ * resources reached by the program (e.g. members or linked objects), and changes to those
+ * resources are not reflected until the cached result expires, nor do they change the ETag.
+ * For that reason the cache is disabled by default, and should only be enabled for programs
+ * that do not follow links away from the context.
+ *
+ * Results are held as bytes, and a result larger than the configured maximum is not cached,
+ * so that large results remain streamed to the client rather than held in memory.
+ *
+ * Checking the context resource costs one HEAD request (two for a binary). If that check
+ * fails, the request is evaluated as if the cache were disabled.
+ *
+ * @author agent
+ */
+public class LDPathResultCache implements LDPathResultCacheMBean {
+
+    private static final Logger LOGGER = getLogger(LDPathResultCache.class);
+
+    public static final String LDPATH_RESULT_CACHED = "CamelLDPathResultCached";
+
+    static final String LDPATH_RESULT_KEY = "CamelLDPathResultKey";
+
+    private static final String LDPATH_RESULT_ETAG = "CamelLDPathResultETag";
+
+    private static final String LDPATH_NOT_MODIFIED = "CamelLDPathNotModified";
+
+    private static final String NON_RDF_SOURCE_URI = "http://www.w3.org/ns/ldp#NonRDFSource";
+
+    private final HttpClient httpClient;
+
+    private final String baseUrl;
+
+    private final boolean enabled;
+
+    private final long maxBytes;
+
+    private final Cache<String, byte[]> results;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Create an LDPath result cache.
+     *
+     * @param builder FcrepoHttpClientBuilder for building HttpClient
+     * @param baseUrl the base URL of the repository; only results for repository resources are cached
+     * @param size the maximum number of cached results; zero disables result caching and validation
+     * @param timeout the maximum length of time (in seconds) to cache a result; zero disables result caching
+     *        and validation
+     * @param maxBytes the size (in bytes) of the largest result to cache
+     */
+    public LDPathResultCache(final FcrepoHttpClientBuilder builder, final String baseUrl, final long size,
+            final long timeout, final long maxBytes) {
+        Objects.requireNonNull(builder);
+        this.httpClient = builder.build();
+        this.baseUrl = Objects.requireNonNull(baseUrl);
+        this.enabled = size > 0 && timeout > 0;
+        this.maxBytes = maxBytes;
+        this.results = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(size, 0L))
+                .expireAfterWrite(Math.max(timeout, 1L), SECONDS)
+                .build();
+    }
+
+    /**
+     * Look up a cached result for the current request. The incoming message is expected to
+     * hold the LDPath program in its body and the context URI in the context header.
+     *
+     * If the result is cached, or if the client already holds the current result, the
+     * exchange property CamelLDPathResultCached is set to true and the body is set to
+     * the cached result.
+     *
+     * @param exchange the current message exchange
+     */
+    public void lookup(final Exchange exchange) {
+        final Message in = exchange.getIn();
+        final String context = in.getHeader("context", String.class);
+        if (!enabled || context == null || !context.startsWith(baseUrl)) {
+            return;
+        }
+
+        final Optional<String> resourceETag;
+        try {
+            resourceETag = resourceETag(context);
+        } catch (final IOException ex) {
+            LOGGER.warn("Could not check {}, evaluating without the result cache: {}", context, ex.getMessage());
+            return;
+        }
+        if (!resourceETag.isPresent()) {
+            return;
+        }
+
+        // the program is read once here and then used for evaluation
+        final String program = in.getBody(String.class);
+        in.setBody(program);
+
+        final String key = context + " " + Hashing.sha256().hashString(program, UTF_8) + " " + resourceETag.get();
+        final String etag = "W/\"" + Hashing.sha256().hashString(key, UTF_8) + "\"";
+        exchange.setProperty(LDPATH_RESULT_KEY, key);
+        exchange.setProperty(LDPATH_RESULT_ETAG, etag);
+
+        if (matches(in.getHeader("If-None-Match", String.class), etag)) {
+            LOGGER.debug("LDPath result for {} not modified", context);
+            notModified.incrementAndGet();
+            exchange.setProperty(LDPATH_NOT_MODIFIED, true);
+            exchange.setProperty(LDPATH_RESULT_CACHED, true);
+            in.setBody(null);
+            return;
+        }
+
+        final byte[] result = results.getIfPresent(key);
+        if (result != null) {
+            LOGGER.debug("Using cached LDPath result for {}", context);
+            hits.incrementAndGet();
+            exchange.setProperty(LDPATH_RESULT_CACHED, true);
+            in.setBody(result);
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Store the formatted result of an LDPath evaluation, if it is cacheable. At most the
+     * maximum size of the result (plus one byte) is read ahead of the response: a larger
+     * result is not stored, and the bytes that were read are streamed to the client ahead
+     * of the rest of the result. A result that cannot be stored is not read at all.
+     *
+     * @param exchange the current message exchange
+     * @throws IOException if the result could not be read
+     */
+    public void store(final Exchange exchange) throws IOException {
+        final String key = exchange.getProperty(LDPATH_RESULT_KEY, String.class);
+        if (key == null) {
+            return;
+        }
+
+        final InputStream body = exchange.getIn().getBody(InputStream.class);
+        if (body != null) {
+            final byte[] result = ByteStreams.toByteArray(ByteStreams.limit(body, Math.max(maxBytes + 1, 0L)));
+            if (result.length <= maxBytes) {
+                exchange.getIn().setBody(result);
+                results.put(key, result);
+                return;
+            }
+            exchange.getIn().setBody(new SequenceInputStream(new ByteArrayInputStream(result), body));
+        }
+        LOGGER.debug("LDPath result for {} not cached", exchange.getIn().getHeader("context"));
+    }
+
+    /**
+     * Add the validators to the response, replacing the body with a 304 response where appropriate.
+     *
+     * @param exchange the current message exchange
+     */
+    public void respond(final Exchange exchange) {
+        final String etag = exchange.getProperty(LDPATH_RESULT_ETAG, String.class);
+        if (etag != null) {
+            exchange.getIn().setHeader("ETag", etag);
+        }
+        if (exchange.getProperty(LDPATH_NOT_MODIFIED, false, Boolean.class)) {
+            exchange.getIn().setHeader(HTTP_RESPONSE_CODE, 304);
+            exchange.getIn().setBody(null);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return results.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    @Override
+    public void clear() {
+        results.invalidateAll();
+    }
+
+    /*
+     * Weak comparison of an If-None-Match header against the current ETag.
+     */
+    static boolean matches(final String ifNoneMatch, final String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        final String current = stripWeak(etag);
+        return Arrays.stream(ifNoneMatch.split(",")).map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || stripWeak(tag).equals(current));
+    }
+
+    private static String stripWeak(final String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /*
+     * Get the ETag of a repository resource; for a binary this includes the ETag of its description.
+     */
+    private Optional<String> resourceETag(final String uri) throws IOException {
+        final HttpResponse response = httpClient.execute(new HttpHead(uri));
+        final Header etag = response.getFirstHeader("ETag");
+        if (response.getStatusLine().getStatusCode() != 200 || etag == null) {
+            return Optional.empty();
+        }
+
+        String descriptionUri = null;
+        boolean isNonRDFSource = false;
+        for (final Header h : response.getHeaders("Link")) {
+            final FcrepoLink link = new FcrepoLink(h.getValue());
+            if ("describedby".equals(link.getRel())) {
+                descriptionUri = link.getUri().toString();
+            } else if (link.getUri().toString().contains(NON_RDF_SOURCE_URI)) {
+                isNonRDFSource = true;
+            }
+        }
+
+        if (isNonRDFSource && descriptionUri != null) {
+            return resourceETag(descriptionUri).map(description -> etag.getValue() + " " + description);
+        }
+        return Optional.of(etag.getValue());
+    }
+}
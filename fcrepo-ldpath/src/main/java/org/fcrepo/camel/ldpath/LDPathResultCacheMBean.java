@@ -0,0 +1,51 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+/**
+ * Management interface for the LDPath result cache.
+ *
+ * @author agent
+ */
+public interface LDPathResultCacheMBean {
+
+    /**
+     * @return the number of cached results
+     */
+    long getSize();
+
+    /**
+     * @return the number of requests served from the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of cacheable requests that required evaluation
+     */
+    long getMissCount();
+
+    /**
+     * @return the number of requests answered with 304 Not Modified
+     */
+    long getNotModifiedCount();
+
+    /**
+     * Remove all cached results.
+     */
+    void clear();
+}
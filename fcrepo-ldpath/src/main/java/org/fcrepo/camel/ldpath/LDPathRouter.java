@@ -19,14 +19,18 @@ package org.fcrepo.camel.ldpath;
 
 import static org.apache.camel.builder.PredicateBuilder.and;
 import static org.apache.camel.builder.PredicateBuilder.not;
-import static org.apache.camel.model.dataformat.JsonLibrary.Jackson;
 import static org.apache.camel.Exchange.CONTENT_TYPE;
 import static org.apache.camel.Exchange.HTTP_METHOD;
 import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
 import static org.apache.camel.Exchange.HTTP_URI;
+import static org.apache.camel.LoggingLevel.DEBUG;
+import static org.fcrepo.camel.ldpath.LDPathResultCache.LDPATH_RESULT_CACHED;
+import static org.fcrepo.camel.threads.VirtualThreads.onVirtualThreads;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import org.apache.camel.PropertyInject;
 import org.apache.camel.builder.RouteBuilder;
+import org.fcrepo.camel.processor.EventProcessor;
 import org.slf4j.Logger;
 
 /**
@@ -39,6 +43,21 @@ public class LDPathRouter extends RouteBuilder {
 
     private static final Logger LOGGER = getLogger(LDPathRouter.class);
 
+    @PropertyInject(value = "ldcache.invalidation.enabled", defaultValue = "false")
+    private String invalidationEnabled;
+
+    @PropertyInject(value = "ldcache.warmup.enabled", defaultValue = "false")
+    private String warmupEnabled;
+
+    @PropertyInject(value = "fcrepo.cache.timeout", defaultValue = "0")
+    private String repositoryCacheTimeout;
+
+    @PropertyInject(value = "virtual.threads.enabled", defaultValue = "false")
+    private String virtualThreads;
+
+    @PropertyInject(value = "virtual.threads.maxConcurrency", defaultValue = "200")
+    private String virtualThreadsMaxConcurrency;
+
     /**
      * Configure the message route workflow.
      */
@@ -47,11 +66,15 @@ public class LDPathRouter extends RouteBuilder {
         /**
          * Expose a RESTful endpoint for LDPath processing
          */
-        from("jetty:http://{{rest.host}}:{{rest.port}}{{rest.prefix}}?" +
+        onVirtualThreads(from("jetty:http://{{rest.host}}:{{rest.port}}{{rest.prefix}}?" +
                 "&httpMethodRestrict=GET,POST,OPTIONS" +
                 "&sendServerVersion=false")
             .routeId("FcrepoLDPathRest")
-            .routeDescription("Expose the ldpath endpoint over HTTP")
+            .routeDescription("Expose the ldpath endpoint over HTTP"), Boolean.parseBoolean(virtualThreads),
+            Integer.parseInt(virtualThreadsMaxConcurrency))
+            .to("bean:ldpathMetrics?method=start")
+            // reject requests with a 503 response when the service is saturated
+            .to("bean:ldpathAdmission")
             .choice()
                 .when(header(HTTP_METHOD).isEqualTo("OPTIONS"))
                     .setHeader(CONTENT_TYPE).constant("text/turtle")
@@ -65,7 +88,9 @@ public class LDPathRouter extends RouteBuilder {
                 .when(header(HTTP_METHOD).isEqualTo("GET"))
                     .to("direct:get")
                 .when(header(HTTP_METHOD).isEqualTo("POST"))
-                    .to("direct:ldpathPrepare");
+                    .to("direct:ldpathPrepare")
+            .end()
+            .to("bean:ldpathMetrics?method=timingHeader");
 
         from("direct:get")
             .routeId("FcrepoLDPathGet")
@@ -73,19 +98,66 @@ public class LDPathRouter extends RouteBuilder {
                 .when(and(header("ldpath").isNotNull(), header("ldpath").regex("^https?://.*")))
                     .removeHeaders("CamelHttp*")
                     .setHeader(HTTP_URI).header("ldpath")
+                    .to("bean:ldpathMetrics?method=startProgram")
                     .to("http4://localhost?useSystemProperties=true")
+                    .to("bean:ldpathMetrics?method=endProgram")
                     .to("direct:ldpathPrepare")
                 .otherwise()
                     .to("language:simple:resource:classpath:org/fcrepo/camel/ldpath/default.ldpath")
                     .to("direct:ldpathPrepare");
 
         from("direct:ldpathPrepare").routeId("FcrepoLDPathPrepare")
-            .to("direct:ldpath")
-            .to("direct:format");
+            .to("bean:ldpathResults?method=lookup")
+            .choice()
+                .when(exchangeProperty(LDPATH_RESULT_CACHED).isEqualTo(true))
+                    .removeHeaders("*")
+                    .setHeader(CONTENT_TYPE, constant("application/json"))
+                .otherwise()
+                    .to("direct:ldpath")
+                    .to("direct:format")
+                    .to("bean:ldpathResults?method=store")
+            .end()
+            .to("bean:ldpathResults?method=respond");
 
         from("direct:format").routeId("FcrepoLDPathFormat")
-            .marshal().json(Jackson)
-            .removeHeaders("*")
-            .setHeader(CONTENT_TYPE).constant("application/json");
+            .process(new LDPathJsonWriter());
+
+        /**
+         * Expose the per-stage request metrics in the Prometheus text format
+         */
+        from("jetty:http://{{rest.host}}:{{rest.port}}{{rest.prefix}}/metrics?" +
+                "&httpMethodRestrict=GET" +
+                "&sendServerVersion=false")
+            .routeId("FcrepoLDPathMetrics")
+            .routeDescription("Expose the LDPath request metrics over HTTP")
+            .to("bean:ldpathMetrics?method=scrape");
+
+        /**
+         * Optionally, remove resources from the LDCache as they change in the repository.
+         * This is only configured when enabled, so that a message broker is not otherwise required.
+         */
+        if (Boolean.parseBoolean(invalidationEnabled)) {
+            from("{{input.stream}}")
+                .routeId("FcrepoLDPathCacheInvalidation")
+                .routeDescription("Evict modified repository resources from the LDCache")
+                .process(new EventProcessor())
+                .log(DEBUG, LOGGER, "Invalidating cached resource ${headers[CamelFcrepoUri]}")
+                .to("bean:ldcacheInvalidator");
+        }
+
+        /**
+         * Optionally, retrieve resources into the LDCache ahead of the LDPath requests for them,
+         * e.g. by adding the warm-up stream to the recipients of a reindexing request.
+         */
+        if (Boolean.parseBoolean(warmupEnabled)) {
+            if (Long.parseLong(repositoryCacheTimeout) <= 0) {
+                LOGGER.warn("LDCache warm-up is enabled, but fcrepo.cache.timeout is 0: " +
+                        "repository resources are not cached, so they will not be warmed");
+            }
+            from("{{ldcache.warmup.stream}}")
+                .routeId("FcrepoLDPathCacheWarmup")
+                .routeDescription("Retrieve resources into the LDCache ahead of LDPath requests")
+                .to("bean:ldcacheWarmer");
+        }
     }
 }
@@ -17,20 +17,32 @@
  */
 package org.fcrepo.camel.ldpath;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.singletonList;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import com.github.jsonldjava.sesame.SesameJSONLDParserFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CharStreams;
 import org.apache.marmotta.ldpath.LDPath;
 import org.apache.marmotta.ldpath.api.functions.SelectorFunction;
 import org.apache.marmotta.ldpath.backend.linkeddata.LDCacheBackend;
 import org.apache.marmotta.ldpath.exception.LDPathParseException;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
+import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.URIImpl;
 import org.openrdf.query.resultio.BooleanQueryResultParserRegistry;
@@ -48,22 +60,48 @@ import org.semarglproject.sesame.rdf.rdfa.SesameRDFaParserFactory;
 
 /**
  * A convenience factory for creating an LDPath object with an LDCacheBackend.
+ *
+ * Optionally, programs are parsed once and evaluated according to an {@link LDPathPlan},
+ * which answers single-property fields from one pass over the context resource.
+ *
  * @author acoburn
  * @since Aug 5, 2016
  */
 public class LDPathWrapper {
 
+    private static final long MAX_PLANS = 100L;
+
     private final LDPath<Value> ldpath;
 
+    private final LDCacheBackend backend;
+
+    private final boolean compiled;
+
+    private final Cache<HashCode, Optional<LDPathPlan>> plans = CacheBuilder.newBuilder()
+            .maximumSize(MAX_PLANS).build();
+
     /**
      * Create an LDPathWrapper and register a set of selector functions.
      *
      * @param backend the linkeddata backend
      * @param functions selector functions
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @SuppressWarnings({ "rawtypes" })
     public LDPathWrapper(final LDCacheBackend backend, final Set<SelectorFunction> functions) {
-        this(backend);
+        this(backend, functions, false);
+    }
+
+    /**
+     * Create an LDPathWrapper and register a set of selector functions.
+     *
+     * @param backend the linkeddata backend
+     * @param functions selector functions
+     * @param compiled whether to evaluate programs according to a cached evaluation plan
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public LDPathWrapper(final LDCacheBackend backend, final Set<SelectorFunction> functions,
+            final boolean compiled) {
+        this(backend, compiled);
         for (SelectorFunction<Value> function : functions) {
             ldpath.registerFunction(function);
         }
@@ -74,6 +112,17 @@ public class LDPathWrapper {
      * @param backend the linkeddata backend
      */
     public LDPathWrapper(final LDCacheBackend backend) {
+        this(backend, false);
+    }
+
+    /**
+     * Create an LDPathWrapper Object
+     * @param backend the linkeddata backend
+     * @param compiled whether to evaluate programs according to a cached evaluation plan
+     */
+    public LDPathWrapper(final LDCacheBackend backend, final boolean compiled) {
+        this.backend = backend;
+        this.compiled = compiled;
 
         // Register the Sesame RDF Parsers manually
         // TODO: use the OSGi service registry as described in:
@@ -101,6 +150,45 @@ public class LDPathWrapper {
      */
     public List<Map<String, Collection<?>>> programQuery(final String uri, final InputStream program)
             throws LDPathParseException {
-        return singletonList(ldpath.programQuery(new URIImpl(uri), new InputStreamReader(program)));
+        final long start = System.nanoTime();
+        if (backend instanceof PrefetchingLDCacheBackend) {
+            ((PrefetchingLDCacheBackend) backend).startRequest();
+        }
+        try {
+            if (compiled) {
+                return singletonList(planQuery(new URIImpl(uri), program));
+            }
+            return singletonList(ldpath.programQuery(new URIImpl(uri), new InputStreamReader(program)));
+        } finally {
+            if (backend instanceof PrefetchingLDCacheBackend) {
+                ((PrefetchingLDCacheBackend) backend).endRequest();
+            }
+            RequestTimings.record(Stage.EVALUATION, start);
+        }
+    }
+
+    /*
+     * Evaluate a program according to its plan, which is cached by the hash of the program text.
+     */
+    private Map<String, Collection<?>> planQuery(final URI context, final InputStream program)
+            throws LDPathParseException {
+        final String text;
+        try {
+            text = CharStreams.toString(new InputStreamReader(program));
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        final HashCode hash = Hashing.sha256().hashString(text, UTF_8);
+        Optional<LDPathPlan> plan = plans.getIfPresent(hash);
+        if (plan == null) {
+            plan = LDPathPlan.compile(ldpath.parseProgram(new StringReader(text)), backend);
+            plans.put(hash, plan);
+        }
+
+        if (plan.isPresent()) {
+            return plan.get().evaluate(backend, context);
+        }
+        return ldpath.programQuery(context, new StringReader(text));
     }
 }
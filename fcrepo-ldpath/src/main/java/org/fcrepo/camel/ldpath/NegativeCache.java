@@ -0,0 +1,188 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+
+/**
+ * A record of recent dereferencing failures.
+ *
+ * Resources that could not be retrieved (e.g. a 404 response) are remembered for a fixed
+ * length of time. Hosts that could not be reached (e.g. a connection timeout) are avoided
+ * for a period that doubles with each consecutive failure, up to a maximum, and that is
+ * reset by the next successful request. Only connection failures affect the host: an error
+ * response, which the LDClient reports as an IOException, is recorded against the resource.
+ *
+ * @author agent
+ */
+public class NegativeCache implements NegativeCacheMBean {
+
+    private static final Logger LOGGER = getLogger(NegativeCache.class);
+
+    private final Cache<String, String> failures;
+
+    private final ConcurrentHashMap<String, Backoff> hosts = new ConcurrentHashMap<>();
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private final AtomicLong avoided = new AtomicLong();
+
+    /**
+     * Create a negative cache.
+     *
+     * @param timeout the length of time (in seconds) to remember a failed resource; zero disables this
+     * @param maxEntries the maximum number of failed resources to remember
+     * @param initialBackoff the length of time (in milliseconds) to avoid a host after its first failure;
+     *        zero disables host backoff
+     * @param maxBackoff the maximum length of time (in milliseconds) to avoid a host
+     */
+    public NegativeCache(final long timeout, final long maxEntries, final long initialBackoff,
+            final long maxBackoff) {
+        this.failures = CacheBuilder.newBuilder()
+                .maximumSize(timeout > 0 ? maxEntries : 0L)
+                .expireAfterWrite(Math.max(timeout, 1L), SECONDS)
+                .build();
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = Math.max(initialBackoff, maxBackoff);
+    }
+
+    /**
+     * Check whether a resource should be dereferenced.
+     *
+     * @param resource the resource URI
+     * @return the reason the resource should not be dereferenced, if any
+     */
+    public Optional<String> check(final String resource) {
+        final String failure = failures.getIfPresent(resource);
+        if (failure != null) {
+            avoided.incrementAndGet();
+            return Optional.of("Recently failed to retrieve " + resource + ": " + failure);
+        }
+
+        final Backoff backoff = host(resource).map(hosts::get).orElse(null);
+        if (backoff != null && backoff.isActive()) {
+            avoided.incrementAndGet();
+            return Optional.of("Host unavailable, not retrieving " + resource);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Record a successful dereference.
+     *
+     * @param resource the resource URI
+     */
+    public void success(final String resource) {
+        host(resource).ifPresent(hosts::remove);
+    }
+
+    /**
+     * Record a failed dereference.
+     *
+     * @param resource the resource URI
+     * @param ex the cause of the failure
+     */
+    public void failure(final String resource, final Exception ex) {
+        final Optional<String> host = host(resource);
+        if (isConnectionFailure(ex) && initialBackoff > 0 && host.isPresent()) {
+            final Backoff backoff = hosts.computeIfAbsent(host.get(), h -> new Backoff());
+            final long delay = backoff.failed(initialBackoff, maxBackoff);
+            LOGGER.info("Could not connect to {}, avoiding it for {} ms", host.get(), delay);
+        } else {
+            failures.put(resource, String.valueOf(ex.getMessage()));
+        }
+    }
+
+    @Override
+    public long getFailedResourceCount() {
+        return failures.size();
+    }
+
+    @Override
+    public long getUnavailableHostCount() {
+        return hosts.values().stream().filter(Backoff::isActive).count();
+    }
+
+    @Override
+    public long getAvoidedRequestCount() {
+        return avoided.get();
+    }
+
+    @Override
+    public void clear() {
+        failures.invalidateAll();
+        hosts.clear();
+    }
+
+    private static boolean isConnectionFailure(final Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException ||
+                    cause instanceof SocketTimeoutException || cause instanceof UnknownHostException ||
+                    cause instanceof NoHttpResponseException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Optional<String> host(final String resource) {
+        try {
+            return Optional.ofNullable(URI.create(resource).getHost());
+        } catch (final IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /*
+     * The backoff state for a single host.
+     */
+    private static class Backoff {
+
+        private int failures;
+
+        private long until;
+
+        synchronized long failed(final long initial, final long max) {
+            final long delay = failures >= 30 ? max : Math.min(initial << failures, max);
+            failures += 1;
+            until = System.currentTimeMillis() + delay;
+            return delay;
+        }
+
+        synchronized boolean isActive() {
+            return System.currentTimeMillis() < until;
+        }
+    }
+}
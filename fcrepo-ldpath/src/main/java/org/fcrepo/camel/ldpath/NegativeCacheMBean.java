@@ -0,0 +1,46 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+/**
+ * Management interface for the record of failed dereferences.
+ *
+ * @author agent
+ */
+public interface NegativeCacheMBean {
+
+    /**
+     * @return the number of resources that recently failed to be retrieved
+     */
+    long getFailedResourceCount();
+
+    /**
+     * @return the number of hosts that are currently being avoided
+     */
+    long getUnavailableHostCount();
+
+    /**
+     * @return the number of requests that were not made because of an earlier failure
+     */
+    long getAvoidedRequestCount();
+
+    /**
+     * Forget all failures.
+     */
+    void clear();
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
+import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
+import org.apache.marmotta.ldclient.api.provider.DataProvider;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.apache.marmotta.ldclient.model.ClientResponse;
+import org.slf4j.Logger;
+
+/**
+ * A data provider that does not repeat recently failed dereferences.
+ *
+ * @author agent
+ */
+public class NegativeCachingProvider implements DataProvider {
+
+    private static final Logger LOGGER = getLogger(NegativeCachingProvider.class);
+
+    private final DataProvider provider;
+
+    private final NegativeCache negativeCache;
+
+    /**
+     * Create a negative caching data provider.
+     *
+     * @param provider the underlying data provider
+     * @param negativeCache the record of failed dereferences
+     */
+    public NegativeCachingProvider(final DataProvider provider, final NegativeCache negativeCache) {
+        this.provider = Objects.requireNonNull(provider);
+        this.negativeCache = Objects.requireNonNull(negativeCache);
+    }
+
+    @Override
+    public String getName() {
+        return provider.getName();
+    }
+
+    @Override
+    public String[] listMimeTypes() {
+        return provider.listMimeTypes();
+    }
+
+    @Override
+    public ClientResponse retrieveResource(final String resource, final LDClientService client,
+            final Endpoint endpoint) throws DataRetrievalException {
+        final Optional<String> failure = negativeCache.check(resource);
+        if (failure.isPresent()) {
+            LOGGER.debug(failure.get());
+            throw new DataRetrievalException(failure.get());
+        }
+
+        try {
+            final ClientResponse response = provider.retrieveResource(resource, client, endpoint);
+            negativeCache.success(resource);
+            return response;
+        } catch (final DataRetrievalException | RuntimeException ex) {
+            negativeCache.failure(resource, ex);
+            throw ex;
+        }
+    }
+}
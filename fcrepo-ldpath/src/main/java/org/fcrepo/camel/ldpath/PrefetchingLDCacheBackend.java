@@ -0,0 +1,261 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toSet;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.marmotta.ldcache.services.LDCache;
+import org.apache.marmotta.ldpath.backend.linkeddata.LDCacheBackend;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+
+/**
+ * An LDCache-based LDPath backend that dereferences linked resources concurrently.
+ *
+ * When a property such as pcdm:hasMember or ore:aggregates expands to several resources,
+ * LDPath would otherwise dereference each of them in turn on the request thread. This
+ * backend fetches them in parallel, using a bounded pool, before returning the expanded
+ * nodes. The fetched resources are held for the remainder of the request that prefetched
+ * them, so that they are available to the rest of its evaluation even if the LDCache is
+ * configured not to retain them (e.g. fcrepo.cache.timeout=0), but they are never used
+ * by other requests. Prefetching only takes place between {@link #startRequest()} and
+ * {@link #endRequest()}, which bracket the evaluation of an LDPath request on its thread.
+ *
+ * Concurrent requests for the same resource, whether from LDPath evaluations on different
+ * threads or from the prefetching pool, are collapsed into a single LDCache lookup.
+ *
+ * @author agent
+ */
+public class PrefetchingLDCacheBackend extends LDCacheBackend {
+
+    private static final Logger LOGGER = getLogger(PrefetchingLDCacheBackend.class);
+
+    private final LDCache ldcache;
+
+    private final Set<String> properties;
+
+    private final int threshold;
+
+    private final long timeout;
+
+    private final ThreadPoolExecutor executor;
+
+    private final SingleFlight<Model> fetches = new SingleFlight<>();
+
+    /* the resources prefetched by the request being evaluated on each thread */
+    private final ThreadLocal<Map<String, Model>> prefetched = new ThreadLocal<>();
+
+    /**
+     * Create a backend that does not prefetch linked resources.
+     *
+     * @param ldcache the LDCache
+     */
+    public PrefetchingLDCacheBackend(final LDCache ldcache) {
+        this(ldcache, "", 0, 0, 0L);
+    }
+
+    /**
+     * Create a prefetching backend.
+     *
+     * @param ldcache the LDCache
+     * @param properties a comma-separated list of property URIs whose values are prefetched;
+     *        if empty, the values of any property are prefetched
+     * @param threshold the minimum number of linked resources for prefetching to take place
+     * @param threads the maximum number of concurrent fetches; zero disables prefetching
+     * @param timeout the maximum length of time (in milliseconds) to wait for a set of linked resources
+     */
+    public PrefetchingLDCacheBackend(final LDCache ldcache, final String properties,
+            final int threshold, final int threads, final long timeout) {
+        super(ldcache);
+        this.ldcache = Objects.requireNonNull(ldcache);
+        this.properties = Arrays.stream(properties.split(",")).map(String::trim).filter(p -> !p.isEmpty())
+                .collect(toSet());
+        this.threshold = Math.max(threshold, 1);
+        this.timeout = timeout;
+        this.executor = threads > 0 ? createExecutor(threads) : null;
+    }
+
+    @Override
+    public Collection<Value> listObjects(final Value subject, final Value property) {
+        final Collection<Value> objects;
+        if (subject instanceof URI) {
+            objects = objects(getModel((URI) subject), (URI) subject, property);
+        } else {
+            objects = super.listObjects(subject, property);
+        }
+
+        if (executor != null && objects.size() >= threshold && prefetched.get() != null &&
+                (properties.isEmpty() || properties.contains(property.stringValue()))) {
+            prefetch(objects);
+        }
+        return objects;
+    }
+
+    /**
+     * Get the triples of a resource, from those prefetched by the current request or else from the LDCache.
+     *
+     * @param resource the resource
+     * @return the triples, or null if the resource could not be retrieved
+     */
+    Model getModel(final URI resource) {
+        final Map<String, Model> models = prefetched.get();
+        final Model model = models == null ? null : models.get(resource.stringValue());
+        if (model != null) {
+            LOGGER.debug("Using prefetched resource {}", resource);
+            RequestTimings.lookedUp();
+            return model;
+        }
+        return fetch(resource);
+    }
+
+    /**
+     * Start an LDPath request on the current thread. Linked resources may be prefetched
+     * until the request is ended.
+     */
+    public void startRequest() {
+        prefetched.set(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * End the LDPath request on the current thread, releasing the resources prefetched for it.
+     */
+    public void endRequest() {
+        prefetched.remove();
+    }
+
+    /**
+     * @return the number of resources retrieved from the LDCache
+     */
+    public long getFetchCount() {
+        return fetches.getExecutedCount();
+    }
+
+    /**
+     * @return the number of requests for a resource that waited for an in-flight retrieval
+     */
+    public long getCollapsedFetchCount() {
+        return fetches.getCollapsedCount();
+    }
+
+    /**
+     * Stop the prefetching threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Dereference the URI-valued objects concurrently, waiting (up to the timeout) for them to complete.
+     * Fetches that are still running when the timeout elapses are allowed to finish in the background.
+     */
+    private void prefetch(final Collection<Value> objects) {
+        final List<Future<?>> futures = new ArrayList<>();
+        final RequestTimings timings = RequestTimings.current();
+        final Map<String, Model> models = prefetched.get();
+        for (final Value object : objects) {
+            if (object instanceof URI && !models.containsKey(object.stringValue())) {
+                final URI resource = (URI) object;
+                futures.add(executor.submit(() -> {
+                    // the retrieval is counted towards the request, whichever thread performs it
+                    final RequestTimings previous = RequestTimings.current();
+                    RequestTimings.attach(timings);
+                    try {
+                        final Model model = fetch(resource);
+                        if (model != null) {
+                            models.put(resource.stringValue(), model);
+                        }
+                        return model;
+                    } finally {
+                        RequestTimings.attach(previous);
+                    }
+                }));
+            }
+        }
+        LOGGER.debug("Prefetching {} linked resources", futures.size());
+
+        final long deadline = System.currentTimeMillis() + timeout;
+        for (final Future<?> future : futures) {
+            try {
+                future.get(Math.max(deadline - System.currentTimeMillis(), 0L), MILLISECONDS);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final TimeoutException ex) {
+                LOGGER.debug("Timed out waiting for linked resources to be prefetched");
+                return;
+            } catch (final ExecutionException ex) {
+                // the resource will be dereferenced again (and any error reported) when LDPath requests it
+                LOGGER.debug("Error prefetching linked resource: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Retrieve a resource from the LDCache, sharing the result with any concurrent request for the same resource.
+     */
+    private Model fetch(final URI resource) {
+        final long start = System.nanoTime();
+        try {
+            return fetches.execute(resource.stringValue(), () -> ldcache.get(resource));
+        } finally {
+            RequestTimings.record(Stage.LOOKUP, start);
+            RequestTimings.lookedUp();
+        }
+    }
+
+    private static Collection<Value> objects(final Model model, final URI subject, final Value property) {
+        if (model == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(model.filter(subject, (URI) property, null).objects());
+    }
+
+    private static ThreadPoolExecutor createExecutor(final int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        // when the queue is full, the caller fetches the resource itself
+        return new ThreadPoolExecutor(threads, threads, 0L, MILLISECONDS, new ArrayBlockingQueue<>(threads * 100),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "LDPath prefetch-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
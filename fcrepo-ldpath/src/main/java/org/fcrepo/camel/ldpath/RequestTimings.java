@@ -0,0 +1,183 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The time spent in each stage of a single LDPath request, together with the resources it retrieved.
+ *
+ * The timings for the current request are associated with the thread handling it, so that
+ * the components involved (the data providers, the LDCache backend, the LDPath evaluator and
+ * the JSON writer) can record them without any additional wiring. Work that is performed on
+ * behalf of a request on another thread, such as prefetching, attaches to the request's
+ * timings while it runs.
+ *
+ * @author agent
+ */
+final class RequestTimings {
+
+    /**
+     * The stages of an LDPath request. Stages may be nested: for example, retrievals
+     * take place during LDCache lookups, which take place during evaluation.
+     */
+    enum Stage {
+        PROGRAM("program"),
+        DESCRIBEDBY("describedby"),
+        RETRIEVAL("retrieval"),
+        LOOKUP("lookup"),
+        EVALUATION("evaluation"),
+        FORMAT("format"),
+        REQUEST("request");
+
+        private final String label;
+
+        Stage(final String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return the name of the stage, as used in metrics
+         */
+        String getLabel() {
+            return label;
+        }
+    }
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private final long start = System.nanoTime();
+
+    private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+
+    private final AtomicLong retrievals = new AtomicLong();
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Start recording a new request on the current thread.
+     *
+     * @return the timings for the request
+     */
+    static RequestTimings start() {
+        final RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * @return the timings of the request being handled by the current thread, or null
+     */
+    static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Associate the current thread with a request.
+     *
+     * @param timings the timings of the request, or null to remove any association
+     */
+    static void attach(final RequestTimings timings) {
+        if (timings == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timings);
+        }
+    }
+
+    /**
+     * Record time spent in a stage of the current request, if any.
+     *
+     * @param stage the stage
+     * @param startNanos the value of System.nanoTime() when the stage began
+     */
+    static void record(final Stage stage, final long startNanos) {
+        final RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.nanos.addAndGet(stage.ordinal(), System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Record a retrieval of a resource from its source for the current request, if any.
+     */
+    static void retrieved() {
+        final RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.retrievals.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record an LDCache lookup for the current request, if any.
+     */
+    static void lookedUp() {
+        final RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.lookups.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record bytes read from a retrieved resource for the current request, if any.
+     *
+     * @param count the number of bytes
+     */
+    static void read(final long count) {
+        final RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.bytes.addAndGet(count);
+        }
+    }
+
+    /**
+     * @param stage the stage
+     * @return the time (in nanoseconds) spent in the stage; for the request stage, the time since it started
+     */
+    long getNanos(final Stage stage) {
+        return stage == Stage.REQUEST ? System.nanoTime() - start : nanos.get(stage.ordinal());
+    }
+
+    /**
+     * @return the number of resources retrieved from their source, i.e. LDCache misses
+     */
+    long getRetrievals() {
+        return retrievals.get();
+    }
+
+    /**
+     * @return the number of LDCache lookups that did not require a retrieval
+     */
+    long getHits() {
+        return Math.max(lookups.get() - retrievals.get(), 0L);
+    }
+
+    /**
+     * @return the number of bytes read from retrieved resources
+     */
+    long getBytes() {
+        return bytes.get();
+    }
+
+    private RequestTimings() {
+        // use start()
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapse concurrent requests for the same key into a single call.
+ *
+ * The first caller for a key performs the work; any caller that arrives while that
+ * work is in progress waits for, and shares, its outcome. Nothing is retained once
+ * the work completes.
+ *
+ * @author agent
+ */
+class SingleFlight<V> {
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Perform the work for a key, or wait for the in-flight work for the same key.
+     *
+     * @param key the key
+     * @param work the work to perform
+     * @return the result of the work
+     * @throws CompletionException if the work failed with a checked exception
+     */
+    V execute(final String key, final Callable<V> work) {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            return await(existing);
+        }
+
+        executed.incrementAndGet();
+        try {
+            final V result = work.call();
+            future.complete(result);
+            return result;
+        } catch (final RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } catch (final Exception ex) {
+            future.completeExceptionally(ex);
+            throw new CompletionException(ex);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return the number of times that work was performed
+     */
+    long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return the number of callers that shared the outcome of in-flight work
+     */
+    long getCollapsedCount() {
+        return collapsed.get();
+    }
+
+    private static <V> V await(final CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            } else if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
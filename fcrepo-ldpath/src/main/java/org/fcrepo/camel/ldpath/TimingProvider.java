@@ -0,0 +1,68 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import java.util.Objects;
+
+import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
+import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
+import org.apache.marmotta.ldclient.api.provider.DataProvider;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.apache.marmotta.ldclient.model.ClientResponse;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
+
+/**
+ * A data provider that records the retrievals made on behalf of the current LDPath request.
+ *
+ * @author agent
+ */
+class TimingProvider implements DataProvider {
+
+    private final DataProvider provider;
+
+    /**
+     * Create a timing data provider.
+     *
+     * @param provider the underlying data provider
+     */
+    TimingProvider(final DataProvider provider) {
+        this.provider = Objects.requireNonNull(provider);
+    }
+
+    @Override
+    public String getName() {
+        return provider.getName();
+    }
+
+    @Override
+    public String[] listMimeTypes() {
+        return provider.listMimeTypes();
+    }
+
+    @Override
+    public ClientResponse retrieveResource(final String resource, final LDClientService client,
+            final Endpoint endpoint) throws DataRetrievalException {
+        final long start = System.nanoTime();
+        try {
+            return provider.retrieveResource(resource, client, endpoint);
+        } finally {
+            RequestTimings.record(Stage.RETRIEVAL, start);
+            RequestTimings.retrieved();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.camel.Exchange.HTTP_RESPONSE_CODE;
+import static org.apache.camel.Exchange.ROUTE_STOP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+/**
+ * Test the LDPath admission controller.
+ *
+ * @author agent
+ */
+public class AdmissionControllerTest {
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 0, 0L, 7);
+        assertTrue(controller.acquire());
+
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        controller.process(exchange);
+
+        assertEquals(503, exchange.getIn().getHeader(HTTP_RESPONSE_CODE));
+        assertEquals(7, exchange.getIn().getHeader("Retry-After"));
+        assertTrue(exchange.getProperty(ROUTE_STOP, Boolean.class));
+        assertEquals(1L, controller.getRejectedCount());
+    }
+
+    @Test
+    public void testQueuedRequestIsAdmitted() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 1, 5000L, 5);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertTrue(controller.acquire());
+            final Future<Boolean> waiting = executor.submit(controller::acquire);
+            while (controller.getQueuedCount() == 0) {
+                Thread.sleep(10L);
+            }
+            controller.release(0L);
+            assertTrue(waiting.get(5, SECONDS));
+            assertEquals(1, controller.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWaitTimesOut() throws Exception {
+        final AdmissionController controller = new AdmissionController(1, 1, 50L, 5);
+        assertTrue(controller.acquire());
+        assertFalse(controller.acquire());
+        assertEquals(0, controller.getQueuedCount());
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws Exception {
+        final AdmissionController controller = new AdmissionController(10, 0, 0L, 5, true, 100L);
+        assertTrue(controller.acquire());
+        controller.release(MILLISECONDS.toNanos(1000L));
+        assertEquals(9, controller.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(controller.acquire());
+            controller.release(MILLISECONDS.toNanos(10L));
+        }
+        assertEquals(10, controller.getLimit());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final AdmissionController controller = new AdmissionController(0, 0, 0L, 5);
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        controller.process(exchange);
+        assertFalse(exchange.getIn().hasHeaders());
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import java.util.Dictionary;
+
+/**
+ * Test the route workflow, with LDPath programs evaluated according to cached plans.
+ *
+ * @author agent
+ */
+public class CompiledRouteTest extends RouteTest {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected String useOverridePropertiesWithConfigAdmin(final Dictionary props) {
+        props.put("ldpath.compiled.enabled", "true");
+        return "org.fcrepo.camel.ldpath";
+    }
+}
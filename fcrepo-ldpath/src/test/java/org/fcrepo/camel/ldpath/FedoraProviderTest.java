@@ -0,0 +1,135 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpServer;
+import org.fcrepo.client.FcrepoHttpClientBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the describedby cache of the Fedora data provider.
+ *
+ * @author agent
+ */
+public class FedoraProviderTest {
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final String path = exchange.getRequestURI().getPath();
+            requests.add(exchange.getRequestMethod() + " " + path);
+            if (path.equals("/binary")) {
+                exchange.getResponseHeaders().add("Link", "<" + baseUrl + "/binary/fcr:metadata>; rel=\"describedby\"");
+                exchange.getResponseHeaders().add("Link", "<http://www.w3.org/ns/ldp#NonRDFSource>; rel=\"type\"");
+                exchange.sendResponseHeaders(200, -1);
+            } else if (path.equals("/container")) {
+                exchange.getResponseHeaders().add("Link", "<http://www.w3.org/ns/ldp#BasicContainer>; rel=\"type\"");
+                exchange.sendResponseHeaders(200, -1);
+            } else if (path.equals("/error")) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static FedoraProvider provider(final long cacheSize) {
+        return new FedoraProvider(new FcrepoHttpClientBuilder(null, null, null), cacheSize, 0L);
+    }
+
+    @Test
+    public void testCachesSuccessfulLookups() {
+        final FedoraProvider provider = provider(100L);
+        final List<String> description = singletonList(baseUrl + "/binary/fcr:metadata");
+        assertEquals(description, provider.buildRequestUrl(baseUrl + "/binary", null));
+        assertEquals(description, provider.buildRequestUrl(baseUrl + "/binary", null));
+
+        // the outcome for a resource that is not a binary is cached too
+        final List<String> container = singletonList(baseUrl + "/container");
+        assertEquals(container, provider.buildRequestUrl(baseUrl + "/container", null));
+        assertEquals(container, provider.buildRequestUrl(baseUrl + "/container", null));
+
+        assertEquals(2, requests.size());
+        assertEquals(2L, provider.getHeadRequestCount());
+        assertEquals(2L, provider.getHeadRequestsAvoidedCount());
+        assertEquals(2L, provider.getDescribedByCacheSize());
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() {
+        final FedoraProvider provider = provider(100L);
+        for (final String path : new String[] {"/missing", "/error"}) {
+            assertEquals(singletonList(baseUrl + path), provider.buildRequestUrl(baseUrl + path, null));
+            assertEquals(singletonList(baseUrl + path), provider.buildRequestUrl(baseUrl + path, null));
+        }
+        assertEquals(4, requests.size());
+        assertEquals(0L, provider.getHeadRequestsAvoidedCount());
+        assertEquals(0L, provider.getDescribedByCacheSize());
+    }
+
+    @Test
+    public void testCacheDisabled() {
+        final FedoraProvider provider = provider(0L);
+        provider.buildRequestUrl(baseUrl + "/binary", null);
+        provider.buildRequestUrl(baseUrl + "/binary", null);
+        assertEquals(2, requests.size());
+        assertEquals(0L, provider.getDescribedByCacheSize());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final FedoraProvider provider = provider(100L);
+        provider.buildRequestUrl(baseUrl + "/binary", null);
+        provider.buildRequestUrl(baseUrl + "/container", null);
+        assertEquals(2L, provider.getDescribedByCacheSize());
+
+        provider.invalidate(baseUrl + "/binary");
+        assertEquals(1L, provider.getDescribedByCacheSize());
+        provider.buildRequestUrl(baseUrl + "/binary", null);
+        provider.buildRequestUrl(baseUrl + "/container", null);
+        assertEquals(3, requests.size());
+
+        provider.clear();
+        assertEquals(0L, provider.getDescribedByCacheSize());
+    }
+}
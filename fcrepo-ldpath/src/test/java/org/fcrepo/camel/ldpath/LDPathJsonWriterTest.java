@@ -0,0 +1,170 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Test the streaming LDPath JSON writer, and compare it with marshalling the results with an ObjectMapper.
+ *
+ * @author agent
+ */
+public class LDPathJsonWriterTest {
+
+    private static final Logger LOGGER = getLogger(LDPathJsonWriterTest.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int VALUES = 50000;
+
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testOutput() throws IOException {
+        final Map<String, Collection<?>> result = new HashMap<>();
+        result.put("id", singletonList("http://localhost/rest/a"));
+        result.put("label", asList("A \"quoted\" label", "Ünïcode"));
+        result.put("size", asList(42L, 1.5));
+        result.put("empty", new ArrayList<>());
+        final List<Map<String, Collection<?>>> results = singletonList(result);
+
+        assertEquals(MAPPER.readTree(MAPPER.writeValueAsBytes(results)), MAPPER.readTree(write(results)));
+        assertArrayEquals(write(results), ByteStreams.toByteArray(LDPathJsonWriter.stream(results)));
+    }
+
+    @Test
+    public void testNull() throws IOException {
+        assertEquals("null", new String(write(null), UTF_8));
+        assertEquals("null", new String(ByteStreams.toByteArray(LDPathJsonWriter.stream(null)), UTF_8));
+    }
+
+    @Test
+    public void testNullValues() throws IOException {
+        final Map<String, Collection<?>> result = new HashMap<>();
+        result.put("none", null);
+        final List<Map<String, Collection<?>>> results = asList(result, null, new HashMap<>());
+
+        assertArrayEquals(write(results), ByteStreams.toByteArray(LDPathJsonWriter.stream(results)));
+    }
+
+    @Test
+    public void testStreamLargeResult() throws IOException {
+        final List<Map<String, Collection<?>>> results = largeResult();
+        final InputStream stream = LDPathJsonWriter.stream(results);
+
+        // the document is serialized as it is read, one chunk at a time
+        assertEquals(0, stream.available());
+        assertEquals('[', stream.read());
+        assertTrue(stream.available() < 16384);
+        final byte[] rest = ByteStreams.toByteArray(stream);
+        assertEquals(-1, stream.read());
+
+        final byte[] written = write(results);
+        assertEquals(written.length, rest.length + 1);
+        assertEquals(MAPPER.readTree(written), MAPPER.readTree("[" + new String(rest, UTF_8)));
+    }
+
+    @Test
+    public void testLargeResult() throws IOException {
+        final List<Map<String, Collection<?>>> results = largeResult();
+        final byte[] marshalled = MAPPER.writeValueAsBytes(results);
+        final DiscardingOutputStream output = new DiscardingOutputStream();
+        LDPathJsonWriter.write(results, output);
+
+        assertEquals(marshalled.length, output.count);
+        assertEquals(MAPPER.readTree(marshalled), MAPPER.readTree(write(results)));
+
+        // the timings are informational only; they depend too much on the host to be asserted
+        LOGGER.info("Serialized {} values {} times: marshal {} ms (buffering {} bytes per result), streaming {} ms",
+                VALUES, ITERATIONS, time(() -> MAPPER.writeValueAsBytes(results)), marshalled.length,
+                time(() -> LDPathJsonWriter.write(results, new DiscardingOutputStream())));
+    }
+
+    private static long time(final Serialization serialization) throws IOException {
+        // warm up before timing
+        for (int i = 0; i < ITERATIONS; ++i) {
+            serialization.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            serialization.run();
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static byte[] write(final List<Map<String, Collection<?>>> results) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LDPathJsonWriter.write(results, output);
+        return output.toByteArray();
+    }
+
+    private static List<Map<String, Collection<?>>> largeResult() {
+        final List<String> members = new ArrayList<>();
+        for (int i = 0; i < VALUES; ++i) {
+            members.add("http://localhost:8080/fcrepo/rest/collection/member/" + i);
+        }
+        final Map<String, Collection<?>> result = new HashMap<>();
+        result.put("id", singletonList("http://localhost:8080/fcrepo/rest/collection"));
+        result.put("hasMember", members);
+        return singletonList(result);
+    }
+
+    @FunctionalInterface
+    private interface Serialization {
+        void run() throws IOException;
+    }
+
+    /*
+     * Counts the bytes written, standing in for an HTTP response stream.
+     */
+    private static class DiscardingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count += 1;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
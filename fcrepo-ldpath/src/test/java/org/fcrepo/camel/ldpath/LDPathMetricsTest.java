@@ -0,0 +1,133 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static org.fcrepo.camel.ldpath.LDPathMetrics.LDPATH_TIMING_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.fcrepo.camel.ldpath.RequestTimings.Stage;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the LDPath request metrics.
+ *
+ * @author agent
+ */
+public class LDPathMetricsTest {
+
+    @After
+    public void tearDown() {
+        RequestTimings.attach(null);
+    }
+
+    @Test
+    public void testHistogram() {
+        final Histogram histogram = new Histogram(1.0, 2.0, 5.0);
+        histogram.record(0.5);
+        histogram.record(1.5);
+        histogram.record(1.8);
+        histogram.record(10.0);
+
+        assertEquals(4L, histogram.getCount());
+        assertEquals(13.8, histogram.getSum(), 0.0001);
+        assertEquals(2.0, histogram.getPercentile(50.0), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, histogram.getPercentile(99.0), 0.0);
+
+        final StringBuilder out = new StringBuilder();
+        histogram.write(out, "test", "stage=\"x\"");
+        assertTrue(out.toString().contains("test_bucket{stage=\"x\",le=\"2.0\"} 3\n"));
+        assertTrue(out.toString().contains("test_bucket{stage=\"x\",le=\"+Inf\"} 4\n"));
+        assertTrue(out.toString().contains("test_count{stage=\"x\"} 4\n"));
+
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void testRequest() {
+        final LDPathMetrics metrics = new LDPathMetrics(true);
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+
+        metrics.start(exchange);
+        RequestTimings.lookedUp();
+        RequestTimings.lookedUp();
+        RequestTimings.retrieved();
+        RequestTimings.read(2048L);
+        RequestTimings.record(Stage.EVALUATION, System.nanoTime() - 5000000L);
+        metrics.timingHeader(exchange);
+        assertEquals(0L, metrics.getRequestCount());
+        exchange.handoverCompletions().forEach(s -> s.onComplete(exchange));
+
+        assertNull(RequestTimings.current());
+        assertEquals(1L, metrics.getRequestCount());
+        assertEquals(1L, metrics.getCacheHitCount());
+        assertEquals(1L, metrics.getCacheMissCount());
+        assertEquals(2048L, metrics.getBytesFetched());
+        assertTrue(metrics.getMeanTime("evaluation") >= 5.0);
+        assertEquals(0.0, metrics.getMeanTime("format"), 0.0);
+
+        final String timing = exchange.getIn().getHeader(LDPATH_TIMING_HEADER, String.class);
+        assertTrue(timing.startsWith("program=0.0ms, "));
+        assertTrue(timing.endsWith("fetches=1, bytes=2048, hits=1, misses=1"));
+
+        metrics.scrape(exchange);
+        final String body = exchange.getIn().getBody(String.class);
+        assertTrue(body.contains("ldpath_stage_seconds_count{stage=\"evaluation\"} 1\n"));
+        assertTrue(body.contains("ldpath_cache_misses_total 1\n"));
+
+        metrics.reset();
+        assertEquals(0L, metrics.getRequestCount());
+    }
+
+    @Test
+    public void testWithoutHeader() {
+        final LDPathMetrics metrics = new LDPathMetrics(false);
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        metrics.start(exchange);
+        metrics.timingHeader(exchange);
+        exchange.handoverCompletions().forEach(s -> s.onComplete(exchange));
+        assertNull(exchange.getIn().getHeader(LDPATH_TIMING_HEADER));
+        assertEquals(1L, metrics.getRequestCount());
+    }
+
+    @Test
+    public void testFailedRequest() {
+        final LDPathMetrics metrics = new LDPathMetrics(true);
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        metrics.start(exchange);
+        RequestTimings.retrieved();
+        exchange.setException(new IllegalStateException("Expected"));
+        exchange.handoverCompletions().forEach(s -> s.onFailure(exchange));
+
+        assertNull(RequestTimings.current());
+        assertEquals(1L, metrics.getRequestCount());
+        assertEquals(1L, metrics.getCacheMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStage() {
+        new LDPathMetrics(false).getMeanTime("unknown");
+    }
+}
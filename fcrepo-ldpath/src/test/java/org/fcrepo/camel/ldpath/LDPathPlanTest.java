@@ -0,0 +1,211 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.Collections.emptyList;
+import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
+import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.io.ByteStreams;
+import org.apache.marmotta.ldcache.backend.file.LDCachingFileBackend;
+import org.apache.marmotta.ldcache.model.CacheConfiguration;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.apache.marmotta.ldcache.services.LDCache;
+import org.apache.marmotta.ldpath.LDPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.slf4j.Logger;
+
+/**
+ * Test LDPath evaluation plans, and compare them with the general LDPath evaluator.
+ *
+ * @author agent
+ */
+public class LDPathPlanTest {
+
+    private static final Logger LOGGER = getLogger(LDPathPlanTest.class);
+
+    private static final ValueFactory FACTORY = ValueFactoryImpl.getInstance();
+
+    private static final String FEDORA = "http://fedora.info/definitions/v4/repository#";
+
+    private static final String DCTERMS = "http://purl.org/dc/terms/";
+
+    private static final String DC = "http://purl.org/dc/elements/1.1/";
+
+    private static final String PCDM = "http://pcdm.org/models#";
+
+    private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+
+    private static final URI RESOURCE = FACTORY.createURI("http://localhost:8080/fcrepo/rest/collection");
+
+    private static final int MEMBERS = 500;
+
+    private static final int ITERATIONS = 10;
+
+    private LDCachingFileBackend backend;
+
+    private PrefetchingLDCacheBackend ldcacheBackend;
+
+    private byte[] defaultProgram;
+
+    @Before
+    public void setUp() throws Exception {
+        final String cacheDir = System.getProperty("project.build.directory", "target") +
+                "/ldcache-" + randomAlphabetic(5);
+        backend = new LDCachingFileBackend(new File(cacheDir));
+        backend.initialize();
+        backend.putEntry(RESOURCE, entry(RESOURCE, collection()));
+        ldcacheBackend = new PrefetchingLDCacheBackend(
+                new LDCache(new CacheConfiguration(ClientFactory.createClient(emptyList(), emptyList())), backend));
+        try (final InputStream program = loadResourceAsStream("org/fcrepo/camel/ldpath/default.ldpath")) {
+            defaultProgram = ByteStreams.toByteArray(program);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ldcacheBackend.shutdown();
+        backend.shutdown();
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        final LDPath<Value> ldpath = new LDPath<>(ldcacheBackend);
+        final Optional<LDPathPlan> plan = LDPathPlan.compile(ldpath.parseProgram(new StringReader(
+                "@prefix dcterms : <" + DCTERMS + ">\n" +
+                "@prefix pcdm : <" + PCDM + ">\n" +
+                "id = . :: xsd:string ;\n" +
+                "title = dcterms:title :: xsd:string ;\n" +
+                "alternative = dcterms:title :: xsd:string ;\n" +
+                "creator = dc:creator | dcterms:creator :: xsd:string ;\n" +
+                "memberTitle = pcdm:hasMember / dcterms:title :: xsd:string ;\n")), ldcacheBackend);
+
+        assertEquals(3, plan.get().getPlannedFieldCount());
+        assertEquals(2, plan.get().getGeneralFieldCount());
+    }
+
+    @Test
+    public void testFilteredProgram() throws Exception {
+        final LDPath<Value> ldpath = new LDPath<>(ldcacheBackend);
+        assertFalse(LDPathPlan.compile(ldpath.parseProgram(new StringReader(
+                "@prefix fedora : <" + FEDORA + ">\n" +
+                "@filter rdf:type is fedora:Container ;\n" +
+                "title = dc:title :: xsd:string ;\n")), ldcacheBackend).isPresent());
+    }
+
+    @Test
+    public void testDefaultProgram() throws Exception {
+        final LDPathWrapper general = new LDPathWrapper(ldcacheBackend, false);
+        final LDPathWrapper compiled = new LDPathWrapper(ldcacheBackend, true);
+
+        assertEquals(values(query(general)), values(query(compiled)));
+
+        // warm up both evaluators before timing them
+        for (int i = 0; i < ITERATIONS; ++i) {
+            query(general);
+            query(compiled);
+        }
+
+        final long generalStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            query(general);
+        }
+        final long generalTime = System.nanoTime() - generalStart;
+
+        final long compiledStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            query(compiled);
+        }
+        final long compiledTime = System.nanoTime() - compiledStart;
+
+        LOGGER.info("Evaluated the default program over {} triples {} times: general {} ms, planned {} ms",
+                collection().size(), ITERATIONS, generalTime / 1000000, compiledTime / 1000000);
+    }
+
+    private Map<String, Collection<?>> query(final LDPathWrapper ldpath) throws Exception {
+        final List<Map<String, Collection<?>>> results = ldpath.programQuery(RESOURCE.stringValue(),
+                new ByteArrayInputStream(defaultProgram));
+        return results.get(0);
+    }
+
+    /*
+     * Union selectors do not guarantee the order of their values, so compare the values of each field as sets.
+     */
+    private static Map<String, HashSet<?>> values(final Map<String, Collection<?>> result) {
+        final Map<String, HashSet<?>> values = new HashMap<>();
+        result.forEach((field, value) -> values.put(field, new HashSet<>(value)));
+        return values;
+    }
+
+    private static Model collection() {
+        final Model model = new LinkedHashModel();
+        model.add(RESOURCE, FACTORY.createURI(FEDORA + "created"), FACTORY.createLiteral(new Date()));
+        model.add(RESOURCE, FACTORY.createURI(FEDORA + "createdBy"), FACTORY.createLiteral("fedoraAdmin"));
+        model.add(RESOURCE, FACTORY.createURI(FEDORA + "hasParent"),
+                FACTORY.createURI("http://localhost:8080/fcrepo/rest/"));
+        model.add(RESOURCE, FACTORY.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type"),
+                FACTORY.createURI(FEDORA + "Container"));
+        model.add(RESOURCE, FACTORY.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type"),
+                FACTORY.createURI(PCDM + "Collection"));
+        model.add(RESOURCE, FACTORY.createURI(RDFS + "label"), FACTORY.createLiteral("A collection", "en"));
+        model.add(RESOURCE, FACTORY.createURI(DC + "title"), FACTORY.createLiteral("A collection"));
+        model.add(RESOURCE, FACTORY.createURI(DCTERMS + "title"), FACTORY.createLiteral("A collection"));
+        model.add(RESOURCE, FACTORY.createURI(DCTERMS + "creator"), FACTORY.createLiteral("Someone"));
+        model.add(RESOURCE, FACTORY.createURI(DC + "subject"), FACTORY.createLiteral("Testing"));
+        model.add(RESOURCE, FACTORY.createURI(DCTERMS + "subject"), FACTORY.createLiteral("Benchmarks"));
+        model.add(RESOURCE, FACTORY.createURI(DCTERMS + "issued"), FACTORY.createLiteral("2016"));
+        for (int i = 0; i < MEMBERS; ++i) {
+            model.add(RESOURCE, FACTORY.createURI(PCDM + "hasMember"), FACTORY.createURI(RESOURCE + "/" + i));
+        }
+        return model;
+    }
+
+    private static CacheEntry entry(final URI resource, final Model triples) {
+        final CacheEntry entry = new CacheEntry();
+        entry.setResource(resource);
+        entry.setLastRetrieved(new Date());
+        entry.setExpiryDate(new Date(System.currentTimeMillis() + 3600000L));
+        entry.setUpdateCount(1);
+        entry.setTripleCount(triples.size());
+        entry.setTriples(triples);
+        return entry;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.camel.ldpath.LDPathResultCache.LDPATH_RESULT_KEY;
+import static org.fcrepo.camel.ldpath.LDPathResultCache.matches;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.io.ByteStreams;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.fcrepo.client.FcrepoHttpClientBuilder;
+import org.junit.Test;
+
+/**
+ * Test the LDPath result validators.
+ *
+ * @author agent
+ */
+public class LDPathResultCacheTest {
+
+    private static final String ETAG = "W/\"abc123\"";
+
+    private static final byte[] RESULT = "[{\"id\":[\"http://localhost/rest/a\"]}]".getBytes(UTF_8);
+
+    @Test
+    public void testMatches() {
+        assertTrue(matches(ETAG, ETAG));
+        assertTrue(matches("\"abc123\"", ETAG));
+        assertTrue(matches("\"other\", W/\"abc123\"", ETAG));
+        assertTrue(matches("*", ETAG));
+    }
+
+    @Test
+    public void testDoesNotMatch() {
+        assertFalse(matches(null, ETAG));
+        assertFalse(matches("W/\"other\"", ETAG));
+        assertFalse(matches("", ETAG));
+    }
+
+    @Test
+    public void testStore() throws IOException {
+        final LDPathResultCache cache = cache(RESULT.length);
+        final Exchange exchange = exchange("key", new ByteArrayInputStream(RESULT));
+        cache.store(exchange);
+
+        assertEquals(1L, cache.getSize());
+        assertArrayEquals(RESULT, exchange.getIn().getBody(byte[].class));
+    }
+
+    @Test
+    public void testStoreTooLarge() throws IOException {
+        final LDPathResultCache cache = cache(RESULT.length - 1);
+        final CountingInputStream body = new CountingInputStream(RESULT);
+        final Exchange exchange = exchange("key", body);
+        cache.store(exchange);
+
+        // no more than the maximum (plus one byte) is read ahead of the response
+        assertEquals(0L, cache.getSize());
+        assertEquals(RESULT.length, body.count);
+        assertArrayEquals(RESULT, ByteStreams.toByteArray(exchange.getIn().getBody(InputStream.class)));
+    }
+
+    @Test
+    public void testNotCacheable() throws IOException {
+        final LDPathResultCache cache = cache(RESULT.length);
+        final CountingInputStream body = new CountingInputStream(RESULT);
+        final Exchange exchange = exchange(null, body);
+        cache.store(exchange);
+
+        // a result that cannot be stored is left to be streamed
+        assertEquals(0L, cache.getSize());
+        assertEquals(0, body.count);
+        assertEquals(body, exchange.getIn().getBody());
+    }
+
+    private static LDPathResultCache cache(final long maxBytes) {
+        return new LDPathResultCache(new FcrepoHttpClientBuilder(null, null, null), "http://localhost/rest",
+                10L, 60L, maxBytes);
+    }
+
+    private static Exchange exchange(final String key, final InputStream body) {
+        final Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.setProperty(LDPATH_RESULT_KEY, key);
+        exchange.getIn().setBody(body);
+        return exchange;
+    }
+
+    /*
+     * Counts the bytes read from a result.
+     */
+    private static class CountingInputStream extends ByteArrayInputStream {
+
+        private int count;
+
+        CountingInputStream(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read() {
+            final int b = super.read();
+            if (b >= 0) {
+                count += 1;
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
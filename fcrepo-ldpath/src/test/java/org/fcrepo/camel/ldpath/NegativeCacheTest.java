@@ -0,0 +1,92 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.client.ClientProtocolException;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.junit.Test;
+
+/**
+ * Test the record of failed dereferences.
+ *
+ * @author agent
+ */
+public class NegativeCacheTest {
+
+    private static final String RESOURCE = "http://example.org/vocab/term";
+
+    private static final String OTHER = "http://example.org/vocab/other";
+
+    @Test
+    public void testFailedResource() {
+        final NegativeCache cache = new NegativeCache(60L, 100L, 1000L, 10000L);
+        assertFalse(cache.check(RESOURCE).isPresent());
+
+        cache.failure(RESOURCE, new IllegalStateException("Not Found"));
+        assertTrue(cache.check(RESOURCE).isPresent());
+        assertFalse(cache.check(OTHER).isPresent());
+        assertEquals(1L, cache.getFailedResourceCount());
+        assertEquals(1L, cache.getAvoidedRequestCount());
+    }
+
+    @Test
+    public void testErrorResponse() {
+        final NegativeCache cache = new NegativeCache(60L, 100L, 1000L, 10000L);
+
+        // the LDClient reports an error response as a ClientProtocolException, which is an IOException
+        cache.failure(RESOURCE, new DataRetrievalException("could not retrieve " + RESOURCE,
+                new ClientProtocolException("the HTTP request failed (status: HTTP/1.1 404 Not Found)")));
+        assertTrue(cache.check(RESOURCE).isPresent());
+        assertFalse(cache.check(OTHER).isPresent());
+        assertEquals(1L, cache.getFailedResourceCount());
+        assertEquals(0L, cache.getUnavailableHostCount());
+    }
+
+    @Test
+    public void testHostBackoff() throws Exception {
+        final NegativeCache cache = new NegativeCache(60L, 100L, 50L, 10000L);
+
+        cache.failure(RESOURCE, new RuntimeException(new SocketTimeoutException("timed out")));
+        assertTrue(cache.check(OTHER).isPresent());
+        assertEquals(1L, cache.getUnavailableHostCount());
+        assertEquals(0L, cache.getFailedResourceCount());
+
+        Thread.sleep(100L);
+        assertFalse(cache.check(OTHER).isPresent());
+
+        cache.failure(RESOURCE, new ConnectException("connection refused"));
+        cache.success(OTHER);
+        assertFalse(cache.check(RESOURCE).isPresent());
+    }
+
+    @Test
+    public void testDisabled() {
+        final NegativeCache cache = new NegativeCache(0L, 100L, 0L, 0L);
+        cache.failure(RESOURCE, new IllegalStateException("Not Found"));
+        cache.failure(OTHER, new ConnectException("connection refused"));
+        assertFalse(cache.check(RESOURCE).isPresent());
+        assertFalse(cache.check(OTHER).isPresent());
+    }
+}
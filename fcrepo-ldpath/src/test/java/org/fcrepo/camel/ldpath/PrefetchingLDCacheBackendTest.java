@@ -0,0 +1,218 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.marmotta.ldcache.api.LDCachingService.RefreshOpts;
+import org.apache.marmotta.ldcache.model.CacheConfiguration;
+import org.apache.marmotta.ldcache.services.LDCache;
+import org.junit.After;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * Test the concurrent prefetching of linked resources.
+ *
+ * @author agent
+ */
+public class PrefetchingLDCacheBackendTest {
+
+    private static final String BASE = "http://localhost/rest/";
+
+    private static final URI COLLECTION = new URIImpl(BASE + "collection");
+
+    private static final URI HAS_MEMBER = new URIImpl("http://pcdm.org/models#hasMember");
+
+    private static final URI TITLE = new URIImpl("http://purl.org/dc/terms/title");
+
+    /* the number of retrievals of each resource from the stub LDCache */
+    private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+
+    /* the number of retrievals performed on the thread that evaluates the request */
+    private final AtomicInteger callerFetches = new AtomicInteger();
+
+    private volatile Thread caller;
+
+    private volatile long memberDelay;
+
+    private PrefetchingLDCacheBackend backend;
+
+    @After
+    public void tearDown() {
+        if (backend != null) {
+            backend.endRequest();
+            backend.shutdown();
+        }
+    }
+
+    /*
+     * An LDCache that holds a collection of members, each with a title.
+     */
+    private LDCache ldcache(final int members) {
+        return new LDCache(new CacheConfiguration(), null) {
+            @Override
+            public Model get(final URI resource, final RefreshOpts... options) {
+                fetches.computeIfAbsent(resource.stringValue(), r -> new AtomicInteger()).incrementAndGet();
+                if (Thread.currentThread() == caller) {
+                    callerFetches.incrementAndGet();
+                }
+                final Model model = new LinkedHashModel();
+                if (resource.equals(COLLECTION)) {
+                    for (int i = 0; i < members; i++) {
+                        model.add(new StatementImpl(COLLECTION, HAS_MEMBER, new URIImpl(BASE + "member" + i)));
+                    }
+                } else {
+                    if (memberDelay > 0) {
+                        try {
+                            Thread.sleep(memberDelay);
+                        } catch (final InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    model.add(new StatementImpl(resource, TITLE, new LiteralImpl("Title of " + resource)));
+                }
+                return model;
+            }
+        };
+    }
+
+    private int fetchCount() {
+        return fetches.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    private Collection<Value> members(final PrefetchingLDCacheBackend backend) {
+        caller = Thread.currentThread();
+        return backend.listObjects(COLLECTION, HAS_MEMBER);
+    }
+
+    @Test
+    public void testPrefetch() {
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "", 2, 4, 5000L);
+        backend.startRequest();
+        final Collection<Value> members = members(backend);
+        assertEquals(5, members.size());
+        assertEquals(6, fetchCount());
+        assertEquals(6L, backend.getFetchCount());
+
+        // the members are then answered from those prefetched for this request
+        for (final Value member : members) {
+            assertEquals(1, backend.listObjects(member, TITLE).size());
+        }
+        assertEquals(6, fetchCount());
+    }
+
+    @Test
+    public void testPrefetchedResourcesAreScopedToTheRequest() {
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "", 2, 4, 5000L);
+        backend.startRequest();
+        members(backend);
+        assertEquals(6, fetchCount());
+
+        // a later request retrieves the resource again, rather than using a stale copy
+        backend.endRequest();
+        backend.startRequest();
+        backend.listObjects(new URIImpl(BASE + "member0"), TITLE);
+        assertEquals(2, fetches.get(BASE + "member0").get());
+
+        // outside of a request, nothing is prefetched
+        backend.endRequest();
+        members(backend);
+        assertEquals(8, fetchCount());
+    }
+
+    @Test
+    public void testThresholdAndProperties() {
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "", 6, 4, 5000L);
+        backend.startRequest();
+        members(backend);
+        assertEquals(1, fetchCount());
+        backend.shutdown();
+
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "http://www.w3.org/ns/ldp#contains", 2, 4, 5000L);
+        backend.startRequest();
+        members(backend);
+        assertEquals(2, fetchCount());
+        backend.shutdown();
+
+        // no threads: prefetching is disabled
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "", 2, 0, 5000L);
+        backend.startRequest();
+        members(backend);
+        assertEquals(3, fetchCount());
+    }
+
+    @Test
+    public void testTimeout() {
+        memberDelay = 2000L;
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "", 2, 4, 100L);
+        backend.startRequest();
+        final long start = System.currentTimeMillis();
+        assertEquals(5, members(backend).size());
+        assertTrue(System.currentTimeMillis() - start < 1500L);
+    }
+
+    @Test
+    public void testCallerRuns() {
+        // with a single thread, the queue holds 100 fetches; beyond that the caller fetches the resources itself
+        memberDelay = 20L;
+        backend = new PrefetchingLDCacheBackend(ldcache(150), "", 2, 1, 60000L);
+        backend.startRequest();
+        final Collection<Value> members = members(backend);
+        assertTrue(callerFetches.get() > 1);
+        assertEquals(151, fetchCount());
+
+        for (final Value member : members) {
+            backend.listObjects(member, TITLE);
+        }
+        assertEquals(151, fetchCount());
+    }
+
+    @Test
+    public void testWrapperScopesRequests() throws Exception {
+        backend = new PrefetchingLDCacheBackend(ldcache(5), "", 2, 4, 5000L);
+        final LDPathWrapper ldpath = new LDPathWrapper(backend);
+        final String program = "title = <" + HAS_MEMBER + "> / <" + TITLE + "> :: xsd:string ;";
+
+        // the members are prefetched and their titles answered from them
+        final List<Map<String, Collection<?>>> results = ldpath.programQuery(COLLECTION.stringValue(),
+                new ByteArrayInputStream(program.getBytes(UTF_8)));
+        assertEquals(5, results.get(0).get("title").size());
+        assertEquals(6, fetchCount());
+
+        // the request has ended: nothing is prefetched and the members are retrieved again
+        members(backend);
+        backend.listObjects(new URIImpl(BASE + "member0"), TITLE);
+        assertEquals(8, fetchCount());
+    }
+}
@@ -23,6 +23,7 @@ import static org.apache.camel.Exchange.HTTP_URI;
 import static org.apache.camel.util.ObjectHelper.loadResourceAsStream;
 import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import java.io.File;
+import java.util.Date;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.List;
@@ -39,7 +40,11 @@ import org.apache.camel.test.blueprint.CamelBlueprintTestSupport;
 import org.apache.camel.util.KeyValueHolder;
 import org.apache.marmotta.ldcache.api.LDCachingBackend;
 import org.apache.marmotta.ldcache.backend.file.LDCachingFileBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
 import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.URIImpl;
 import org.openrdf.repository.RepositoryException;
 
 /**
@@ -58,6 +63,8 @@ public class RouteTest extends CamelBlueprintTestSupport {
     @Produce(uri = "direct:start")
     protected ProducerTemplate template;
 
+    private LDCachingBackend backend;
+
     @Override
     public boolean isUseAdviceWith() {
         return true;
@@ -79,7 +86,6 @@ public class RouteTest extends CamelBlueprintTestSupport {
         final String cacheDir = System.getProperty("project.build.directory", "target") +
                 "/ldcache-" + randomAlphabetic(5);
 
-        final LDCachingBackend backend;
         try {
             backend = new LDCachingFileBackend(new File(cacheDir));
             backend.initialize();
@@ -96,6 +102,8 @@ public class RouteTest extends CamelBlueprintTestSupport {
 
         final Properties props = new Properties();
         props.put("rest.port", restPort);
+        props.put("ldcache.invalidation.enabled", "true");
+        props.put("ldcache.warmup.enabled", "true");
         return props;
     }
 
@@ -214,4 +222,54 @@ public class RouteTest extends CamelBlueprintTestSupport {
         assertTrue(data.get(0).get("id").contains(uri));
 
     }
+
+    @Test
+    public void testCacheInvalidation() throws Exception {
+        final URI resource = new URIImpl("http://localhost/rest/path/to/resource");
+        final URI description = new URIImpl("http://localhost/rest/path/to/resource/fcr:metadata");
+        final URI other = new URIImpl("http://localhost/rest/path/to/other");
+
+        backend.putEntry(resource, entry(resource));
+        backend.putEntry(description, entry(description));
+        backend.putEntry(other, entry(other));
+
+        context.start();
+
+        template.sendBody("direct:fedora", loadResourceAsStream("event.json"));
+
+        assertNull(backend.getEntry(resource));
+        assertNull(backend.getEntry(description));
+        assertNotNull(backend.getEntry(other));
+    }
+
+    @Test
+    public void testCacheWarmup() throws Exception {
+        final URI resource = new URIImpl("http://fedora.info/definitions/v4/repository#Binary");
+        assertNull(backend.getEntry(resource));
+
+        context.start();
+
+        template.sendBody("direct:warmup", resource.stringValue() + "\nnot-a-uri\n" +
+                "http://localhost:8080/fcrepo/rest/foo\n");
+
+        for (int i = 0; i < 100 && backend.getEntry(resource) == null; ++i) {
+            Thread.sleep(100L);
+        }
+        assertNotNull(backend.getEntry(resource));
+
+        // repository resources are not cached (fcrepo.cache.timeout=0), so they are not warmed
+        final CacheWarmer warmer = context.getRegistry().lookupByNameAndType("ldcacheWarmer", CacheWarmer.class);
+        assertEquals(1L, warmer.getSkippedCount());
+    }
+
+    private static CacheEntry entry(final URI resource) {
+        final CacheEntry entry = new CacheEntry();
+        entry.setResource(resource);
+        entry.setLastRetrieved(new Date());
+        entry.setExpiryDate(new Date(System.currentTimeMillis() + 60000L));
+        entry.setUpdateCount(1);
+        entry.setTripleCount(0);
+        entry.setTriples(new LinkedHashModel());
+        return entry;
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldpath;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test the request collapsing.
+ *
+ * @author agent
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsCollapse() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "value";
+            })));
+            assertTrue(started.await(5, SECONDS));
+
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                })));
+            }
+            while (singleFlight.getCollapsedCount() < 3) {
+                Thread.sleep(10L);
+            }
+            release.countDown();
+
+            for (final Future<String> result : results) {
+                assertEquals("value", result.get(5, SECONDS));
+            }
+            assertEquals(1, calls.get());
+            assertEquals(1L, singleFlight.getExecutedCount());
+            assertEquals(3L, singleFlight.getCollapsedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSequentialCallsAreNotShared() {
+        final SingleFlight<String> singleFlight = new SingleFlight<>();
+        assertEquals("one", singleFlight.execute("key", () -> "one"));
+        assertEquals("two", singleFlight.execute("key", () -> "two"));
+        assertEquals(2L, singleFlight.getExecutedCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailureIsPropagated() {
+        new SingleFlight<String>().execute("key", () -> {
+            throw new IllegalStateException("expected");
+        });
+    }
+}
@@ -28,6 +28,7 @@ import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_PORT;
 import static org.fcrepo.camel.reindexing.ReindexingHeaders.REINDEXING_PREFIX;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_BASE_URL;
 import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.threads.VirtualThreads.onVirtualThreads;
 import static org.fcrepo.client.HttpMethods.GET;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -52,12 +53,20 @@ public class ReindexingRouter extends RouteBuilder {
     @PropertyInject(value = "rest.host", defaultValue = "localhost")
     private String host;
 
+    @PropertyInject(value = "virtual.threads.enabled", defaultValue = "false")
+    private String virtualThreads;
+
+    @PropertyInject(value = "virtual.threads.maxConcurrency", defaultValue = "50")
+    private String virtualThreadsMaxConcurrency;
+
     /**
      * Configure the message route workflow.
      */
     public void configure() throws Exception {
 
         final String hostname = host.startsWith("http") ? host : "http://" + host;
+        final boolean virtual = Boolean.parseBoolean(virtualThreads);
+        final int maxConcurrency = Integer.parseInt(virtualThreadsMaxConcurrency);
 
         /**
          * A generic error handler (specific to this RouteBuilder)
@@ -69,9 +78,10 @@ public class ReindexingRouter extends RouteBuilder {
         /**
          * Expose a RESTful endpoint for re-indexing
          */
-        from("jetty:" + hostname + ":" + port + "{{rest.prefix}}?matchOnUriPrefix=true&httpMethodRestrict=GET,POST")
+        onVirtualThreads(from("jetty:" + hostname + ":" + port +
+                "{{rest.prefix}}?matchOnUriPrefix=true&httpMethodRestrict=GET,POST")
             .routeId("FcrepoReindexingRest")
-            .routeDescription("Expose the reindexing endpoint over HTTP")
+            .routeDescription("Expose the reindexing endpoint over HTTP"), virtual, maxConcurrency)
             .setHeader(FCREPO_URI).simple("{{fcrepo.baseUrl}}${headers.CamelHttpPath}")
             .choice()
                 .when(header(HTTP_METHOD).isEqualTo("GET")).to("direct:usage")
@@ -111,7 +121,8 @@ public class ReindexingRouter extends RouteBuilder {
          *  A route that traverses through a fedora heirarchy
          *  indexing nodes, as appropriate.
          */
-        from("{{reindexing.stream}}?asyncConsumer=true").routeId("FcrepoReindexingTraverse")
+        onVirtualThreads(from("{{reindexing.stream}}?asyncConsumer=true").routeId("FcrepoReindexingTraverse"), virtual,
+                maxConcurrency)
             .inOnly("direct:recipients")
             .removeHeaders("CamelHttp*")
             .setHeader(HTTP_METHOD).constant(GET)
@@ -0,0 +1,79 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.reindexing;
+
+import static org.fcrepo.camel.FcrepoHeaders.FCREPO_URI;
+import static org.fcrepo.camel.threads.VirtualThreads.isSupported;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.camel.builder.AdviceWithRouteBuilder;
+import org.apache.camel.util.ObjectHelper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Run the route tests with virtual threads enabled, on JVMs that support them.
+ *
+ * @author agent
+ */
+public class VirtualThreadsRouteTest extends RouteTest {
+
+    @BeforeClass
+    public static void requireVirtualThreads() {
+        assumeTrue(isSupported());
+    }
+
+    @Override
+    protected Properties useOverridePropertiesWithPropertiesComponent() {
+        final Properties props = super.useOverridePropertiesWithPropertiesComponent();
+        props.put("virtual.threads.enabled", "true");
+        return props;
+    }
+
+    @Test
+    public void testTraversalOnVirtualThreads() throws Exception {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        context.getRouteDefinition("FcrepoReindexingTraverse").adviceWith(context, new AdviceWithRouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                replaceFromWith("direct:traverse");
+                mockEndpointsAndSkip("fcrepo:*");
+                mockEndpointsAndSkip("broker:*");
+                mockEndpointsAndSkip("direct:recipients");
+            }
+        });
+        context.start();
+
+        getMockEndpoint("mock:direct:recipients").expectedMessageCount(1);
+        getMockEndpoint("mock:direct:recipients").whenAnyExchangeReceived(exchange ->
+                threads.add(Thread.currentThread()));
+
+        template.sendBodyAndHeader("direct:traverse", ObjectHelper.loadResourceAsStream("indexable.nt"),
+                FCREPO_URI, "http://localhost:8080/fcrepo4/rest/foo");
+
+        assertMockEndpointsSatisfied();
+        assertEquals(1, threads.size());
+        assertNotSame(Thread.currentThread(), threads.get(0));
+        assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(threads.get(0)));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.memory;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+
+/**
+ * An LDCache backend that holds cached resources in memory.
+ *
+ * The cache is bounded either by the number of resources (maxEntries) or,
+ * if maxTriples is greater than zero, by the total number of cached triples.
+ * Entries are evicted in least-recently-used order within each cache segment.
+ * Regardless of the expiry date that the LDCache assigns to an entry, no
+ * entry is retained for longer than the configured timeout.
+ *
+ * @author agent
+ */
+public class LDCachingMemoryBackend implements LDCachingBackend, LDCachingMemoryBackendMBean {
+
+    private static final Logger LOGGER = getLogger(LDCachingMemoryBackend.class);
+
+    private final long maxEntries;
+
+    private final long maxTriples;
+
+    private final long timeout;
+
+    private Cache<String, CacheEntry> cache;
+
+    /**
+     * Create an in-memory LDCache backend bounded by the number of cached resources.
+     *
+     * @param maxEntries the maximum number of cached resources
+     */
+    public LDCachingMemoryBackend(final long maxEntries) {
+        this(maxEntries, 0L, 0L);
+    }
+
+    /**
+     * Create an in-memory LDCache backend.
+     *
+     * @param maxEntries the maximum number of cached resources, used when maxTriples is not positive
+     * @param maxTriples the maximum number of cached triples; if positive, this takes precedence over maxEntries
+     * @param timeout the maximum length of time (in seconds) to hold any entry; zero or less means no limit
+     */
+    public LDCachingMemoryBackend(final long maxEntries, final long maxTriples, final long timeout) {
+        this.maxEntries = maxEntries;
+        this.maxTriples = maxTriples;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public CacheEntry getEntry(final URI resource) {
+        return cache.getIfPresent(resource.stringValue());
+    }
+
+    @Override
+    public void putEntry(final URI resource, final CacheEntry entry) {
+        cache.put(resource.stringValue(), entry);
+    }
+
+    /**
+     * Add an entry to the cache only if no entry is currently cached for the resource.
+     *
+     * @param resource the resource
+     * @param entry the cache entry
+     * @return true if the entry was added
+     */
+    public boolean putEntryIfAbsent(final URI resource, final CacheEntry entry) {
+        return cache.asMap().putIfAbsent(resource.stringValue(), entry) == null;
+    }
+
+    @Override
+    public void removeEntry(final URI resource) {
+        cache.invalidate(resource.stringValue());
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void initialize() {
+        final RemovalListener<String, CacheEntry> listener = this::onRemoval;
+        final CacheBuilder<String, CacheEntry> builder = CacheBuilder.newBuilder()
+                .recordStats()
+                .removalListener(listener);
+
+        if (maxTriples > 0) {
+            final Weigher<String, CacheEntry> weigher = (key, entry) -> weigh(entry);
+            builder.maximumWeight(maxTriples).weigher(weigher);
+        } else {
+            builder.maximumSize(maxEntries);
+        }
+
+        if (timeout > 0) {
+            builder.expireAfterWrite(timeout, SECONDS);
+        }
+
+        cache = builder.build();
+        LOGGER.info("Initialized in-memory LDCache backend (maxEntries: {}, maxTriples: {}, timeout: {}s)",
+                maxEntries, maxTriples, timeout);
+    }
+
+    @Override
+    public void shutdown() {
+        if (cache != null) {
+            cache.invalidateAll();
+            cache.cleanUp();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /*
+     * Every entry weighs at least one unit so that empty (e.g. failed) lookups are also bounded.
+     */
+    private static int weigh(final CacheEntry entry) {
+        return entry.getTriples() == null ? 1 : 1 + entry.getTriples().size();
+    }
+
+    private void onRemoval(final RemovalNotification<String, CacheEntry> notification) {
+        if (notification.wasEvicted()) {
+            LOGGER.debug("Evicted {} from LDCache ({})", notification.getKey(), notification.getCause());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.memory;
+
+/**
+ * Management interface for the in-memory LDCache backend.
+ *
+ * @author agent
+ */
+public interface LDCachingMemoryBackendMBean {
+
+    /**
+     * @return the number of cached resources
+     */
+    long getSize();
+
+    /**
+     * @return the number of lookups that found a cached resource
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups that did not find a cached resource
+     */
+    long getMissCount();
+
+    /**
+     * @return the ratio of hits to lookups
+     */
+    double getHitRate();
+
+    /**
+     * @return the number of resources removed to satisfy the size or weight bounds
+     */
+    long getEvictionCount();
+
+    /**
+     * Remove all cached resources.
+     */
+    void clear();
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Date;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * Test the in-memory LDCache backend.
+ *
+ * @author agent
+ */
+public class LDCachingMemoryBackendTest {
+
+    private static final URI LABEL = new URIImpl("http://www.w3.org/2000/01/rdf-schema#label");
+
+    @Test
+    public void testPutGetRemove() {
+        final LDCachingMemoryBackend backend = new LDCachingMemoryBackend(10);
+        backend.initialize();
+
+        final URI resource = new URIImpl("http://example.org/resource");
+        assertNull(backend.getEntry(resource));
+
+        backend.putEntry(resource, entry(resource, 2));
+        assertNotNull(backend.getEntry(resource));
+        assertEquals(2, backend.getEntry(new URIImpl("http://example.org/resource")).getTriples().size());
+        assertEquals(1L, backend.getSize());
+
+        backend.removeEntry(resource);
+        assertNull(backend.getEntry(resource));
+
+        backend.putEntry(resource, entry(resource, 1));
+        backend.clear();
+        assertEquals(0L, backend.getSize());
+        backend.shutdown();
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        final LDCachingMemoryBackend backend = new LDCachingMemoryBackend(2);
+        backend.initialize();
+
+        final URI first = new URIImpl("http://example.org/1");
+        final URI second = new URIImpl("http://example.org/2");
+        final URI third = new URIImpl("http://example.org/3");
+
+        backend.putEntry(first, entry(first, 1));
+        backend.putEntry(second, entry(second, 1));
+        // touch the first entry so that the second one is the least recently used
+        assertNotNull(backend.getEntry(first));
+        backend.putEntry(third, entry(third, 1));
+
+        assertEquals(2L, backend.getSize());
+        assertNotNull(backend.getEntry(first));
+        assertNull(backend.getEntry(second));
+        assertNotNull(backend.getEntry(third));
+        assertEquals(1L, backend.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictionByWeight() {
+        final LDCachingMemoryBackend backend = new LDCachingMemoryBackend(100, 10, 0);
+        backend.initialize();
+
+        final URI first = new URIImpl("http://example.org/1");
+        final URI second = new URIImpl("http://example.org/2");
+
+        backend.putEntry(first, entry(first, 5));
+        backend.putEntry(second, entry(second, 5));
+
+        assertEquals(1L, backend.getSize());
+        assertNull(backend.getEntry(first));
+        assertNotNull(backend.getEntry(second));
+    }
+
+    @Test
+    public void testStatistics() {
+        final LDCachingMemoryBackend backend = new LDCachingMemoryBackend(10);
+        backend.initialize();
+
+        final URI resource = new URIImpl("http://example.org/resource");
+        backend.getEntry(resource);
+        backend.putEntry(resource, entry(resource, 1));
+        backend.getEntry(resource);
+
+        assertEquals(1L, backend.getHitCount());
+        assertEquals(1L, backend.getMissCount());
+        assertEquals(0.5, backend.getHitRate(), 0.001);
+    }
+
+    private static CacheEntry entry(final URI resource, final int size) {
+        final Model model = new LinkedHashModel();
+        for (int i = 0; i < size; i++) {
+            model.add(resource, LABEL, new LiteralImpl("label " + i));
+        }
+        final CacheEntry entry = new CacheEntry();
+        entry.setResource(resource);
+        entry.setLastRetrieved(new Date());
+        entry.setExpiryDate(new Date(System.currentTimeMillis() + 60000L));
+        entry.setTriples(model);
+        return entry;
+    }
+}
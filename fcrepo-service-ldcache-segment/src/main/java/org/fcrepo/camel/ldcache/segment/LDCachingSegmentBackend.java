@@ -0,0 +1,437 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.segment;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.camel.ldcache.segment.Records.HEADER_SIZE;
+import static org.fcrepo.camel.ldcache.segment.Records.PUT;
+import static org.fcrepo.camel.ldcache.segment.Records.REMOVE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.fcrepo.camel.ldcache.segment.Records.Record;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+
+/**
+ * An LDCache backend that stores cache entries in an append-only log of memory-mapped segment files.
+ *
+ * <p>Every update (a new entry or a removal) is appended to the current segment, and an
+ * in-memory index maps each resource to the location of its current entry, so a lookup
+ * reads a single record without any directory traversal. When a segment is full, a new
+ * one is started.</p>
+ *
+ * <p>Superseded records are reclaimed by compaction, which runs periodically: segments in
+ * which the proportion of current data has fallen below the threshold have their current
+ * records copied to the end of the log, and are then deleted.</p>
+ *
+ * <p>At startup the index is rebuilt by reading the segments in order. Each record carries
+ * a checksum, so a record that was only partly written when the process stopped is
+ * detected and discarded, along with anything after it in that segment.</p>
+ *
+ * @author agent
+ */
+public class LDCachingSegmentBackend implements LDCachingBackend, LDCachingSegmentBackendMBean {
+
+    private static final Logger LOGGER = getLogger(LDCachingSegmentBackend.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("^ldcache-(\\d{10})\\.segment$");
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final double compactionThreshold;
+
+    private final long compactionInterval;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    private final Map<String, Location> index = new HashMap<>();
+
+    private final AtomicLong compactions = new AtomicLong();
+
+    private Segment active;
+
+    private ScheduledExecutorService compactor;
+
+    /*
+     * The location of the current record for a resource.
+     */
+    private static final class Location {
+
+        final Segment segment;
+
+        final int offset;
+
+        final int length;
+
+        Location(final Segment segment, final int offset, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Create a segment log LDCache backend.
+     *
+     * @param directory the directory holding the segment files
+     * @param segmentSize the size (in bytes) of each segment file
+     * @param compactionThreshold the proportion of current data below which a segment is compacted
+     * @param compactionInterval the interval (in seconds) between compactions; zero or less disables
+     *        scheduled compaction
+     */
+    public LDCachingSegmentBackend(final File directory, final int segmentSize, final double compactionThreshold,
+            final long compactionInterval) {
+        this.directory = Objects.requireNonNull(directory);
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.compactionInterval = compactionInterval;
+    }
+
+    @Override
+    public CacheEntry getEntry(final URI resource) {
+        final byte[] payload;
+        lock.readLock().lock();
+        try {
+            final Location location = index.get(resource.stringValue());
+            if (location == null) {
+                return null;
+            }
+            payload = location.segment.read(location.offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (payload == null) {
+            LOGGER.warn("Could not read the cached entry for {}", resource);
+            return null;
+        }
+        try {
+            return Records.decode(payload, true).entry;
+        } catch (final IOException ex) {
+            LOGGER.warn("Could not decode the cached entry for {}: {}", resource, ex.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void putEntry(final URI resource, final CacheEntry entry) {
+        final ByteBuffer record = Records.put(resource, entry);
+        lock.writeLock().lock();
+        try {
+            update(resource.stringValue(), append(record));
+        } catch (final IOException ex) {
+            LOGGER.warn("Could not cache {}: {}", resource, ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeEntry(final URI resource) {
+        final String key = resource.stringValue();
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(key)) {
+                append(Records.remove(resource));
+                update(key, null);
+            }
+        } catch (final IOException ex) {
+            LOGGER.warn("Could not remove {} from the cache: {}", resource, ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            final long next = segments.isEmpty() ? 1L : segments.lastKey() + 1L;
+            for (final Segment segment : segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+            index.clear();
+            active = createSegment(next, segmentSize);
+        } catch (final IOException ex) {
+            LOGGER.warn("Could not clear the LDCache: {}", ex.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void initialize() {
+        lock.writeLock().lock();
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IllegalStateException("Could not create the LDCache directory " + directory);
+            }
+            recover();
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Could not open the LDCache in " + directory, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (compactionInterval > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "LDCache compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, SECONDS);
+        }
+        LOGGER.info("Initialized segment log LDCache backend in {} ({} resources in {} segments)",
+                directory, getSize(), getSegmentCount());
+    }
+
+    @Override
+    public void shutdown() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            if (active != null) {
+                active.force();
+            }
+            segments.clear();
+            index.clear();
+            active = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getDiskUsage() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(Segment::getCapacity).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.values().stream().mapToLong(Segment::getLiveBytes).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    @Override
+    public synchronized void compact() {
+        final List<Segment> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (final Segment segment : segments.values()) {
+                if (segment != active && (segment.getLiveBytes() == 0 ||
+                        segment.getLiveBytes() < compactionThreshold * segment.getPosition())) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (final Segment segment : candidates) {
+            try {
+                if (!compact(segment)) {
+                    return;
+                }
+                compactions.incrementAndGet();
+            } catch (final IOException ex) {
+                LOGGER.warn("Could not compact LDCache segment {}: {}", segment.getFile(), ex.getMessage());
+                return;
+            }
+        }
+    }
+
+    /*
+     * Copy the current records of a full segment to the end of the log and delete the segment.
+     * Removals are also copied, unless no older segment remains that could hold an entry they supersede.
+     */
+    private boolean compact(final Segment segment) throws IOException {
+        LOGGER.debug("Compacting LDCache segment {}", segment.getFile());
+        int offset = 0;
+        while (offset < segment.getPosition()) {
+            // full segments are not modified, so they can be read without holding the lock
+            final byte[] payload = segment.read(offset);
+            if (payload == null) {
+                break;
+            }
+            final Record record = Records.decode(payload, false);
+            final int length = HEADER_SIZE + payload.length;
+
+            lock.writeLock().lock();
+            try {
+                if (segments.get(segment.getId()) != segment) {
+                    // the cache was cleared
+                    return false;
+                }
+                final Location location = index.get(record.key);
+                if (record.type == PUT && location != null && location.segment == segment
+                        && location.offset == offset) {
+                    update(record.key, append(segment.copy(offset)));
+                } else if (record.type == REMOVE && location == null && segments.firstKey() != segment.getId()) {
+                    append(segment.copy(offset));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            offset += length;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (segments.get(segment.getId()) != segment) {
+                return false;
+            }
+            // the copied records must be durable before the originals are removed
+            active.force();
+            segments.remove(segment.getId());
+            segment.delete();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Rebuild the index from the segment files. The caller must hold the write lock.
+     */
+    private void recover() throws IOException {
+        final TreeMap<Long, File> files = new TreeMap<>();
+        final File[] listing = directory.listFiles();
+        if (listing != null) {
+            for (final File file : listing) {
+                final Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+
+        for (final Map.Entry<Long, File> file : files.entrySet()) {
+            final Segment segment = Segment.open(file.getKey(), file.getValue(), (seg, offset, payload) -> {
+                try {
+                    final Record record = Records.decode(payload, false);
+                    update(record.key, record.type == PUT ?
+                            new Location(seg, offset, HEADER_SIZE + payload.length) : null);
+                } catch (final IOException ex) {
+                    LOGGER.warn("Skipping unreadable record in {}: {}", seg.getFile(), ex.getMessage());
+                }
+            });
+            segments.put(segment.getId(), segment);
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(1L, segmentSize);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /*
+     * Append a record to the log, starting a new segment if necessary. The caller must hold the write lock.
+     */
+    private Location append(final ByteBuffer record) throws IOException {
+        final int length = record.remaining();
+        int offset = active.append(record);
+        if (offset < 0) {
+            active.force();
+            // a record larger than the segment size is given a segment of its own
+            active = createSegment(segments.lastKey() + 1L, Math.max(segmentSize, length));
+            offset = active.append(record);
+        }
+        return new Location(active, offset, length);
+    }
+
+    /*
+     * Point the index at a new location for a resource, or remove it. The caller must hold the write lock.
+     */
+    private void update(final String key, final Location location) {
+        final Location previous = location == null ? index.remove(key) : index.put(key, location);
+        if (previous != null) {
+            previous.segment.addLiveBytes(-previous.length);
+        }
+        if (location != null) {
+            location.segment.addLiveBytes(location.length);
+        }
+    }
+
+    private Segment createSegment(final long id, final int capacity) throws IOException {
+        final File file = new File(directory, String.format("ldcache-%010d.segment", id));
+        final Segment segment = Segment.create(id, file, capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+}
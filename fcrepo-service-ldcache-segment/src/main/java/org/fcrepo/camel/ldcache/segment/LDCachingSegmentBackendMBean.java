@@ -0,0 +1,61 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.segment;
+
+/**
+ * Management interface for the segment log LDCache backend.
+ *
+ * @author agent
+ */
+public interface LDCachingSegmentBackendMBean {
+
+    /**
+     * @return the number of cached resources
+     */
+    long getSize();
+
+    /**
+     * @return the number of segment files
+     */
+    int getSegmentCount();
+
+    /**
+     * @return the total size (in bytes) of the segment files
+     */
+    long getDiskUsage();
+
+    /**
+     * @return the number of bytes used by current cache entries
+     */
+    long getLiveBytes();
+
+    /**
+     * @return the number of segments that have been compacted
+     */
+    long getCompactionCount();
+
+    /**
+     * Compact the segments with the least live data now, rather than waiting for the next scheduled compaction.
+     */
+    void compact();
+
+    /**
+     * Remove all cached resources.
+     */
+    void clear();
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.segment;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * The encoding of the records in a segment log.
+ *
+ * <p>Each record consists of a header, holding the length of the payload and its CRC32
+ * checksum, followed by the payload. The payload holds the record type, the resource URI
+ * and, for a cache entry, the entry metadata and its statements. A zero length marks the
+ * end of the records in a segment.</p>
+ *
+ * @author agent
+ */
+final class Records {
+
+    static final int HEADER_SIZE = 8;
+
+    static final byte PUT = 1;
+
+    static final byte REMOVE = 2;
+
+    private static final byte NONE = 0;
+    private static final byte IRI = 1;
+    private static final byte BLANK = 2;
+    private static final byte PLAIN_LITERAL = 3;
+    private static final byte LANGUAGE_LITERAL = 4;
+    private static final byte TYPED_LITERAL = 5;
+
+    private static final ValueFactory FACTORY = ValueFactoryImpl.getInstance();
+
+    /**
+     * A decoded record.
+     */
+    static class Record {
+
+        final byte type;
+
+        final String key;
+
+        final CacheEntry entry;
+
+        Record(final byte type, final String key, final CacheEntry entry) {
+            this.type = type;
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Encode a cache entry.
+     *
+     * @param resource the resource
+     * @param entry the cache entry
+     * @return the record, including its header
+     */
+    static ByteBuffer put(final URI resource, final CacheEntry entry) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PUT);
+            writeString(out, resource.stringValue());
+            out.writeLong(time(entry.getLastRetrieved()));
+            out.writeLong(time(entry.getExpiryDate()));
+            out.writeInt(entry.getUpdateCount() == null ? 0 : entry.getUpdateCount());
+            final Model triples = entry.getTriples();
+            out.writeInt(triples == null ? -1 : triples.size());
+            if (triples != null) {
+                for (final Statement statement : triples) {
+                    writeValue(out, statement.getSubject());
+                    writeValue(out, statement.getPredicate());
+                    writeValue(out, statement.getObject());
+                    writeValue(out, statement.getContext());
+                }
+            }
+            out.flush();
+            return frame(bytes.toByteArray());
+        } catch (final IOException ex) {
+            // writing to a byte array does not fail
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Encode the removal of a cache entry.
+     *
+     * @param resource the resource
+     * @return the record, including its header
+     */
+    static ByteBuffer remove(final URI resource) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REMOVE);
+            writeString(out, resource.stringValue());
+            out.flush();
+            return frame(bytes.toByteArray());
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Decode the payload of a record.
+     *
+     * @param payload the payload, without its header
+     * @param withEntry whether to decode the cache entry, or only the record type and key
+     * @return the record
+     * @throws IOException if the payload is malformed
+     */
+    static Record decode(final byte[] payload, final boolean withEntry) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte type = in.readByte();
+        final String key = readString(in);
+        if (type == REMOVE || !withEntry) {
+            return new Record(type, key, null);
+        } else if (type != PUT) {
+            throw new IOException("Unknown record type: " + type);
+        }
+
+        final CacheEntry entry = new CacheEntry();
+        entry.setResource(FACTORY.createURI(key));
+        entry.setLastRetrieved(date(in.readLong()));
+        entry.setExpiryDate(date(in.readLong()));
+        entry.setUpdateCount(in.readInt());
+        final int size = in.readInt();
+        if (size >= 0) {
+            final Model triples = new LinkedHashModel(size);
+            for (int i = 0; i < size; ++i) {
+                final Resource subject = (Resource) readValue(in);
+                final URI predicate = (URI) readValue(in);
+                final Value object = readValue(in);
+                final Resource context = (Resource) readValue(in);
+                if (context == null) {
+                    triples.add(subject, predicate, object);
+                } else {
+                    triples.add(subject, predicate, object, context);
+                }
+            }
+            entry.setTriples(triples);
+        }
+        return new Record(type, key, entry);
+    }
+
+    /**
+     * Compute the checksum of a payload.
+     *
+     * @param payload the payload
+     * @param offset the offset of the payload in the array
+     * @param length the length of the payload
+     * @return the checksum
+     */
+    static int checksum(final byte[] payload, final int offset, final int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer frame(final byte[] payload) {
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload, 0, payload.length));
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    private static void writeValue(final DataOutputStream out, final Value value) throws IOException {
+        if (value == null) {
+            out.writeByte(NONE);
+        } else if (value instanceof URI) {
+            out.writeByte(IRI);
+            writeString(out, value.stringValue());
+        } else if (value instanceof BNode) {
+            out.writeByte(BLANK);
+            writeString(out, ((BNode) value).getID());
+        } else {
+            final Literal literal = (Literal) value;
+            if (literal.getLanguage() != null) {
+                out.writeByte(LANGUAGE_LITERAL);
+                writeString(out, literal.getLabel());
+                writeString(out, literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                out.writeByte(TYPED_LITERAL);
+                writeString(out, literal.getLabel());
+                writeString(out, literal.getDatatype().stringValue());
+            } else {
+                out.writeByte(PLAIN_LITERAL);
+                writeString(out, literal.getLabel());
+            }
+        }
+    }
+
+    private static Value readValue(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case NONE:
+                return null;
+            case IRI:
+                return FACTORY.createURI(readString(in));
+            case BLANK:
+                return FACTORY.createBNode(readString(in));
+            case PLAIN_LITERAL:
+                return FACTORY.createLiteral(readString(in));
+            case LANGUAGE_LITERAL:
+                return FACTORY.createLiteral(readString(in), readString(in));
+            case TYPED_LITERAL:
+                return FACTORY.createLiteral(readString(in), FACTORY.createURI(readString(in)));
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    /*
+     * Strings are length-prefixed UTF-8, since DataOutput.writeUTF is limited to 64KB.
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static long time(final Date date) {
+        return date == null ? Long.MIN_VALUE : date.getTime();
+    }
+
+    private static Date date(final long time) {
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+    private Records() {
+        // prevent instantiation
+    }
+}
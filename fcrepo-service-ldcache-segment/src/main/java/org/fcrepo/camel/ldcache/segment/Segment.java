@@ -0,0 +1,231 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.segment;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.fcrepo.camel.ldcache.segment.Records.HEADER_SIZE;
+import static org.fcrepo.camel.ldcache.segment.Records.checksum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * A single, memory-mapped file of the segment log.
+ *
+ * <p>The file is allocated at its full capacity when it is created, and records are
+ * appended to the mapped region until it is full. Unused space is zero-filled, so the
+ * end of the records is found by reading up to the first zero length, or the first
+ * record whose checksum does not match (i.e. one that was only partly written).</p>
+ *
+ * <p>Appends must be serialized by the caller; reads may happen concurrently.</p>
+ *
+ * @author agent
+ */
+class Segment {
+
+    private final long id;
+
+    private final File file;
+
+    private final MappedByteBuffer buffer;
+
+    private int position;
+
+    private int liveBytes;
+
+    /**
+     * A callback for the records found when a segment is opened.
+     */
+    interface RecordHandler {
+
+        /**
+         * @param segment the segment
+         * @param offset the offset of the record within the segment
+         * @param payload the payload of the record
+         * @throws IOException if the record cannot be processed
+         */
+        void handle(Segment segment, int offset, byte[] payload) throws IOException;
+    }
+
+    private Segment(final long id, final File file, final MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create a new, empty segment.
+     *
+     * @param id the segment id
+     * @param file the segment file, which must not exist
+     * @param capacity the size of the segment file
+     * @return the segment
+     * @throws IOException if the segment cannot be created
+     */
+    static Segment create(final long id, final File file, final int capacity) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), CREATE, READ, WRITE)) {
+            return new Segment(id, file, channel.map(READ_WRITE, 0, capacity));
+        }
+    }
+
+    /**
+     * Open an existing segment, passing each intact record to a handler. Anything after
+     * the last intact record, such as a partly written record, is discarded.
+     *
+     * @param id the segment id
+     * @param file the segment file
+     * @param handler the record handler
+     * @return the segment
+     * @throws IOException if the segment cannot be read
+     */
+    static Segment open(final long id, final File file, final RecordHandler handler) throws IOException {
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file.toPath(), READ, WRITE)) {
+            buffer = channel.map(READ_WRITE, 0, channel.size());
+        }
+        final Segment segment = new Segment(id, file, buffer);
+        int offset = 0;
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            final byte[] payload = segment.read(offset);
+            if (payload == null) {
+                break;
+            }
+            handler.handle(segment, offset, payload);
+            offset += HEADER_SIZE + payload.length;
+        }
+        segment.position = offset;
+
+        // clear any partly written record, so that it cannot be mistaken for a later one
+        for (int i = offset; i < buffer.capacity(); ++i) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Append a record.
+     *
+     * @param record the record, including its header
+     * @return the offset of the record, or -1 if the segment does not have room for it
+     */
+    int append(final ByteBuffer record) {
+        final int length = record.remaining();
+        if (position + length > buffer.capacity()) {
+            return -1;
+        }
+        final ByteBuffer target = buffer.duplicate();
+        target.position(position);
+        target.put(record.duplicate());
+        final int offset = position;
+        position += length;
+        return offset;
+    }
+
+    /**
+     * Read the payload of a record.
+     *
+     * @param offset the offset of the record
+     * @return the payload, or null if there is no intact record at the offset
+     */
+    byte[] read(final int offset) {
+        final ByteBuffer source = buffer.duplicate();
+        if (offset < 0 || offset + HEADER_SIZE > source.capacity()) {
+            return null;
+        }
+        source.position(offset);
+        final int length = source.getInt();
+        final int crc = source.getInt();
+        if (length <= 0 || length > source.remaining()) {
+            return null;
+        }
+        final byte[] payload = new byte[length];
+        source.get(payload);
+        return checksum(payload, 0, length) == crc ? payload : null;
+    }
+
+    /**
+     * Copy a complete record, including its header.
+     *
+     * @param offset the offset of the record
+     * @return the record, or null if there is no intact record at the offset
+     */
+    ByteBuffer copy(final int offset) {
+        final byte[] payload = read(offset);
+        if (payload == null) {
+            return null;
+        }
+        final ByteBuffer source = buffer.duplicate();
+        source.position(offset).limit(offset + HEADER_SIZE + payload.length);
+        final ByteBuffer record = ByteBuffer.allocate(source.remaining());
+        record.put(source);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Write any changes to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Delete the segment file. The segment must not be used afterwards.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    long getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the number of bytes used by records that are still current; maintained by the caller
+     */
+    int getLiveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(final int bytes) {
+        liveBytes += bytes;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.segment;
+
+import static org.fcrepo.camel.ldcache.segment.Records.HEADER_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * Test the segment log LDCache backend.
+ *
+ * @author agent
+ */
+public class LDCachingSegmentBackendTest {
+
+    private static final URI RESOURCE = new URIImpl("http://example.org/resource");
+
+    private static final URI OTHER = new URIImpl("http://example.org/other");
+
+    private static final ValueFactory FACTORY = ValueFactoryImpl.getInstance();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    private LDCachingSegmentBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("ldcache");
+        backend = open(4096);
+    }
+
+    @After
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final CacheEntry entry = entry(RESOURCE, "a label");
+        backend.putEntry(RESOURCE, entry);
+
+        final CacheEntry cached = backend.getEntry(RESOURCE);
+        assertNotNull(cached);
+        assertEquals(RESOURCE, cached.getResource());
+        assertEquals(entry.getExpiryDate(), cached.getExpiryDate());
+        assertEquals(entry.getLastRetrieved(), cached.getLastRetrieved());
+        assertEquals(entry.getTriples(), cached.getTriples());
+        assertNull(backend.getEntry(OTHER));
+        assertEquals(1L, backend.getSize());
+    }
+
+    @Test
+    public void testRecovery() {
+        backend.putEntry(RESOURCE, entry(RESOURCE, "first"));
+        backend.putEntry(OTHER, entry(OTHER, "other"));
+        backend.putEntry(RESOURCE, entry(RESOURCE, "second"));
+        backend.removeEntry(OTHER);
+        backend.shutdown();
+
+        backend = open(4096);
+        assertEquals(1L, backend.getSize());
+        assertEquals(entry(RESOURCE, "second").getTriples(), backend.getEntry(RESOURCE).getTriples());
+        assertNull(backend.getEntry(OTHER));
+    }
+
+    @Test
+    public void testPartialWrite() throws Exception {
+        final CacheEntry first = entry(RESOURCE, "first");
+        backend.putEntry(RESOURCE, first);
+        backend.putEntry(OTHER, entry(OTHER, "other"));
+        backend.shutdown();
+
+        // corrupt the second record, as if the process stopped while it was being written
+        final int offset = Records.put(RESOURCE, first).remaining();
+        try (final RandomAccessFile file = new RandomAccessFile(segmentFile(1L), "rw")) {
+            file.seek(offset + HEADER_SIZE + 2);
+            file.write(0xff);
+        }
+
+        backend = open(4096);
+        assertNotNull(backend.getEntry(RESOURCE));
+        assertNull(backend.getEntry(OTHER));
+
+        // the log continues from the last intact record
+        backend.putEntry(OTHER, entry(OTHER, "replacement"));
+        backend.shutdown();
+        backend = open(4096);
+        assertNotNull(backend.getEntry(RESOURCE));
+        assertEquals(entry(OTHER, "replacement").getTriples(), backend.getEntry(OTHER).getTriples());
+    }
+
+    @Test
+    public void testCompaction() {
+        backend.putEntry(OTHER, entry(OTHER, "other"));
+        for (int i = 0; i < 100; ++i) {
+            backend.putEntry(RESOURCE, entry(RESOURCE, "version " + i));
+        }
+        final int segments = backend.getSegmentCount();
+        assertTrue(segments > 2);
+
+        backend.compact();
+        assertTrue(backend.getSegmentCount() < segments);
+        assertTrue(backend.getCompactionCount() > 0);
+        assertEquals(entry(RESOURCE, "version 99").getTriples(), backend.getEntry(RESOURCE).getTriples());
+        assertEquals(entry(OTHER, "other").getTriples(), backend.getEntry(OTHER).getTriples());
+
+        backend.shutdown();
+        backend = open(4096);
+        assertEquals(2L, backend.getSize());
+        assertEquals(entry(RESOURCE, "version 99").getTriples(), backend.getEntry(RESOURCE).getTriples());
+        assertEquals(entry(OTHER, "other").getTriples(), backend.getEntry(OTHER).getTriples());
+    }
+
+    @Test
+    public void testCompactionKeepsRemovals() {
+        backend.putEntry(OTHER, entry(OTHER, "other"));
+        for (int i = 0; i < 50; ++i) {
+            backend.putEntry(RESOURCE, entry(RESOURCE, "version " + i));
+        }
+        backend.removeEntry(OTHER);
+        for (int i = 50; i < 100; ++i) {
+            backend.putEntry(RESOURCE, entry(RESOURCE, "version " + i));
+        }
+
+        backend.compact();
+        backend.shutdown();
+        backend = open(4096);
+        assertNull(backend.getEntry(OTHER));
+        assertNotNull(backend.getEntry(RESOURCE));
+    }
+
+    @Test
+    public void testLargeEntry() {
+        final CacheEntry entry = entry(RESOURCE, "large");
+        final Model triples = entry.getTriples();
+        for (int i = 0; i < 200; ++i) {
+            triples.add(RESOURCE, FACTORY.createURI("http://example.org/member"),
+                    FACTORY.createURI("http://example.org/member/" + i));
+        }
+        backend.putEntry(RESOURCE, entry);
+        assertEquals(triples, backend.getEntry(RESOURCE).getTriples());
+
+        backend.shutdown();
+        backend = open(4096);
+        assertEquals(triples, backend.getEntry(RESOURCE).getTriples());
+    }
+
+    @Test
+    public void testClear() {
+        backend.putEntry(RESOURCE, entry(RESOURCE, "label"));
+        backend.clear();
+        assertNull(backend.getEntry(RESOURCE));
+        assertEquals(1, backend.getSegmentCount());
+
+        backend.shutdown();
+        backend = open(4096);
+        assertNull(backend.getEntry(RESOURCE));
+    }
+
+    private LDCachingSegmentBackend open(final int segmentSize) {
+        final LDCachingSegmentBackend segmentBackend = new LDCachingSegmentBackend(directory, segmentSize, 0.5, 0L);
+        segmentBackend.initialize();
+        return segmentBackend;
+    }
+
+    private File segmentFile(final long id) {
+        return new File(directory, String.format("ldcache-%010d.segment", id));
+    }
+
+    private static CacheEntry entry(final URI resource, final String label) {
+        final Model triples = new LinkedHashModel();
+        triples.add(resource, FACTORY.createURI("http://www.w3.org/2000/01/rdf-schema#label"),
+                FACTORY.createLiteral(label, "en"));
+        triples.add(resource, FACTORY.createURI("http://example.org/size"), FACTORY.createLiteral(42));
+        triples.add(resource, FACTORY.createURI("http://example.org/note"), FACTORY.createLiteral(label));
+        triples.add(resource, FACTORY.createURI("http://example.org/part"), FACTORY.createBNode("b1"));
+
+        final CacheEntry entry = new CacheEntry();
+        entry.setResource(resource);
+        entry.setLastRetrieved(new Date(1000L));
+        entry.setExpiryDate(new Date(System.currentTimeMillis() + 60000L));
+        entry.setUpdateCount(1);
+        entry.setTriples(triples);
+        return entry;
+    }
+}
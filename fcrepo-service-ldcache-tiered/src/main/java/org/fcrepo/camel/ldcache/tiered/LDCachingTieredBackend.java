@@ -0,0 +1,289 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.tiered;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.util.concurrent.Striped;
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.fcrepo.camel.ldcache.memory.LDCachingMemoryBackend;
+import org.openrdf.model.URI;
+import org.slf4j.Logger;
+
+/**
+ * An LDCache backend that layers a bounded in-memory cache (L1) over
+ * a persistent cache (L2), such as the file-based LDCache backend.
+ *
+ * <p>Writes go to memory immediately and are copied to the persistent tier by a
+ * single background writer, so the persistent tier always holds a superset of the
+ * memory tier. Entries found only in the persistent tier are promoted into memory
+ * when read. Entries that have already expired when they are written (e.g. Fedora
+ * resources cached with a timeout of zero) are kept in memory only.</p>
+ *
+ * @author agent
+ */
+public class LDCachingTieredBackend implements LDCachingBackend, LDCachingTieredBackendMBean {
+
+    private static final Logger LOGGER = getLogger(LDCachingTieredBackend.class);
+
+    /*
+     * A marker for a pending removal from the persistent tier.
+     */
+    private static final CacheEntry REMOVED = new CacheEntry();
+
+    private static final long SHUTDOWN_TIMEOUT = 30L;
+
+    private final LDCachingMemoryBackend memory;
+
+    private final LDCachingBackend persistent;
+
+    private final int writeQueueSize;
+
+    private final ConcurrentHashMap<String, CacheEntry> pending = new ConcurrentHashMap<>();
+
+    private final Striped<Lock> locks = Striped.lock(256);
+
+    private final AtomicLong l1Hits = new AtomicLong();
+    private final AtomicLong l2Hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong promotions = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    private ThreadPoolExecutor writer;
+
+    /**
+     * Create a two-tier LDCache backend.
+     *
+     * @param memory the in-memory (L1) backend
+     * @param persistent the persistent (L2) backend
+     * @param writeQueueSize the maximum number of writes waiting for the persistent tier;
+     *        when the queue is full, callers block until space is available
+     */
+    public LDCachingTieredBackend(final LDCachingMemoryBackend memory, final LDCachingBackend persistent,
+            final int writeQueueSize) {
+        this.memory = Objects.requireNonNull(memory);
+        this.persistent = Objects.requireNonNull(persistent);
+        this.writeQueueSize = writeQueueSize;
+    }
+
+    @Override
+    public CacheEntry getEntry(final URI resource) {
+        final CacheEntry cached = memory.getEntry(resource);
+        if (cached != null) {
+            l1Hits.incrementAndGet();
+            return cached;
+        }
+
+        final String key = resource.stringValue();
+        final Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            final CacheEntry queued = pending.get(key);
+            if (queued == REMOVED) {
+                misses.incrementAndGet();
+                return null;
+            } else if (queued != null) {
+                l1Hits.incrementAndGet();
+                return queued;
+            }
+
+            final CacheEntry stored = persistent.getEntry(resource);
+            if (stored == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            l2Hits.incrementAndGet();
+            if (!isExpired(stored) && memory.putEntryIfAbsent(resource, stored)) {
+                promotions.incrementAndGet();
+            }
+            return stored;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putEntry(final URI resource, final CacheEntry entry) {
+        final Lock lock = locks.get(resource.stringValue());
+        lock.lock();
+        try {
+            memory.putEntry(resource, entry);
+            // entries that are already stale are not worth persisting, but any older copy on disk must go
+            schedule(resource, isExpired(entry) ? REMOVED : entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeEntry(final URI resource) {
+        final Lock lock = locks.get(resource.stringValue());
+        lock.lock();
+        try {
+            memory.removeEntry(resource);
+            schedule(resource, REMOVED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        pending.clear();
+        memory.clear();
+        try {
+            writer.submit(persistent::clear).get(SHUTDOWN_TIMEOUT, SECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException | TimeoutException ex) {
+            LOGGER.warn("Could not clear the persistent LDCache tier", ex);
+        }
+    }
+
+    @Override
+    public void initialize() {
+        memory.initialize();
+        persistent.initialize();
+        writer = new ThreadPoolExecutor(1, 1, 0L, MILLISECONDS, new ArrayBlockingQueue<>(writeQueueSize),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "LDCache write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> {
+                    // apply back-pressure rather than reordering writes
+                    try {
+                        if (!executor.isShutdown()) {
+                            executor.getQueue().put(runnable);
+                        }
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(ex);
+                    }
+                });
+    }
+
+    @Override
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(SHUTDOWN_TIMEOUT, SECONDS)) {
+                    LOGGER.warn("Discarding {} pending LDCache writes", writer.shutdownNow().size());
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        memory.shutdown();
+        persistent.shutdown();
+    }
+
+    @Override
+    public long getL1HitCount() {
+        return l1Hits.get();
+    }
+
+    @Override
+    public long getL2HitCount() {
+        return l2Hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public double getL1HitRate() {
+        return rate(l1Hits.get());
+    }
+
+    @Override
+    public double getL2HitRate() {
+        return rate(l2Hits.get());
+    }
+
+    @Override
+    public long getPromotionCount() {
+        return promotions.get();
+    }
+
+    @Override
+    public long getWriteBehindCount() {
+        return writes.get();
+    }
+
+    @Override
+    public long getPendingWriteCount() {
+        return pending.size();
+    }
+
+    /*
+     * Queue an update for the persistent tier. The caller must hold the lock for the resource.
+     */
+    private void schedule(final URI resource, final CacheEntry entry) {
+        final String key = resource.stringValue();
+        pending.put(key, entry);
+        writer.execute(() -> flush(resource, entry));
+    }
+
+    private void flush(final URI resource, final CacheEntry entry) {
+        final String key = resource.stringValue();
+        // a newer update for the same resource is queued behind this one
+        if (pending.get(key) != entry) {
+            return;
+        }
+        try {
+            if (entry == REMOVED) {
+                persistent.removeEntry(resource);
+            } else {
+                persistent.putEntry(resource, entry);
+                writes.incrementAndGet();
+            }
+        } catch (final RuntimeException ex) {
+            LOGGER.warn("Could not update the persistent LDCache tier for {}", key, ex);
+        } finally {
+            pending.remove(key, entry);
+        }
+    }
+
+    private double rate(final long hits) {
+        final long total = l1Hits.get() + l2Hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private static boolean isExpired(final CacheEntry entry) {
+        return entry.getExpiryDate() != null && entry.getExpiryDate().before(new Date());
+    }
+}
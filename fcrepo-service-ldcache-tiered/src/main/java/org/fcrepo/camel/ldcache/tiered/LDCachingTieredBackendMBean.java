@@ -0,0 +1,71 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.tiered;
+
+/**
+ * Management interface for the two-tier LDCache backend.
+ *
+ * @author agent
+ */
+public interface LDCachingTieredBackendMBean {
+
+    /**
+     * @return the number of lookups served from memory
+     */
+    long getL1HitCount();
+
+    /**
+     * @return the number of lookups served from disk
+     */
+    long getL2HitCount();
+
+    /**
+     * @return the number of lookups that were not found in either tier
+     */
+    long getMissCount();
+
+    /**
+     * @return the fraction of all lookups served from memory
+     */
+    double getL1HitRate();
+
+    /**
+     * @return the fraction of all lookups served from disk
+     */
+    double getL2HitRate();
+
+    /**
+     * @return the number of entries copied from disk into memory
+     */
+    long getPromotionCount();
+
+    /**
+     * @return the number of entries written to disk by the write-behind queue
+     */
+    long getWriteBehindCount();
+
+    /**
+     * @return the number of entries waiting to be written to disk
+     */
+    long getPendingWriteCount();
+
+    /**
+     * Remove all cached resources from both tiers.
+     */
+    void clear();
+}
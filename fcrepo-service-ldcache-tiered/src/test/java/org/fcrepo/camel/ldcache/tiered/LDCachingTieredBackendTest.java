@@ -0,0 +1,139 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.ldcache.tiered;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.fcrepo.camel.ldcache.memory.LDCachingMemoryBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * Test the two-tier LDCache backend.
+ *
+ * @author agent
+ */
+public class LDCachingTieredBackendTest {
+
+    private static final URI RESOURCE = new URIImpl("http://example.org/resource");
+
+    private LDCachingMemoryBackend l1;
+
+    private LDCachingMemoryBackend l2;
+
+    private LDCachingTieredBackend backend;
+
+    @Before
+    public void setUp() {
+        l1 = new LDCachingMemoryBackend(10);
+        l2 = new LDCachingMemoryBackend(100);
+        backend = new LDCachingTieredBackend(l1, l2, 10);
+        backend.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        final CacheEntry entry = entry(60000L);
+        backend.putEntry(RESOURCE, entry);
+
+        assertSame(entry, backend.getEntry(RESOURCE));
+        awaitWrites();
+        assertSame(entry, l2.getEntry(RESOURCE));
+        assertEquals(1L, backend.getL1HitCount());
+        assertEquals(1L, backend.getWriteBehindCount());
+    }
+
+    @Test
+    public void testPromotion() {
+        final CacheEntry entry = entry(60000L);
+        l2.putEntry(RESOURCE, entry);
+
+        assertSame(entry, backend.getEntry(RESOURCE));
+        assertSame(entry, backend.getEntry(RESOURCE));
+
+        assertEquals(1L, backend.getL2HitCount());
+        assertEquals(1L, backend.getL1HitCount());
+        assertEquals(1L, backend.getPromotionCount());
+        assertNotNull(l1.getEntry(RESOURCE));
+    }
+
+    @Test
+    public void testExpiredEntryNotPersisted() throws Exception {
+        l2.putEntry(RESOURCE, entry(60000L));
+
+        final CacheEntry expired = entry(-1000L);
+        backend.putEntry(RESOURCE, expired);
+        awaitWrites();
+
+        assertSame(expired, backend.getEntry(RESOURCE));
+        assertNull(l2.getEntry(RESOURCE));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        backend.putEntry(RESOURCE, entry(60000L));
+        backend.removeEntry(RESOURCE);
+
+        assertNull(backend.getEntry(RESOURCE));
+        awaitWrites();
+        assertNull(l2.getEntry(RESOURCE));
+        assertNull(backend.getEntry(RESOURCE));
+        assertEquals(2L, backend.getMissCount());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        backend.putEntry(RESOURCE, entry(60000L));
+        awaitWrites();
+        backend.clear();
+
+        assertNull(l1.getEntry(RESOURCE));
+        assertNull(l2.getEntry(RESOURCE));
+    }
+
+    private void awaitWrites() throws InterruptedException {
+        for (int i = 0; i < 100 && backend.getPendingWriteCount() > 0; i++) {
+            Thread.sleep(50L);
+        }
+        assertEquals(0L, backend.getPendingWriteCount());
+    }
+
+    private static CacheEntry entry(final long expiresIn) {
+        final CacheEntry entry = new CacheEntry();
+        entry.setResource(RESOURCE);
+        entry.setLastRetrieved(new Date());
+        entry.setExpiryDate(new Date(System.currentTimeMillis() + expiresIn));
+        entry.setTriples(new LinkedHashModel());
+        return entry;
+    }
+}
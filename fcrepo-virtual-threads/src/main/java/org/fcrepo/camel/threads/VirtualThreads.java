@@ -0,0 +1,268 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.threads;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.RouteDefinition;
+import org.slf4j.Logger;
+
+/**
+ * Support for running the blocking parts of Camel routes on virtual threads.
+ *
+ * Virtual threads are only available on Java 21 or later; this class uses reflection so
+ * that the toolbox can continue to be built and run on earlier versions. When virtual
+ * threads are requested but not supported, routes run as they otherwise would.
+ *
+ * While virtual threads are in use, JDK Flight Recorder events for virtual threads that
+ * remain pinned to their carrier thread (e.g. while blocking inside a synchronized block)
+ * are logged by this class at INFO level.
+ *
+ * @author agent
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOGGER = getLogger(VirtualThreads.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+    private static final AtomicBoolean diagnostics = new AtomicBoolean();
+
+    private static volatile ExecutorService executor;
+
+    /**
+     * @return whether the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (final NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor that runs each task on a new virtual thread.
+     *
+     * @param prefix the prefix for the names of the virtual threads
+     * @return the executor, if the JVM supports virtual threads
+     */
+    public static Optional<ExecutorService> newExecutor(final String prefix) {
+        if (!isSupported()) {
+            return Optional.empty();
+        }
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return Optional.of((ExecutorService) perTask.invoke(null, factory));
+        } catch (final ReflectiveOperationException ex) {
+            LOGGER.warn("Could not create a virtual thread executor: {}", ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Limit the number of tasks that an executor runs at the same time. Once the limit is
+     * reached, submitting a task blocks until an earlier task has completed, so that a
+     * consumer handing off messages is slowed down rather than starting ever more threads.
+     *
+     * Shutting down the bounded executor stops it accepting tasks, but does not shut down
+     * the underlying executor, which may be shared.
+     *
+     * @param executor the underlying executor
+     * @param maxConcurrency the maximum number of tasks to run at the same time
+     * @return the bounded executor
+     */
+    public static ExecutorService bounded(final ExecutorService executor, final int maxConcurrency) {
+        return new BoundedExecutor(executor, maxConcurrency);
+    }
+
+    /**
+     * Continue processing a route on virtual threads, if enabled and supported.
+     *
+     * All routes share a single executor, since virtual threads are not pooled. Each route
+     * may run at most maxConcurrency messages at the same time: since virtual threads are
+     * cheap to create, the consumer would otherwise hand off messages as fast as it receives
+     * them, and the repository rather than a thread pool would bound the concurrency.
+     *
+     * This is only useful when the consumer does not wait for each message to be processed,
+     * as with an HTTP endpoint or a JMS endpoint with asyncConsumer=true. A synchronous JMS
+     * consumer would simply block while the message is processed on another thread.
+     *
+     * @param route the route
+     * @param enabled whether virtual threads are enabled for the route
+     * @param maxConcurrency the maximum number of messages processed at the same time;
+     *        zero or less for no limit
+     * @return the definition to which the remainder of the route should be added
+     */
+    public static ProcessorDefinition<?> onVirtualThreads(final RouteDefinition route, final boolean enabled,
+            final int maxConcurrency) {
+        if (!enabled) {
+            return route;
+        }
+
+        final Optional<ExecutorService> virtual = sharedExecutor();
+        if (!virtual.isPresent()) {
+            LOGGER.warn("Virtual threads are not supported by this JVM; using platform threads");
+            return route;
+        }
+        enablePinningDiagnostics();
+        return route.threads().executorService(maxConcurrency > 0 ? bounded(virtual.get(), maxConcurrency)
+                : virtual.get());
+    }
+
+    /**
+     * Log JDK Flight Recorder events for pinned virtual threads.
+     * This has no effect if Flight Recorder is not available or has already been enabled.
+     */
+    public static void enablePinningDiagnostics() {
+        if (!diagnostics.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final ClassLoader loader = ClassLoader.getSystemClassLoader();
+            final Class<?> streamClass = loader.loadClass("jdk.jfr.consumer.RecordingStream");
+            final Class<?> settingsClass = loader.loadClass("jdk.jfr.EventSettings");
+            final Object stream = streamClass.getConstructor().newInstance();
+            final Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, PINNED_THRESHOLD);
+            settingsClass.getMethod("withStackTrace").invoke(settings);
+            final Consumer<Object> handler = event -> LOGGER.info("Pinned virtual thread: {}", event);
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, handler);
+            streamClass.getMethod("startAsync").invoke(stream);
+            LOGGER.info("Logging virtual threads pinned for longer than {} ms", PINNED_THRESHOLD.toMillis());
+        } catch (final ReflectiveOperationException | LinkageError ex) {
+            LOGGER.info("Pinned virtual thread diagnostics are not available: {}", ex.toString());
+        }
+    }
+
+    private static Optional<ExecutorService> sharedExecutor() {
+        if (executor == null) {
+            synchronized (VirtualThreads.class) {
+                if (executor == null) {
+                    executor = newExecutor("fcrepo-virtual-").orElse(null);
+                }
+            }
+        }
+        return Optional.ofNullable(executor);
+    }
+
+    private VirtualThreads() {
+        // prevent instantiation
+    }
+
+    /*
+     * An executor that holds a permit for each running task.
+     */
+    private static class BoundedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService executor;
+
+        private final Semaphore permits;
+
+        private final int maxConcurrency;
+
+        private volatile boolean shutdown;
+
+        BoundedExecutor(final ExecutorService executor, final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("The maximum concurrency must be positive");
+            }
+            this.executor = executor;
+            this.maxConcurrency = maxConcurrency;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            if (shutdown) {
+                throw new RejectedExecutionException("The executor has been shut down");
+            }
+            try {
+                permits.acquire();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting to run a task", ex);
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (final RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && permits.availablePermits() == maxConcurrency;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            if (!permits.tryAcquire(maxConcurrency, timeout, unit)) {
+                return false;
+            }
+            permits.release(maxConcurrency);
+            return shutdown;
+        }
+    }
+}
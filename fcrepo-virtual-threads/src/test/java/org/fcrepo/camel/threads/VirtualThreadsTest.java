@@ -0,0 +1,137 @@
+/*
+ * Licensed to DuraSpace under one or more contributor license agreements.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * DuraSpace licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fcrepo.camel.threads;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.camel.threads.VirtualThreads.bounded;
+import static org.fcrepo.camel.threads.VirtualThreads.isSupported;
+import static org.fcrepo.camel.threads.VirtualThreads.newExecutor;
+import static org.fcrepo.camel.threads.VirtualThreads.onVirtualThreads;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.ThreadsDefinition;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Test the virtual thread execution mode.
+ *
+ * @author agent
+ */
+public class VirtualThreadsTest {
+
+    private static final Logger LOGGER = getLogger(VirtualThreadsTest.class);
+
+    private static final int REQUESTS = 2000;
+
+    private static final int PLATFORM_THREADS = 50;
+
+    private static final int MAX_CONCURRENCY = 200;
+
+    private static final long LATENCY = 50L;
+
+    @Test
+    public void testDisabled() {
+        final RouteDefinition route = new RouteDefinition("direct:start");
+        assertSame(route, onVirtualThreads(route, false, MAX_CONCURRENCY));
+    }
+
+    @Test
+    public void testUnsupported() {
+        assumeTrue(!isSupported());
+        final RouteDefinition route = new RouteDefinition("direct:start");
+        assertSame(route, onVirtualThreads(route, true, MAX_CONCURRENCY));
+        assertEquals(false, newExecutor("test-").isPresent());
+    }
+
+    @Test
+    public void testEnabled() {
+        assumeTrue(isSupported());
+        final RouteDefinition route = new RouteDefinition("direct:start");
+        assertTrue(onVirtualThreads(route, true, MAX_CONCURRENCY) instanceof ThreadsDefinition);
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        final ExecutorService platform = Executors.newCachedThreadPool();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final ExecutorService executor = bounded(platform, 4);
+        for (int i = 0; i < 40; i++) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(10L);
+                running.decrementAndGet();
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, SECONDS));
+        assertTrue(executor.isTerminated());
+        assertEquals(4, peak.get());
+        // the underlying executor may be shared, so it is left running
+        assertEquals(false, platform.isShutdown());
+        platform.shutdown();
+    }
+
+    /**
+     * A comparative load test: a burst of requests, each blocking on I/O for a fixed time,
+     * handled by a bounded pool of platform threads and by virtual threads, both with and
+     * without the concurrency limit applied to routes.
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        assumeTrue(isSupported());
+
+        final double platformRate = run(Executors.newFixedThreadPool(PLATFORM_THREADS));
+        final double boundedRate = run(bounded(newExecutor("load-test-").get(), MAX_CONCURRENCY));
+        final double virtualRate = run(newExecutor("load-test-").get());
+
+        LOGGER.info("{} blocking requests: {} req/s on {} platform threads, {} req/s on at most {} virtual threads, " +
+                "{} req/s on unbounded virtual threads", REQUESTS, Math.round(platformRate), PLATFORM_THREADS,
+                Math.round(boundedRate), MAX_CONCURRENCY, Math.round(virtualRate));
+        assertTrue(boundedRate > platformRate);
+        assertTrue(virtualRate > boundedRate);
+    }
+
+    private static double run(final ExecutorService executor) throws InterruptedException {
+        final long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            executor.execute(() -> sleep(LATENCY));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, SECONDS));
+        return REQUESTS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}